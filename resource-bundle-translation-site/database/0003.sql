@@ -0,0 +1,5 @@
+ALTER TABLE entry ADD COLUMN version bigint;
+UPDATE entry SET version = 0;
+ALTER TABLE entry ALTER COLUMN version SET NOT NULL;
+
+INSERT INTO schemaversion VALUES (NOW(), 'translation', '0003');
@@ -0,0 +1,3 @@
+CREATE INDEX entry_owner_basename_key_idx ON entry (owner_companyid, basename, key);
+
+INSERT INTO schemaversion VALUES (NOW(), 'translation', '0004');
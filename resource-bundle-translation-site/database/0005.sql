@@ -0,0 +1,30 @@
+CREATE TABLE bundlestatistics
+(
+  bundlestatisticsid character varying(255) NOT NULL,
+  owner_companyid character varying(255) NOT NULL,
+  basename character varying(1024) NOT NULL,
+  language character varying(2) NOT NULL,
+  country character varying(2) NOT NULL,
+  entrycount bigint NOT NULL,
+  emptycount bigint NOT NULL,
+  modifiedcount bigint NOT NULL,
+  since timestamp without time zone NOT NULL,
+  modified timestamp without time zone NOT NULL,
+  CONSTRAINT bundlestatistics_pkey PRIMARY KEY (bundlestatisticsid ),
+  CONSTRAINT unq_bundlestatistics_0 UNIQUE (owner_companyid, basename, language, country),
+  CONSTRAINT fk_bundlestatistics_owner_companyid FOREIGN KEY (owner_companyid)
+      REFERENCES company (companyid) MATCH SIMPLE
+      ON UPDATE NO ACTION ON DELETE NO ACTION
+)
+WITH (
+  OIDS=FALSE
+);
+ALTER TABLE bundlestatistics
+  OWNER TO site;
+
+INSERT INTO bundlestatistics
+  SELECT upper(md5(owner_companyid || '/' || basename || '_' || language || '_' || country)), owner_companyid,
+    basename, language, country, count(*), sum(CASE WHEN value = '' THEN 1 ELSE 0 END), 0, NOW(), NOW()
+  FROM entry GROUP BY owner_companyid, basename, language, country;
+
+INSERT INTO schemaversion VALUES (NOW(), 'translation', '0005');
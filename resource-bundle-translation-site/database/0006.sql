@@ -0,0 +1,5 @@
+ALTER TABLE entry ADD COLUMN deleted timestamp without time zone;
+
+CREATE INDEX entry_deleted_idx ON entry (deleted) WHERE deleted IS NOT NULL;
+
+INSERT INTO schemaversion VALUES (NOW(), 'translation', '0006');
@@ -0,0 +1,3 @@
+ALTER TABLE entry ADD COLUMN reviewrequired boolean NOT NULL DEFAULT false;
+
+INSERT INTO schemaversion VALUES (NOW(), 'translation', '0007');
@@ -0,0 +1,275 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import biz.eelis.translation.artifact.ArtifactPipeline;
+import biz.eelis.translation.bundle.LocaleTree;
+import biz.eelis.translation.bundle.PropertiesWriter;
+import biz.eelis.translation.model.BundleKey;
+import biz.eelis.translation.runtime.BinaryBundleControl;
+import biz.eelis.translation.runtime.BinaryBundleWriter;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Writes bundle files from database. Writer uses the entity manager of the synchronizer and is only
+ * called on the synchronizer thread, which executes publishing as well, so writes are never concurrent.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BundleFileWriter {
+
+    /** The entity manager. */
+    private final EntityManager entityManager;
+    /** The artifact pipeline. */
+    private final ArtifactPipeline artifactPipeline;
+
+    /**
+     * @param entityManager the entity manager
+     */
+    public BundleFileWriter(final EntityManager entityManager) {
+        this.entityManager = entityManager;
+        this.artifactPipeline = new ArtifactPipeline();
+    }
+
+    /**
+     * Writes resolved bundles and builds artifacts of locales affected by changed locales. Entries of
+     * all locales of the bundle are read with one query into a locale tree which resolves each locale
+     * once and is shared by both outputs. Nothing is read if neither output is configured.
+     *
+     * @param companyId the company ID
+     * @param path the bundle directory path
+     * @param basename the bundle basename
+     * @param changedBundleKeys the keys of changed locales of the bundle
+     * @param bundleCharacterSet the bundle character set
+     * @throws IOException if exception occurs in writing.
+     */
+    public void writeDerived(final String companyId, final String path, final String basename,
+                             final Collection<BundleKey> changedBundleKeys, final String bundleCharacterSet)
+            throws IOException {
+        final String resolvedDirectoryName = PropertiesUtil.getProperty("translation-site",
+                "resolved-bundle-directory");
+        final boolean resolvedEnabled = resolvedDirectoryName != null && resolvedDirectoryName.length() > 0;
+        if (changedBundleKeys.isEmpty() || !resolvedEnabled && !artifactPipeline.isEnabled()) {
+            return;
+        }
+
+        final TypedQuery<Object[]> query = entityManager.createQuery("select e.language, e.country, e.key, "
+                + "e.value from Entry as e where e.owner.companyId=:companyId and e.path=:path "
+                + "and e.basename=:basename and e.deleted is null", Object[].class);
+        query.setParameter("companyId", companyId);
+        query.setParameter("path", path);
+        query.setParameter("basename", basename);
+        final LocaleTree localeTree = new LocaleTree(query.getResultList());
+
+        if (resolvedEnabled) {
+            writeResolved(localeTree, companyId, path, basename, resolvedDirectoryName, changedBundleKeys,
+                    bundleCharacterSet);
+        }
+        if (artifactPipeline.isEnabled()) {
+            artifactPipeline.build(localeTree, companyId, path, basename, changedBundleKeys, bundleCharacterSet);
+        }
+    }
+
+    /**
+     * Writes fallback resolved bundles of locales affected by changed locales to the directory named
+     * by resolved-bundle-directory under the bundle directory.
+     *
+     * @param localeTree the locale tree of the bundle
+     * @param companyId the company ID
+     * @param path the bundle directory path
+     * @param basename the bundle basename
+     * @param resolvedDirectoryName the resolved bundle directory name
+     * @param changedBundleKeys the keys of changed locales of the bundle
+     * @param bundleCharacterSet the bundle character set
+     * @throws IOException if exception occurs in writing.
+     */
+    private void writeResolved(final LocaleTree localeTree, final String companyId, final String path,
+                               final String basename, final String resolvedDirectoryName,
+                               final Collection<BundleKey> changedBundleKeys, final String bundleCharacterSet)
+            throws IOException {
+        final boolean binaryBundleOutput = Boolean.parseBoolean(PropertiesUtil.getProperty("translation-site",
+                "binary-bundle-output"));
+        final File resolvedDirectory = new File(path, resolvedDirectoryName);
+        if (!resolvedDirectory.exists() && !resolvedDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory: " + resolvedDirectory.getAbsolutePath());
+        }
+
+        for (final String[] locale : localeTree.getLocales()) {
+            final BundleKey bundleKey = new BundleKey(companyId, path, basename, locale[0], locale[1]);
+            boolean affected = false;
+            for (final BundleKey changedBundleKey : changedBundleKeys) {
+                affected = affected || LocaleTree.isFallbackOf(changedBundleKey, bundleKey);
+            }
+            if (!affected) {
+                continue;
+            }
+            final String name = basename + bundleKey.getLocaleSuffix();
+            final SortedMap<String, String> values = localeTree.getResolved(locale[0], locale[1]);
+
+            final File file = new File(resolvedDirectory, name + ".properties");
+            final File temporaryFile = new File(resolvedDirectory, "." + file.getName() + ".tmp");
+            final FileOutputStream outputStream = new FileOutputStream(temporaryFile, false);
+            try {
+                final PropertiesWriter propertiesWriter = new PropertiesWriter(new OutputStreamWriter(
+                        outputStream, bundleCharacterSet));
+                for (final Map.Entry<String, String> entry : values.entrySet()) {
+                    propertiesWriter.write(entry.getKey(), entry.getValue());
+                }
+                propertiesWriter.flush();
+            } finally {
+                outputStream.close();
+            }
+            replaceFile(temporaryFile, file);
+
+            if (binaryBundleOutput) {
+                final BinaryBundleWriter binaryBundleWriter = new BinaryBundleWriter();
+                for (final Map.Entry<String, String> entry : values.entrySet()) {
+                    binaryBundleWriter.put(entry.getKey(), entry.getValue());
+                }
+                final File binaryFile = new File(resolvedDirectory, name + "." + BinaryBundleControl.EXTENSION);
+                final File temporaryBinaryFile = new File(resolvedDirectory, "." + binaryFile.getName()
+                        + ".tmp");
+                final FileOutputStream binaryOutputStream = new FileOutputStream(temporaryBinaryFile, false);
+                try {
+                    binaryBundleWriter.write(binaryOutputStream);
+                } finally {
+                    binaryOutputStream.close();
+                }
+                replaceFile(temporaryBinaryFile, binaryFile);
+            }
+        }
+    }
+
+    /**
+     * Writes locale properties file and binary bundle from database. Entries are read page by page
+     * as projections in key order so that no entities are loaded. The base bundle properties file is
+     * maintained by developers and not written.
+     *
+     * @param bundleKey the bundle key
+     * @param file the locale bundle file
+     * @param base true if file is the base bundle
+     * @param pageSize the number of entries to read per query
+     * @param bundleCharacterSet the bundle character set
+     * @throws IOException if exception occurs in writing.
+     */
+    public void write(final BundleKey bundleKey, final File file, final boolean base,
+                      final int pageSize, final String bundleCharacterSet) throws IOException {
+        final boolean binaryBundleOutput = Boolean.parseBoolean(PropertiesUtil.getProperty("translation-site",
+                "binary-bundle-output"));
+        if (base && !binaryBundleOutput) {
+            return;
+        }
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy/MM/dd hh:mm:ss");
+        final BinaryBundleWriter binaryBundleWriter = binaryBundleOutput ? new BinaryBundleWriter() : null;
+        final File temporaryFile = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+        final PrintWriter printWriter = base ? null : new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(temporaryFile, false), bundleCharacterSet));
+        try {
+            String lastKey = null;
+            while (true) {
+                final TypedQuery<Object[]> query = entityManager.createQuery("select e.key, e.value, e.author, "
+                        + "e.modified from Entry as e where e.path=:path and e.basename=:basename "
+                        + "and e.language=:language and e.country=:country and e.deleted is null"
+                        + (lastKey != null ? " and e.key > :lastKey" : "") + " order by e.key", Object[].class);
+                query.setParameter("path", bundleKey.getPath());
+                query.setParameter("basename", bundleKey.getBasename());
+                query.setParameter("language", bundleKey.getLanguage());
+                query.setParameter("country", bundleKey.getCountry());
+                if (lastKey != null) {
+                    query.setParameter("lastKey", lastKey);
+                }
+                query.setMaxResults(pageSize);
+                final List<Object[]> rows = query.getResultList();
+                for (final Object[] row : rows) {
+                    final String key = (String) row[0];
+                    final String value = (String) row[1];
+                    final String author = (String) row[2];
+                    if (printWriter != null) {
+                        printWriter.print("# Modified: ");
+                        printWriter.print(format.format((Date) row[3]));
+                        if (author != null) {
+                            printWriter.print(" Author: ");
+                            printWriter.print(author);
+                        }
+                        printWriter.println();
+                        printWriter.print(key);
+                        printWriter.print("=");
+                        printWriter.println(value.replace("\n", "\\\n"));
+                    }
+                    if (binaryBundleWriter != null && value.length() > 0) {
+                        binaryBundleWriter.put(key, value);
+                    }
+                    lastKey = key;
+                }
+                if (rows.size() < pageSize) {
+                    break;
+                }
+            }
+        } finally {
+            if (printWriter != null) {
+                printWriter.close();
+            }
+        }
+
+        if (printWriter != null) {
+            if (printWriter.checkError()) {
+                throw new IOException("Error writing bundle: " + file.getAbsolutePath());
+            }
+            replaceFile(temporaryFile, file);
+        }
+        if (binaryBundleWriter != null) {
+            final String name = file.getName().substring(0, file.getName().length() - ".properties".length());
+            final File binaryBundle = new File(file.getParentFile(), name + "." + BinaryBundleControl.EXTENSION);
+            final File temporaryBinaryFile = new File(file.getParentFile(), "." + binaryBundle.getName() + ".tmp");
+            final FileOutputStream fileOutputStream = new FileOutputStream(temporaryBinaryFile, false);
+            try {
+                binaryBundleWriter.write(fileOutputStream);
+                fileOutputStream.getFD().sync();
+            } finally {
+                fileOutputStream.close();
+            }
+            replaceFile(temporaryBinaryFile, binaryBundle);
+        }
+    }
+
+    /**
+     * Replaces file with temporary file so that readers never see partially written content.
+     *
+     * @param temporaryFile the temporary file
+     * @param file the file to replace
+     * @throws IOException if file can not be replaced.
+     */
+    private static void replaceFile(final File temporaryFile, final File file) throws IOException {
+        if (!temporaryFile.renameTo(file)) {
+            throw new IOException("Unable to replace file: " + file.getAbsolutePath());
+        }
+    }
+
+}
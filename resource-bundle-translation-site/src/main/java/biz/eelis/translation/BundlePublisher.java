@@ -0,0 +1,190 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import biz.eelis.translation.change.EntryChangeEvent;
+import biz.eelis.translation.change.EntryChangeListener;
+import biz.eelis.translation.change.EntryChangeNotifier;
+import biz.eelis.translation.model.BundleKey;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind publisher which rewrites bundle files of entries saved in the site without waiting
+ * for the next synchronization cycle. Changed bundles are collected for publish-delay-millis after
+ * the first change so that a burst of saves results in one write per bundle file. Writes are queued
+ * as publish tasks which the synchronizer thread executes ahead of background synchronization.
+ * Changes made by the synchronizer thread are ignored as the synchronizer writes those files itself.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BundlePublisher implements EntryChangeListener {
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(BundlePublisher.class);
+
+    /** The executor collecting changed bundles. */
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "bundle-publisher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    /** The synchronization work queue. */
+    private final SyncWorkQueue workQueue;
+    /** The bundle file writer of the synchronizer. */
+    private final BundleFileWriter bundleFileWriter;
+    /** The thread whose changes are ignored. */
+    private final Thread synchronizerThread;
+    /** The delay between first change and write in milliseconds. */
+    private final long publishDelayMillis;
+    /** Bundles changed since the last publish. */
+    private final Set<BundleKey> dirtyBundles = new HashSet<BundleKey>();
+    /** True if publish has been scheduled. */
+    private boolean scheduled = false;
+
+    /**
+     * Constructor which registers publisher as entry change listener.
+     * @param workQueue the synchronization work queue
+     * @param bundleFileWriter the bundle file writer of the synchronizer
+     * @param synchronizerThread the synchronizer thread whose changes are ignored
+     */
+    public BundlePublisher(final SyncWorkQueue workQueue, final BundleFileWriter bundleFileWriter,
+                           final Thread synchronizerThread) {
+        this.workQueue = workQueue;
+        this.bundleFileWriter = bundleFileWriter;
+        this.synchronizerThread = synchronizerThread;
+        this.publishDelayMillis = Long.parseLong(PropertiesUtil.getProperty("translation-site",
+                "publish-delay-millis"));
+        EntryChangeNotifier.addListener(this);
+    }
+
+    @Override
+    public void entriesChanged(final EntryChangeEvent event) {
+        if (Thread.currentThread() == synchronizerThread) {
+            return;
+        }
+        synchronized (dirtyBundles) {
+            for (final BundleKey bundleKey : event.getBundleKeys()) {
+                if (bundleKey.getPath() != null) {
+                    dirtyBundles.add(bundleKey);
+                }
+            }
+            schedulePublish();
+        }
+    }
+
+    /**
+     * Schedules publish of dirty bundles unless already scheduled. Must be called holding dirty bundles lock.
+     */
+    private void schedulePublish() {
+        if (!scheduled && !dirtyBundles.isEmpty() && !executor.isShutdown()) {
+            scheduled = true;
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    publish();
+                }
+            }, publishDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues writes of dirty bundle files. Bundles without existing file are left to the synchronizer.
+     * Bundles whose company queue is full stay dirty and are queued again after the delay.
+     */
+    private void publish() {
+        final List<BundleKey> bundleKeys;
+        synchronized (dirtyBundles) {
+            bundleKeys = new ArrayList<BundleKey>(dirtyBundles);
+            dirtyBundles.clear();
+            scheduled = false;
+        }
+        final List<BundleKey> rejectedBundleKeys = new ArrayList<BundleKey>();
+        for (final BundleKey bundleKey : bundleKeys) {
+            final boolean base = bundleKey.getLanguage().length() == 0 && bundleKey.getCountry().length() == 0;
+            final String name = bundleKey.getBasename() + bundleKey.getLocaleSuffix();
+            final File file = new File(bundleKey.getPath(), name + ".properties");
+            if (!file.exists()) {
+                continue;
+            }
+            final SyncTask task = new SyncTask(SyncPriority.PUBLISH, bundleKey.getCompanyId(),
+                    SyncPriority.PUBLISH + ":" + file.getAbsolutePath(), new Runnable() {
+                @Override
+                public void run() {
+                    write(bundleKey, file, base);
+                }
+            });
+            try {
+                if (workQueue.offer(task, 0) == SyncOfferResult.REJECTED) {
+                    rejectedBundleKeys.add(bundleKey);
+                }
+            } catch (final InterruptedException e) {
+                LOGGER.debug(e);
+                rejectedBundleKeys.add(bundleKey);
+            }
+        }
+        if (!rejectedBundleKeys.isEmpty()) {
+            LOGGER.warn("Synchronization queue full, delaying publish of " + rejectedBundleKeys.size() + " bundles.");
+            synchronized (dirtyBundles) {
+                dirtyBundles.addAll(rejectedBundleKeys);
+                schedulePublish();
+            }
+        }
+    }
+
+    /**
+     * Writes bundle file on synchronizer thread.
+     * @param bundleKey the bundle key
+     * @param file the bundle file
+     * @param base true if file is the base bundle
+     */
+    private void write(final BundleKey bundleKey, final File file, final boolean base) {
+        try {
+            final String bundleCharacterSet = PropertiesUtil.getProperty("translation-site", "bundle-character-set");
+            bundleFileWriter.write(bundleKey, file, base, Integer.parseInt(PropertiesUtil.getProperty(
+                    "translation-site", "synchronize-chunk-size")), bundleCharacterSet);
+            bundleFileWriter.writeDerived(bundleKey.getCompanyId(), bundleKey.getPath(), bundleKey.getBasename(),
+                    Collections.singletonList(bundleKey), bundleCharacterSet);
+            LOGGER.debug("Published bundle: " + file.getAbsolutePath());
+        } catch (final Exception e) {
+            LOGGER.error("Error publishing bundle: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Unregisters publisher and stops executor. Bundles not yet written are written by the next
+     * synchronization cycle after restart.
+     */
+    public void shutdown() {
+        EntryChangeNotifier.removeListener(this);
+        executor.shutdownNow();
+    }
+
+}
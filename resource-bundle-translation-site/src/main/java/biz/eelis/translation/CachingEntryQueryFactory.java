@@ -0,0 +1,246 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import biz.eelis.translation.feed.BundleChangeFeed;
+import biz.eelis.translation.model.Entry;
+import biz.eelis.translation.util.ReadRouting;
+import com.vaadin.data.Item;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.lazyquerycontainer.EntityQueryFactory;
+import org.vaadin.addons.lazyquerycontainer.NestingBeanItem;
+import org.vaadin.addons.lazyquerycontainer.Query;
+import org.vaadin.addons.lazyquerycontainer.QueryDefinition;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import javax.persistence.EntityManager;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entry query factory which caches result sizes and entry IDs of loaded pages by filters,
+ * sort order and page. Cached pages are loaded by primary key instead of repeating the
+ * filtered query. The cache is per session and is cleared when entries are saved or
+ * removed by anyone. Queries are run on the read entity manager of the UI while changes are
+ * always saved to the primary database.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class CachingEntryQueryFactory extends EntityQueryFactory {
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(CachingEntryQueryFactory.class);
+    /** The ID property. */
+    private static final String ID_PROPERTY = "entryId";
+
+    /** The read routing of the UI. */
+    private final ReadRouting readRouting;
+    /** The cached sizes and page entry IDs in access order. */
+    private final Map<List<Object>, Object> cache;
+    /** The change feed sequence the cached results are valid for. */
+    private long sequence;
+
+    /**
+     * Constructor for setting the read routing.
+     * @param readRouting the read routing of the UI
+     */
+    public CachingEntryQueryFactory(final ReadRouting readRouting) {
+        super(readRouting.getPrimaryEntityManager());
+        this.readRouting = readRouting;
+        final int maxEntries = Integer.parseInt(PropertiesUtil.getProperty("translation-site", "query-cache-size"));
+        cache = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<List<Object>, Object> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        sequence = BundleChangeFeed.getInstance().getSequence();
+    }
+
+    @Override
+    public Query constructQuery(final QueryDefinition queryDefinition) {
+        final EntityManager entityManager = readRouting.getReadEntityManager();
+        if (entityManager == readRouting.getPrimaryEntityManager()) {
+            return new CachingQuery(queryDefinition, super.constructQuery(queryDefinition), entityManager);
+        }
+        return new CachingQuery(queryDefinition,
+                new EntityQueryFactory(entityManager).constructQuery(queryDefinition), entityManager);
+    }
+
+    /**
+     * Clears cached results.
+     */
+    public void invalidate() {
+        cache.clear();
+    }
+
+    /**
+     * Gets cached value clearing the cache first if entries have changed since caching.
+     * @param key the cache key
+     * @return the cached value or null
+     */
+    private Object getCached(final List<Object> key) {
+        final long currentSequence = BundleChangeFeed.getInstance().getSequence();
+        if (currentSequence != sequence) {
+            cache.clear();
+            sequence = currentSequence;
+        }
+        return cache.get(key);
+    }
+
+    /**
+     * Query which serves sizes and pages from the cache and delegates the rest.
+     */
+    private final class CachingQuery implements Query, Serializable {
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /** The query definition. */
+        private final QueryDefinition queryDefinition;
+        /** The delegate query. */
+        private final Query query;
+        /** The entity manager of the delegate query. */
+        private final EntityManager entityManager;
+        /** The key of the filter and sort state of the query. */
+        private final List<Object> stateKey;
+
+        /**
+         * Constructor for setting the query definition and delegate.
+         * @param queryDefinition the query definition
+         * @param query the delegate query
+         * @param entityManager the entity manager of the delegate query
+         */
+        private CachingQuery(final QueryDefinition queryDefinition, final Query query,
+                             final EntityManager entityManager) {
+            this.queryDefinition = queryDefinition;
+            this.query = query;
+            this.entityManager = entityManager;
+            stateKey = new ArrayList<Object>();
+            stateKey.add(new ArrayList<Object>(queryDefinition.getDefaultFilters()));
+            stateKey.add(new ArrayList<Object>(queryDefinition.getFilters()));
+            stateKey.add(Arrays.asList(queryDefinition.getSortPropertyIds()));
+            stateKey.add(Arrays.toString(queryDefinition.getSortPropertyAscendingStates()));
+        }
+
+        @Override
+        public int size() {
+            final List<Object> key = getKey("size");
+            final Integer cachedSize = (Integer) getCached(key);
+            if (cachedSize != null) {
+                return cachedSize;
+            }
+            final int size = query.size();
+            cache.put(key, size);
+            return size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public List<Item> loadItems(final int startIndex, final int count) {
+            final List<Object> key = getKey(startIndex, count);
+            final List<Object> cachedIds = (List<Object>) getCached(key);
+            if (cachedIds != null) {
+                final List<Item> items = loadItems(cachedIds);
+                if (items != null) {
+                    return items;
+                }
+                cache.remove(key);
+            }
+            final List<Item> items = query.loadItems(startIndex, count);
+            final List<Object> ids = new ArrayList<Object>(items.size());
+            for (final Item item : items) {
+                ids.add(item.getItemProperty(ID_PROPERTY).getValue());
+            }
+            cache.put(key, ids);
+            return items;
+        }
+
+        /**
+         * Loads items of cached page by entry IDs.
+         * @param ids the entry IDs in page order
+         * @return the items or null if some of the entries no longer exist
+         */
+        private List<Item> loadItems(final List<Object> ids) {
+            if (ids.isEmpty()) {
+                return new ArrayList<Item>();
+            }
+            final List<Entry> entries = entityManager.createQuery(
+                    "select e from Entry as e where e.entryId in :entryIds", Entry.class)
+                    .setParameter("entryIds", ids).getResultList();
+            final Map<Object, Entry> entriesById = new HashMap<Object, Entry>();
+            for (final Entry entry : entries) {
+                entityManager.detach(entry);
+                if (entry.getDeleted() == null) {
+                    entriesById.put(entry.getEntryId(), entry);
+                }
+            }
+            if (entriesById.size() != ids.size()) {
+                LOGGER.debug("Cached page entries have been removed, reloading page.");
+                return null;
+            }
+            final List<Item> items = new ArrayList<Item>(ids.size());
+            for (final Object id : ids) {
+                items.add(new NestingBeanItem<Entry>(entriesById.get(id),
+                        queryDefinition.getMaxNestedPropertyDepth(), queryDefinition.getPropertyIds()));
+            }
+            return items;
+        }
+
+        /**
+         * @param parts the key parts in addition to query state
+         * @return the cache key
+         */
+        private List<Object> getKey(final Object... parts) {
+            final List<Object> key = new ArrayList<Object>(stateKey);
+            key.addAll(Arrays.asList(parts));
+            return key;
+        }
+
+        @Override
+        public void saveItems(final List<Item> addedItems, final List<Item> modifiedItems,
+                              final List<Item> removedItems) {
+            cache.clear();
+            readRouting.markWritten();
+            if (entityManager == readRouting.getPrimaryEntityManager()) {
+                query.saveItems(addedItems, modifiedItems, removedItems);
+            } else {
+                CachingEntryQueryFactory.super.constructQuery(queryDefinition).saveItems(addedItems, modifiedItems,
+                        removedItems);
+            }
+        }
+
+        @Override
+        public boolean deleteAllItems() {
+            cache.clear();
+            readRouting.markWritten();
+            return CachingEntryQueryFactory.super.constructQuery(queryDefinition).deleteAllItems();
+        }
+
+        @Override
+        public Item constructItem() {
+            return query.constructItem();
+        }
+    }
+}
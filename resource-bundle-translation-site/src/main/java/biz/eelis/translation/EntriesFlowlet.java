@@ -15,16 +15,32 @@
  */
 package biz.eelis.translation;
 
+import biz.eelis.translation.change.EntryChangeNotifier;
+import biz.eelis.translation.dao.BundleStatisticsDao;
+import biz.eelis.translation.dao.BundleStatisticsDelta;
 import biz.eelis.translation.model.Entry;
+import biz.eelis.translation.transfer.EntryExportResource;
+import biz.eelis.translation.transfer.EntryImporter;
+import biz.eelis.translation.transfer.ImportResult;
+import biz.eelis.translation.transfer.TransferFormat;
+import biz.eelis.translation.util.OptimisticLockUtil;
+import biz.eelis.translation.util.ReadRouting;
 import com.vaadin.data.util.filter.Compare;
+import com.vaadin.event.FieldEvents;
+import com.vaadin.data.util.filter.IsNull;
+import com.vaadin.server.FileDownloader;
+import com.vaadin.server.Page;
+import com.vaadin.ui.AbstractTextField;
 import com.vaadin.ui.Button;
 import com.vaadin.ui.Button.ClickEvent;
 import com.vaadin.ui.Button.ClickListener;
 import com.vaadin.ui.GridLayout;
 import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Notification;
 import com.vaadin.ui.Table;
 import com.vaadin.ui.TextField;
-import org.vaadin.addons.lazyquerycontainer.EntityContainer;
+import com.vaadin.ui.Upload;
+import org.vaadin.addons.lazyquerycontainer.EntityQueryDefinition;
 import org.vaadin.addons.lazyquerycontainer.LazyEntityContainer;
 import org.vaadin.addons.sitekit.flow.AbstractFlowlet;
 import org.vaadin.addons.sitekit.grid.FieldDescriptor;
@@ -35,6 +51,13 @@ import org.vaadin.addons.sitekit.model.Company;
 import org.vaadin.addons.sitekit.util.ContainerUtil;
 
 import javax.persistence.EntityManager;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -48,10 +71,20 @@ public final class EntriesFlowlet extends AbstractFlowlet {
 
     /** Serial version UID. */
     private static final long serialVersionUID = 1L;
+    /** The delay in milliseconds after last keystroke before filter is applied. */
+    private static final int FILTER_DELAY_MILLIS = 400;
     /** The container. */
     private LazyEntityContainer<Entry> container;
+    /** The query factory caching query results of the container. */
+    private CachingEntryQueryFactory queryFactory;
     /** The grid. */
     private Grid grid;
+    /** The updater keeping visible rows current. */
+    private EntryGridUpdater gridUpdater;
+    /** The batch editor. */
+    private EntryBatchEditor batchEditor;
+    /** The temporary file of the import being uploaded. */
+    private File importFile;
 
     @Override
     public String getFlowletKey() {
@@ -60,7 +93,7 @@ public final class EntriesFlowlet extends AbstractFlowlet {
 
     @Override
     public boolean isDirty() {
-        return false;
+        return batchEditor != null && batchEditor.getPendingCount() > 0;
     }
 
     @Override
@@ -74,22 +107,24 @@ public final class EntriesFlowlet extends AbstractFlowlet {
 
         final List<FilterDescriptor> filterDefinitions = new ArrayList<FilterDescriptor>();
 
-        filterDefinitions.add(new FilterDescriptor("basename", "basename", "Basename", new TextField(),
+        filterDefinitions.add(new FilterDescriptor("basename", "basename", "Basename", createFilterField(),
                 200, "like", String.class, ""));
 
-        filterDefinitions.add(new FilterDescriptor("language", "language", "Language", new TextField(),
+        filterDefinitions.add(new FilterDescriptor("language", "language", "Language", createFilterField(),
                 30, "=", String.class, ""));
 
-        filterDefinitions.add(new FilterDescriptor("country", "country", "Country", new TextField(),
+        filterDefinitions.add(new FilterDescriptor("country", "country", "Country", createFilterField(),
                 30, "=", String.class, ""));
 
-        filterDefinitions.add(new FilterDescriptor("key", "key", "Key", new TextField(),
+        filterDefinitions.add(new FilterDescriptor("key", "key", "Key", createFilterField(),
                 200, "like", String.class, ""));
 
         final EntityManager entityManager = getSite().getSiteContext().getObject(EntityManager.class);
-        container = new LazyEntityContainer<Entry>(entityManager, true, true, false, Entry.class, 1000,
+        final ReadRouting readRouting = getSite().getSiteContext().getObject(ReadRouting.class);
+        queryFactory = new CachingEntryQueryFactory(readRouting);
+        container = new LazyEntityContainer<Entry>(new EntityQueryDefinition(true, true, false, Entry.class, 1000,
                 new String[] {"basename", "key", "language", "country"},
-                new boolean[] {true, true, true, true}, "entryId");
+                new boolean[] {true, true, true, true}, "entryId"), queryFactory);
 
         ContainerUtil.addContainerProperties(container, fieldDescriptors);
 
@@ -147,6 +182,23 @@ public final class EntriesFlowlet extends AbstractFlowlet {
             }
         });
 
+        final Button matrixButton = new Button("All Locales");
+        buttonLayout.addComponent(matrixButton);
+        matrixButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                if (grid.getSelectedItemId() == null) {
+                    return;
+                }
+                final Entry entity = container.getEntity(grid.getSelectedItemId());
+                final EntryMatrixFlowlet entryMatrixView = getViewSheet().forward(EntryMatrixFlowlet.class);
+                entryMatrixView.show(entity);
+            }
+        });
+
         final Button removeButton = getSite().getButton("remove");
         buttonLayout.addComponent(removeButton);
         removeButton.addClickListener(new ClickListener() {
@@ -155,21 +207,236 @@ public final class EntriesFlowlet extends AbstractFlowlet {
 
             @Override
             public void buttonClick(final ClickEvent event) {
+                final Entry entry = container.getEntity(grid.getSelectedItemId());
                 container.removeItem(grid.getSelectedItemId());
-                container.commit();
+                try {
+                    container.commit();
+                    updateStatistics(entry);
+                    EntryChangeNotifier.fireEntryChanged(entry);
+                } catch (final RuntimeException e) {
+                    if (!OptimisticLockUtil.isOptimisticLockFailure(e)) {
+                        throw e;
+                    }
+                    container.discard();
+                    container.refresh();
+                    Notification.show("Entry was modified by another user and was not removed.",
+                            Notification.Type.WARNING_MESSAGE);
+                }
+            }
+        });
+
+        batchEditor = new EntryBatchEditor(table, container, entityManager);
+
+        final Button saveAllButton = new Button("Save All");
+        final Button discardAllButton = new Button("Discard All");
+        final Button batchEditButton = new Button("Batch Edit");
+        saveAllButton.setVisible(false);
+        discardAllButton.setVisible(false);
+        buttonLayout.addComponent(batchEditButton);
+        buttonLayout.addComponent(saveAllButton);
+        buttonLayout.addComponent(discardAllButton);
+        batchEditButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                final boolean active = !batchEditor.isActive();
+                final int pendingCount = batchEditor.getPendingCount();
+                if (!active && pendingCount > 0) {
+                    // Pending values are sent with the click so edits are never discarded unnoticed.
+                    Notification.show("You have " + pendingCount + " unsaved edits.",
+                            "Save or discard them before ending batch edit.", Notification.Type.WARNING_MESSAGE);
+                    return;
+                }
+                batchEditor.setActive(active);
+                batchEditButton.setCaption(active ? "End Batch Edit" : "Batch Edit");
+                saveAllButton.setVisible(active);
+                discardAllButton.setVisible(active);
+            }
+        });
+        saveAllButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                final int pendingCount = batchEditor.getPendingCount();
+                final int failedCount = batchEditor.commit(getSite().getSecurityProvider().getUser());
+                readRouting.markWritten();
+                if (failedCount > 0) {
+                    Notification.show("Saved " + (pendingCount - failedCount) + " entries.",
+                            failedCount + " entries failed, see the marked rows.", Notification.Type.ERROR_MESSAGE);
+                } else {
+                    Notification.show("Saved " + pendingCount + " entries.", Notification.Type.TRAY_NOTIFICATION);
+                }
+            }
+        });
+        discardAllButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                batchEditor.discard();
             }
         });
 
         final Company company = getSite().getSiteContext().getObject(Company.class);
+
+        for (final TransferFormat format : TransferFormat.values()) {
+            final Button exportButton = new Button("Export " + format.name());
+            buttonLayout.addComponent(exportButton);
+            new FileDownloader(new EntryExportResource(company.getCompanyId(), format)).extend(exportButton);
+        }
+
+        final Upload importUpload = new Upload(null, new Upload.Receiver() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public OutputStream receiveUpload(final String filename, final String mimeType) {
+                try {
+                    importFile = File.createTempFile("entry-import-", "-" + new File(filename).getName());
+                    return new FileOutputStream(importFile);
+                } catch (final IOException e) {
+                    throw new RuntimeException("Error creating import file.", e);
+                }
+            }
+        });
+        importUpload.setButtonCaption("Import");
+        importUpload.setImmediate(true);
+        importUpload.addSucceededListener(new Upload.SucceededListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void uploadSucceeded(final Upload.SucceededEvent event) {
+                importEntries(event.getFilename());
+            }
+        });
+        importUpload.addFailedListener(new Upload.FailedListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void uploadFailed(final Upload.FailedEvent event) {
+                deleteImportFile();
+            }
+        });
+        buttonLayout.addComponent(importUpload);
+
+        gridUpdater = new EntryGridUpdater(table, container, queryFactory, entityManager);
+        buttonLayout.addComponent(gridUpdater);
+
         container.removeDefaultFilters();
         container.addDefaultFilter(
                 new Compare.Equal("owner.companyId", company.getCompanyId()));
+        container.addDefaultFilter(new IsNull("deleted"));
         grid.refresh();
     }
 
+    /**
+     * Creates filter field which applies its value once typing pauses.
+     * @return the filter field
+     */
+    private static TextField createFilterField() {
+        final TextField field = new TextField();
+        field.setTextChangeEventMode(AbstractTextField.TextChangeEventMode.LAZY);
+        field.setTextChangeTimeout(FILTER_DELAY_MILLIS);
+        field.addTextChangeListener(new FieldEvents.TextChangeListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void textChange(final FieldEvents.TextChangeEvent event) {
+                field.setValue(event.getText());
+            }
+        });
+        return field;
+    }
+
+    /**
+     * Updates statistics of bundle of removed entry. The container commits removal in its own
+     * transaction so statistics are updated in a separate transaction right after it.
+     * @param entry the removed entry
+     */
+    private void updateStatistics(final Entry entry) {
+        final EntityManager entityManager = getSite().getSiteContext().getObject(EntityManager.class);
+        final BundleStatisticsDelta statisticsDelta = new BundleStatisticsDelta();
+        statisticsDelta.entryRemoved(entry);
+        entityManager.getTransaction().begin();
+        try {
+            BundleStatisticsDao.apply(entityManager, statisticsDelta);
+            entityManager.getTransaction().commit();
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+        }
+    }
+
+    /**
+     * Imports entries from uploaded import file and shows the import result.
+     * @param filename the name of the uploaded file
+     */
+    private void importEntries(final String filename) {
+        try {
+            final TransferFormat format = TransferFormat.parse(
+                    filename.substring(filename.lastIndexOf('.') + 1));
+            if (format == null) {
+                Notification.show("Unsupported import file: " + filename, Notification.Type.WARNING_MESSAGE);
+                return;
+            }
+            final Company company = getSite().getSiteContext().getObject(Company.class);
+            final EntryImporter importer = new EntryImporter(TranslationSiteUI.getEntityManagerFactory(),
+                    company.getCompanyId(), getSite().getSecurityProvider().getUser());
+            final InputStream inputStream = new BufferedInputStream(new FileInputStream(importFile));
+            final ImportResult result;
+            try {
+                result = importer.importEntries(format, inputStream);
+            } finally {
+                inputStream.close();
+            }
+            final StringBuilder description = new StringBuilder();
+            for (final ImportResult.RowError error : result.getErrors()) {
+                if (description.length() > 0) {
+                    description.append("<br/>");
+                }
+                description.append(error.toString().replace("&", "&amp;").replace("<", "&lt;"));
+            }
+            new Notification("Import " + result, description.toString(), result.getFailedCount() > 0
+                    ? Notification.Type.ERROR_MESSAGE : Notification.Type.TRAY_NOTIFICATION, true)
+                    .show(Page.getCurrent());
+            final ReadRouting readRouting = getSite().getSiteContext().getObject(ReadRouting.class);
+            readRouting.markWritten();
+            queryFactory.invalidate();
+            container.refresh();
+        } catch (final IOException e) {
+            Notification.show("Import failed: " + e.getMessage(), Notification.Type.ERROR_MESSAGE);
+        } finally {
+            deleteImportFile();
+        }
+    }
+
+    /**
+     * Deletes temporary import file if exists.
+     */
+    private void deleteImportFile() {
+        if (importFile != null) {
+            if (!importFile.delete()) {
+                importFile.deleteOnExit();
+            }
+            importFile = null;
+        }
+    }
+
     @Override
     public void enter() {
-        container.refresh();
+        if (gridUpdater.checkStale()) {
+            queryFactory.invalidate();
+            container.refresh();
+        }
     }
 
 }
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import biz.eelis.translation.model.Entry;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Table;
+import com.vaadin.ui.TextField;
+import org.vaadin.addons.lazyquerycontainer.LazyEntityContainer;
+
+import javax.persistence.EntityManager;
+import java.io.Serializable;
+
+/**
+ * Inline batch editing of entry values in entries table. Edits are buffered in value fields of an
+ * editable column and saved together in one transaction with a single container refresh.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class EntryBatchEditor implements Serializable {
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+    /** The editable column ID. */
+    private static final String EDIT_COLUMN = "batchValue";
+
+    /** The table. */
+    private final Table table;
+    /** The container. */
+    private final LazyEntityContainer<Entry> container;
+    /** The edit buffer. */
+    private final EntryEditBuffer editBuffer;
+    /** True if batch editing is active. */
+    private boolean active = false;
+
+    /**
+     * Constructor for setting the table and its container.
+     * @param table the table
+     * @param container the container of the table
+     * @param entityManager the entity manager
+     */
+    public EntryBatchEditor(final Table table, final LazyEntityContainer<Entry> container,
+                            final EntityManager entityManager) {
+        this.table = table;
+        this.container = container;
+        this.editBuffer = new EntryEditBuffer(entityManager);
+    }
+
+    /**
+     * @return true if batch editing is active
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Activates or deactivates batch editing. Deactivation discards pending edits.
+     * @param active true to activate
+     */
+    public void setActive(final boolean active) {
+        if (this.active == active) {
+            return;
+        }
+        this.active = active;
+        if (active) {
+            table.addGeneratedColumn(EDIT_COLUMN, new Table.ColumnGenerator() {
+                /** Serial version UID. */
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public Component generateCell(final Table source, final Object itemId, final Object columnId) {
+                    final TextField field = editBuffer.getField(itemId);
+                    return field != null ? field : editBuffer.getField(container.getEntity(itemId));
+                }
+            });
+            table.setColumnHeader(EDIT_COLUMN, "Value");
+            table.setColumnExpandRatio(EDIT_COLUMN, 1f);
+            table.setColumnCollapsed("value", true);
+        } else {
+            table.removeGeneratedColumn(EDIT_COLUMN);
+            table.setColumnCollapsed("value", false);
+            discard();
+        }
+    }
+
+    /**
+     * @return the number of edited entries not yet saved
+     */
+    public int getPendingCount() {
+        return editBuffer.getPendingCount();
+    }
+
+    /**
+     * Discards pending edits.
+     */
+    public void discard() {
+        editBuffer.clear();
+        table.refreshRowCache();
+    }
+
+    /**
+     * Saves pending edits and refreshes the container once.
+     * @param author the author of the edits
+     * @return the number of edits which could not be saved
+     */
+    public int commit(final String author) {
+        final int failedCount = editBuffer.commit(author);
+        container.refresh();
+        return failedCount;
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import biz.eelis.translation.change.EntryChangeNotifier;
+import biz.eelis.translation.dao.BundleStatisticsDao;
+import biz.eelis.translation.dao.BundleStatisticsDelta;
+import biz.eelis.translation.model.Entry;
+import biz.eelis.translation.util.OptimisticLockUtil;
+import com.vaadin.server.UserError;
+import com.vaadin.ui.TextField;
+import org.apache.log4j.Logger;
+
+import javax.persistence.EntityManager;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers value edits of entries in value fields and saves them together in one transaction.
+ * If the batch transaction fails entries are saved one by one. Entries which fail or were
+ * changed since editing started keep their edits and show the error on their field.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class EntryEditBuffer implements Serializable {
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(EntryEditBuffer.class);
+
+    /** The entity manager. */
+    private final EntityManager entityManager;
+    /** The value fields by entry ID. */
+    private final Map<Object, TextField> fields = new LinkedHashMap<Object, TextField>();
+    /** The persisted values and versions of edited entries by entry ID. */
+    private final Map<Object, Object[]> originals = new HashMap<Object, Object[]>();
+
+    /**
+     * Constructor for setting the entity manager.
+     * @param entityManager the entity manager
+     */
+    public EntryEditBuffer(final EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Gets value field of entry creating it if not created yet.
+     * @param entry the entry
+     * @return the value field
+     */
+    public TextField getField(final Entry entry) {
+        TextField field = fields.get(entry.getEntryId());
+        if (field == null) {
+            field = new TextField();
+            field.setWidth("100%");
+            field.setNullRepresentation("");
+            field.setValue(entry.getValue());
+            fields.put(entry.getEntryId(), field);
+            originals.put(entry.getEntryId(), new Object[] {entry.getValue(), entry.getVersion()});
+        }
+        return field;
+    }
+
+    /**
+     * @param entryId the entry ID
+     * @return the value field or null if not created
+     */
+    public TextField getField(final Object entryId) {
+        return fields.get(entryId);
+    }
+
+    /**
+     * @return the number of edited entries not yet saved
+     */
+    public int getPendingCount() {
+        return getPendingIds().size();
+    }
+
+    /**
+     * Removes all fields discarding pending edits.
+     */
+    public void clear() {
+        fields.clear();
+        originals.clear();
+    }
+
+    /**
+     * Saves pending edits. Fields of saved entries are kept and their values become the
+     * persisted values.
+     * @param author the author of the edits
+     * @return the number of edits which could not be saved
+     */
+    public int commit(final String author) {
+        final List<Object> pendingIds = getPendingIds();
+        if (pendingIds.isEmpty()) {
+            return 0;
+        }
+        final Map<Object, String> errors = new HashMap<Object, String>();
+        final List<Entry> changedEntries = new ArrayList<Entry>();
+
+        final Throwable batchFailure = saveInTransaction(pendingIds, author, errors, changedEntries);
+        if (batchFailure != null) {
+            LOGGER.debug("Batch save failed, saving entries one by one.", batchFailure);
+            errors.clear();
+            changedEntries.clear();
+            for (final Object entryId : pendingIds) {
+                final Throwable failure = saveInTransaction(Collections.singletonList(entryId), author, errors,
+                        changedEntries);
+                if (failure != null) {
+                    if (OptimisticLockUtil.isOptimisticLockFailure(failure)) {
+                        errors.put(entryId, "Entry was modified concurrently.");
+                    } else {
+                        LOGGER.warn("Error saving entry " + entryId, failure);
+                        errors.put(entryId, "Error saving entry: " + failure.getMessage());
+                    }
+                }
+            }
+        }
+
+        for (final Entry entry : changedEntries) {
+            originals.put(entry.getEntryId(), new Object[] {entry.getValue(), entry.getVersion()});
+            fields.get(entry.getEntryId()).setComponentError(null);
+        }
+        for (final Map.Entry<Object, String> error : errors.entrySet()) {
+            fields.get(error.getKey()).setComponentError(new UserError(error.getValue()));
+        }
+        EntryChangeNotifier.fireEntriesChanged(changedEntries);
+        return errors.size();
+    }
+
+    /**
+     * @return the IDs of entries with edited value
+     */
+    private List<Object> getPendingIds() {
+        final List<Object> pendingIds = new ArrayList<Object>();
+        for (final Map.Entry<Object, TextField> fieldEntry : fields.entrySet()) {
+            final String value = fieldEntry.getValue().getValue();
+            if (value != null && !value.equals(originals.get(fieldEntry.getKey())[0])) {
+                pendingIds.add(fieldEntry.getKey());
+            }
+        }
+        return pendingIds;
+    }
+
+    /**
+     * Saves edits of given entries in one transaction. Entries changed since editing started
+     * are reported as errors and left unsaved.
+     * @param entryIds the entry IDs
+     * @param author the author
+     * @param errors the map to record entry errors to
+     * @param changedEntries the list to collect saved entries to
+     * @return null if transaction was committed or the failure
+     */
+    private Throwable saveInTransaction(final List<Object> entryIds, final String author,
+                                        final Map<Object, String> errors, final List<Entry> changedEntries) {
+        final List<Entry> entries = new ArrayList<Entry>();
+        final List<Entry> savedEntries = new ArrayList<Entry>();
+        final BundleStatisticsDelta statisticsDelta = new BundleStatisticsDelta();
+        final Date modified = new Date();
+        entityManager.getTransaction().begin();
+        try {
+            entries.addAll(entityManager.createQuery("select e from Entry as e where e.entryId in :entryIds",
+                    Entry.class).setParameter("entryIds", entryIds).getResultList());
+            final Map<Object, Entry> entriesById = new HashMap<Object, Entry>();
+            for (final Entry entry : entries) {
+                entriesById.put(entry.getEntryId(), entry);
+            }
+            for (final Object entryId : entryIds) {
+                final Entry entry = entriesById.get(entryId);
+                if (entry == null || entry.getDeleted() != null) {
+                    errors.put(entryId, "Entry has been removed.");
+                    continue;
+                }
+                if (entry.getVersion() != (Long) originals.get(entryId)[1]) {
+                    errors.put(entryId, "Entry was modified by " + entry.getAuthor() + " while you were editing.");
+                    continue;
+                }
+                final String oldValue = entry.getValue();
+                entry.setValue(fields.get(entryId).getValue());
+                entry.setReviewRequired(false);
+                entry.setAuthor(author);
+                entry.setModified(modified);
+                statisticsDelta.valueChanged(entry, oldValue);
+                savedEntries.add(entry);
+            }
+            BundleStatisticsDao.apply(entityManager, statisticsDelta);
+            entityManager.getTransaction().commit();
+            changedEntries.addAll(savedEntries);
+            return null;
+        } catch (final Throwable t) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            for (final Object entryId : entryIds) {
+                errors.remove(entryId);
+            }
+            return t;
+        } finally {
+            for (final Entry entry : entries) {
+                if (entityManager.contains(entry)) {
+                    entityManager.detach(entry);
+                }
+            }
+        }
+    }
+}
@@ -36,6 +36,8 @@ public final class EntryFlowViewlet extends AbstractFlowViewlet {
         addFlowlet(entriesView);
         final Flowlet entryView = new EntryFlowlet();
         addFlowlet(entryView);
+        final Flowlet entryMatrixView = new EntryMatrixFlowlet();
+        addFlowlet(entryMatrixView);
         setRootFlowlet(entriesView);
     }
 
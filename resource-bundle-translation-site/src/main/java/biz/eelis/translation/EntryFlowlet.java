@@ -15,28 +15,29 @@
  */
 package biz.eelis.translation;
 
+import biz.eelis.translation.change.EntryChangeNotifier;
+import biz.eelis.translation.dao.BundleStatisticsDao;
+import biz.eelis.translation.dao.BundleStatisticsDelta;
+import biz.eelis.translation.memory.TranslationMemory;
+import biz.eelis.translation.memory.TranslationSuggestion;
 import biz.eelis.translation.model.Entry;
+import biz.eelis.translation.util.OptimisticLockUtil;
+import biz.eelis.translation.util.ReadRouting;
 import com.vaadin.data.util.BeanItem;
-import com.vaadin.data.util.filter.And;
-import com.vaadin.data.util.filter.Compare;
 import com.vaadin.ui.Button;
 import com.vaadin.ui.Button.ClickEvent;
 import com.vaadin.ui.Button.ClickListener;
+import com.vaadin.ui.Component;
 import com.vaadin.ui.GridLayout;
 import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Notification;
 import com.vaadin.ui.Table;
-import org.vaadin.addons.lazyquerycontainer.LazyEntityContainer;
 import org.vaadin.addons.sitekit.flow.AbstractFlowlet;
-import org.vaadin.addons.sitekit.grid.FieldDescriptor;
-import org.vaadin.addons.sitekit.grid.FilterDescriptor;
-import org.vaadin.addons.sitekit.grid.FormattingTable;
-import org.vaadin.addons.sitekit.grid.Grid;
 import org.vaadin.addons.sitekit.grid.ValidatingEditor;
 import org.vaadin.addons.sitekit.grid.ValidatingEditorStateListener;
-import org.vaadin.addons.sitekit.util.ContainerUtil;
 
 import javax.persistence.EntityManager;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -52,8 +53,14 @@ public final class EntryFlowlet extends AbstractFlowlet implements ValidatingEdi
 
     /** The entity manager. */
     private EntityManager entityManager;
+    /** The read routing of the UI. */
+    private ReadRouting readRouting;
     /** The entry flow. */
     private Entry entity;
+    /** True if edited entry is new. */
+    private boolean newEntity;
+    /** The persisted value of the edited entry. */
+    private String originalValue;
 
     /** The entity form. */
     private ValidatingEditor entryEditor;
@@ -61,8 +68,12 @@ public final class EntryFlowlet extends AbstractFlowlet implements ValidatingEdi
     private Button saveButton;
     /** The discard button. */
     private Button discardButton;
-    /** The other language keys container. */
-    private LazyEntityContainer container;
+    /** The item of the edited entry. */
+    private BeanItem<Entry> entryItem;
+    /** The translation memory suggestions table. */
+    private Table suggestionTable;
+    /** The matrix of entry values in all locales. */
+    private EntryMatrix matrix;
 
     @Override
     public String getFlowletKey() {
@@ -71,7 +82,7 @@ public final class EntryFlowlet extends AbstractFlowlet implements ValidatingEdi
 
     @Override
     public boolean isDirty() {
-        return entryEditor.isModified();
+        return entryEditor.isModified() || matrix.getPendingCount() > 0;
     }
 
     @Override
@@ -82,12 +93,14 @@ public final class EntryFlowlet extends AbstractFlowlet implements ValidatingEdi
     @Override
     public void initialize() {
         entityManager = getSite().getSiteContext().getObject(EntityManager.class);
+        readRouting = getSite().getSiteContext().getObject(ReadRouting.class);
 
-        final GridLayout gridLayout = new GridLayout(1, 3);
+        final GridLayout gridLayout = new GridLayout(2, 4);
         gridLayout.setSizeFull();
         gridLayout.setMargin(false);
         gridLayout.setSpacing(true);
         gridLayout.setRowExpandRatio(2, 1f);
+        gridLayout.setColumnExpandRatio(1, 1f);
         setViewContent(gridLayout);
 
         entryEditor = new ValidatingEditor(TranslationSiteFields.getFieldDescriptors(Entry.class));
@@ -99,6 +112,36 @@ public final class EntryFlowlet extends AbstractFlowlet implements ValidatingEdi
         buttonLayout.setSpacing(true);
         gridLayout.addComponent(buttonLayout, 0, 1);
 
+        suggestionTable = new Table("Suggestions");
+        suggestionTable.setSizeFull();
+        suggestionTable.addContainerProperty("similarity", String.class, null);
+        suggestionTable.addContainerProperty("source", String.class, null);
+        suggestionTable.addContainerProperty("target", String.class, null);
+        suggestionTable.setColumnHeaders(new String[] {"Similarity", "Base Value", "Translation"});
+        suggestionTable.addGeneratedColumn("use", new Table.ColumnGenerator() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Component generateCell(final Table source, final Object itemId, final Object columnId) {
+                final String target = (String) source.getItem(itemId).getItemProperty("target").getValue();
+                final Button useButton = new Button("Use");
+                useButton.addClickListener(new ClickListener() {
+                    /** Serial version UID. */
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public void buttonClick(final ClickEvent event) {
+                        entryItem.getItemProperty("value").setValue(target);
+                    }
+                });
+                return useButton;
+            }
+        });
+        suggestionTable.setColumnHeader("use", "");
+        suggestionTable.setColumnExpandRatio("target", 1f);
+        gridLayout.addComponent(suggestionTable, 1, 0, 1, 1);
+
         saveButton = new Button("Save");
         saveButton.setImmediate(true);
         buttonLayout.addComponent(saveButton);
@@ -109,20 +152,46 @@ public final class EntryFlowlet extends AbstractFlowlet implements ValidatingEdi
             @Override
             public void buttonClick(final ClickEvent event) {
                 entryEditor.commit();
+                if (newEntity && !isBaseKey(entity)) {
+                    Notification.show("Key is not in the base bundle: " + entity.getKey(),
+                            "Add the key to the base bundle file, entries are created on synchronization.",
+                            Notification.Type.WARNING_MESSAGE);
+                    return;
+                }
                 entityManager.getTransaction().begin();
                 try {
                     entity = entityManager.merge(entity);
                     entity.setAuthor(getSite().getSecurityProvider().getUser());
                     entity.setModified(new Date());
+                    if (!entity.getValue().equals(originalValue)) {
+                        entity.setReviewRequired(false);
+                    }
                     entityManager.persist(entity);
+                    final BundleStatisticsDelta statisticsDelta = new BundleStatisticsDelta();
+                    if (newEntity) {
+                        statisticsDelta.entryAdded(entity);
+                    } else if (!entity.getValue().equals(originalValue)) {
+                        statisticsDelta.valueChanged(entity, originalValue);
+                    }
+                    BundleStatisticsDao.apply(entityManager, statisticsDelta);
                     entityManager.getTransaction().commit();
                     entityManager.detach(entity);
+                    readRouting.markWritten();
+                    newEntity = false;
+                    originalValue = entity.getValue();
+                    EntryChangeNotifier.fireEntryChanged(entity);
                     entryEditor.discard();
-                    container.refresh();
+                    if (matrix.getPendingCount() == 0) {
+                        loadMatrix();
+                    }
                 } catch (final Throwable t) {
                     if (entityManager.getTransaction().isActive()) {
                         entityManager.getTransaction().rollback();
                     }
+                    if (OptimisticLockUtil.isOptimisticLockFailure(t)) {
+                        handleConflict();
+                        return;
+                    }
                     throw new RuntimeException("Failed to save entity: " + entity, t);
                 }
             }
@@ -141,30 +210,47 @@ public final class EntryFlowlet extends AbstractFlowlet implements ValidatingEdi
             }
         });
 
-        final List<FieldDescriptor> fieldDescriptors = TranslationSiteFields.getFieldDescriptors(Entry.class);
-
-        final List<FilterDescriptor> filterDefinitions = new ArrayList<FilterDescriptor>();
+        matrix = new EntryMatrix(entityManager);
+        matrix.setCaption("All Translations");
+        gridLayout.addComponent(matrix, 0, 2, 1, 2);
 
-        container = new LazyEntityContainer<Entry>(entityManager, true, true, false, Entry.class, 1000,
-        new String[] {"basename", "key", "language", "country"},
-        new boolean[] {true, true, true, true}, "entryId");
-        container.getQueryView().getQueryDefinition().setMaxQuerySize(1);
+        final HorizontalLayout matrixButtonLayout = new HorizontalLayout();
+        matrixButtonLayout.setSpacing(true);
+        gridLayout.addComponent(matrixButtonLayout, 0, 3, 1, 3);
 
-        ContainerUtil.addContainerProperties(container, fieldDescriptors);
+        final Button matrixSaveButton = new Button("Save Translations");
+        matrixButtonLayout.addComponent(matrixSaveButton);
+        matrixSaveButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
 
-        final Table table = new FormattingTable();
-        final Grid grid = new Grid(table, container);
-        grid.setCaption("All Translations");
-        grid.setSizeFull();
-        grid.setFields(fieldDescriptors);
-        grid.setFilters(filterDefinitions);
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                final int pendingCount = matrix.getPendingCount();
+                final int failedCount = matrix.commit(getSite().getSecurityProvider().getUser());
+                readRouting.markWritten();
+                if (failedCount > 0) {
+                    Notification.show("Saved " + (pendingCount - failedCount) + " translations.",
+                            failedCount + " translations failed, see the marked cells.",
+                            Notification.Type.ERROR_MESSAGE);
+                } else if (pendingCount > 0) {
+                    Notification.show("Saved " + pendingCount + " translations.",
+                            Notification.Type.TRAY_NOTIFICATION);
+                }
+            }
+        });
 
-        table.setColumnCollapsed("entryId", true);
-        table.setColumnCollapsed("path", true);
-        table.setColumnCollapsed("created", true);
-        table.setColumnCollapsed("modified", true);
-        gridLayout.addComponent(grid, 0, 2);
+        final Button matrixDiscardButton = new Button("Discard Translations");
+        matrixButtonLayout.addComponent(matrixDiscardButton);
+        matrixDiscardButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
 
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                matrix.discard();
+            }
+        });
     }
 
     /**
@@ -174,14 +260,95 @@ public final class EntryFlowlet extends AbstractFlowlet implements ValidatingEdi
      */
     public void edit(final Entry entity, final boolean newEntity) {
         this.entity = entity;
-        entryEditor.setItem(new BeanItem<Entry>(entity), newEntity);
-        container.getQueryView().getQueryDefinition().setMaxQuerySize(20);
-        container.removeAllContainerFilters();
-        container.getQueryView().addFilter(new And(
-                new Compare.Equal("path", entity.getPath()),
-                new Compare.Equal("basename", entity.getBasename()),
-                new Compare.Equal("key", entity.getKey())));
-        container.refresh();
+        this.newEntity = newEntity;
+        this.originalValue = entity.getValue();
+        entryItem = new BeanItem<Entry>(entity);
+        entryEditor.setItem(entryItem, newEntity);
+        loadMatrix();
+        loadSuggestions();
+    }
+
+    /**
+     * Loads translation memory suggestions for translating base value of edited entry key.
+     */
+    private void loadSuggestions() {
+        suggestionTable.removeAllItems();
+        if (entity.getKey() == null || entity.getLanguage() == null || entity.getLanguage().length() == 0) {
+            return;
+        }
+        final List<String> baseValues = entityManager.createQuery(
+                "select e.value from Entry as e where e.owner.companyId = :companyId and e.path = :path"
+                        + " and e.basename = :basename and e.key = :key and e.language = '' and e.country = ''"
+                        + " and e.deleted is null", String.class)
+                .setParameter("companyId", entity.getOwner().getCompanyId())
+                .setParameter("path", entity.getPath())
+                .setParameter("basename", entity.getBasename())
+                .setParameter("key", entity.getKey())
+                .getResultList();
+        if (baseValues.isEmpty() || baseValues.get(0) == null) {
+            return;
+        }
+        final List<TranslationSuggestion> suggestions = TranslationMemory.getInstance().suggest(
+                entity.getOwner().getCompanyId(), entity.getLanguage(), entity.getCountry(), baseValues.get(0));
+        for (final TranslationSuggestion suggestion : suggestions) {
+            if (suggestion.getTarget().equals(entity.getValue())) {
+                continue;
+            }
+            suggestionTable.addItem(new Object[] {Math.round(suggestion.getSimilarity() * 100) + "%",
+                    suggestion.getSource(), suggestion.getTarget()}, null);
+        }
+    }
+
+    /**
+     * Loads values of edited entry key in all locales to the matrix.
+     */
+    private void loadMatrix() {
+        final List<String> keys;
+        if (newEntity || entity.getKey() == null) {
+            keys = Collections.emptyList();
+        } else {
+            keys = Collections.singletonList(entity.getKey());
+        }
+        matrix.load(entity.getOwner().getCompanyId(), entity.getPath(), entity.getBasename(), keys);
+    }
+
+    /**
+     * Checks whether the key of the entry exists in the base bundle. Synchronizer marks entries
+     * with keys missing from the base bundle file deleted, so only keys of the base bundle can be added.
+     * @param entry the entry
+     * @return true if base bundle has an entry with the key
+     */
+    private boolean isBaseKey(final Entry entry) {
+        return entityManager.createQuery("select count(e) from Entry as e where e.owner.companyId=:companyId "
+                + "and e.path=:path and e.basename=:basename and e.language='' and e.country='' "
+                + "and e.key=:key and e.deleted is null", Long.class)
+                .setParameter("companyId", entry.getOwner().getCompanyId())
+                .setParameter("path", entry.getPath())
+                .setParameter("basename", entry.getBasename())
+                .setParameter("key", entry.getKey())
+                .getSingleResult() > 0;
+    }
+
+    /**
+     * Handles save conflict caused by concurrent modification of the entry. The latest
+     * persisted state is loaded to the editor and the rejected value is shown to the
+     * translator so that it can be reapplied on top of the latest version.
+     */
+    private void handleConflict() {
+        final String rejectedValue = entity.getValue();
+        if (entityManager.contains(entity)) {
+            entityManager.detach(entity);
+        }
+        final Entry latest = entityManager.find(Entry.class, entity.getEntryId());
+        if (latest == null) {
+            Notification.show("Entry has been removed by another user.", Notification.Type.WARNING_MESSAGE);
+            return;
+        }
+        entityManager.refresh(latest);
+        entityManager.detach(latest);
+        edit(latest, false);
+        Notification.show("Entry was modified by " + latest.getAuthor() + " while you were editing.",
+                "Your value was not saved: " + rejectedValue, Notification.Type.WARNING_MESSAGE);
     }
 
     @Override
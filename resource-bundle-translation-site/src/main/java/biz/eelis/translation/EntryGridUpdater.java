@@ -0,0 +1,187 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import biz.eelis.translation.change.EntryChangeEvent;
+import biz.eelis.translation.change.EntryChangeListener;
+import biz.eelis.translation.change.EntryChangeNotifier;
+import biz.eelis.translation.model.Entry;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.ProgressIndicator;
+import com.vaadin.ui.Table;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.lazyquerycontainer.LazyEntityContainer;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps rows of an entries table current while it is shown. Changed entries on the visible rows
+ * are reloaded and updated in place; the container is refreshed only when a visible entry has
+ * been removed. Entries changed outside the visible rows mark the table stale so that it can be
+ * refreshed on next entry to the view. The updater is an invisible polling indicator which
+ * delivers the updates to the browser and listens to entry changes while attached.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class EntryGridUpdater extends ProgressIndicator implements EntryChangeListener {
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(EntryGridUpdater.class);
+    /**
+     * The executor applying updates. Updates are applied outside the thread firing the change as it
+     * may hold lock of another session.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "entry-grid-updater");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** The table. */
+    private final Table table;
+    /** The container of the table. */
+    private final LazyEntityContainer<Entry> container;
+    /** The query factory of the container. */
+    private final CachingEntryQueryFactory queryFactory;
+    /** The entity manager. */
+    private final EntityManager entityManager;
+    /** The session of the table while attached. */
+    private VaadinSession session;
+    /** True if entries outside visible rows have changed. */
+    private boolean stale = false;
+
+    /**
+     * Constructor for setting the table and its container.
+     * @param table the table
+     * @param container the container of the table
+     * @param queryFactory the query factory of the container
+     * @param entityManager the entity manager
+     */
+    public EntryGridUpdater(final Table table, final LazyEntityContainer<Entry> container,
+                            final CachingEntryQueryFactory queryFactory, final EntityManager entityManager) {
+        this.table = table;
+        this.container = container;
+        this.queryFactory = queryFactory;
+        this.entityManager = entityManager;
+        setIndeterminate(true);
+        setWidth("0px");
+        setHeight("0px");
+        setPollingInterval(Integer.parseInt(PropertiesUtil.getProperty("translation-site",
+                "grid-poll-interval-millis")));
+    }
+
+    /**
+     * Checks whether entries outside the visible rows have changed and clears the flag.
+     * @return true if table should be refreshed
+     */
+    public boolean checkStale() {
+        final boolean wasStale = stale;
+        stale = false;
+        return wasStale;
+    }
+
+    @Override
+    public void attach() {
+        super.attach();
+        session = getSession();
+        EntryChangeNotifier.addListener(this);
+    }
+
+    @Override
+    public void detach() {
+        EntryChangeNotifier.removeListener(this);
+        session = null;
+        super.detach();
+    }
+
+    @Override
+    public void entriesChanged(final EntryChangeEvent event) {
+        final VaadinSession currentSession = session;
+        if (currentSession == null) {
+            return;
+        }
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                currentSession.lock();
+                try {
+                    if (session == currentSession) {
+                        update(event.getEntryIds());
+                    }
+                } catch (final Throwable t) {
+                    LOGGER.warn("Error updating entries table.", t);
+                } finally {
+                    currentSession.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Updates visible rows of changed entries. Must be called with the session locked.
+     * @param entryIds the IDs of the changed entries
+     */
+    private void update(final Collection<String> entryIds) {
+        final List<Object> visibleIds = new ArrayList<Object>();
+        for (final Object itemId : table.getVisibleItemIds()) {
+            if (entryIds.contains(itemId)) {
+                visibleIds.add(itemId);
+            }
+        }
+        if (visibleIds.size() < entryIds.size()) {
+            stale = true;
+        }
+        if (visibleIds.isEmpty()) {
+            return;
+        }
+
+        final List<Entry> entries = entityManager.createQuery(
+                "select e from Entry as e where e.entryId in :entryIds", Entry.class)
+                .setParameter("entryIds", visibleIds).getResultList();
+        int updatedCount = 0;
+        for (final Entry entry : entries) {
+            entityManager.refresh(entry);
+            entityManager.detach(entry);
+            if (entry.getDeleted() != null) {
+                continue;
+            }
+            final Entry shownEntry = container.getEntity(entry.getEntryId());
+            shownEntry.setValue(entry.getValue());
+            shownEntry.setAuthor(entry.getAuthor());
+            shownEntry.setModified(entry.getModified());
+            shownEntry.setVersion(entry.getVersion());
+            shownEntry.setReviewRequired(entry.isReviewRequired());
+            updatedCount++;
+        }
+        if (updatedCount < visibleIds.size()) {
+            queryFactory.invalidate();
+            container.refresh();
+        } else {
+            table.refreshRowCache();
+        }
+    }
+}
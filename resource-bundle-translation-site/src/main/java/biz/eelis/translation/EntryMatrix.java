@@ -0,0 +1,194 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import biz.eelis.translation.model.BundleKey;
+import biz.eelis.translation.model.Entry;
+import com.vaadin.data.Item;
+import com.vaadin.data.util.IndexedContainer;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.CustomComponent;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Table;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Pivoted view of entries of a bundle with a row for each key and a column for each locale.
+ * Values of all locales are loaded in one query and edited inline. Edits are saved together
+ * without reloading the matrix.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class EntryMatrix extends CustomComponent {
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+    /** The key column ID. */
+    private static final String KEY_COLUMN = "key";
+
+    /** The entity manager. */
+    private final EntityManager entityManager;
+    /** The table. */
+    private final Table table;
+    /** The edit buffer. */
+    private final EntryEditBuffer editBuffer;
+    /** The entries by key and locale suffix. */
+    private final Map<String, Map<String, Entry>> entries = new HashMap<String, Map<String, Entry>>();
+    /** The locale suffixes of the generated columns. */
+    private final List<String> locales = new ArrayList<String>();
+
+    /** The company ID of loaded entries. */
+    private String companyId;
+    /** The path of loaded entries. */
+    private String path;
+    /** The basename of loaded entries. */
+    private String basename;
+    /** The loaded keys. */
+    private List<String> keys = Collections.emptyList();
+
+    /**
+     * Constructor for setting the entity manager.
+     * @param entityManager the entity manager
+     */
+    public EntryMatrix(final EntityManager entityManager) {
+        this.entityManager = entityManager;
+        this.editBuffer = new EntryEditBuffer(entityManager);
+        table = new Table();
+        table.setSizeFull();
+        table.setSelectable(false);
+        setCompositionRoot(table);
+        setSizeFull();
+    }
+
+    /**
+     * Loads entries of given keys in all locales of the bundle. Pending edits are discarded.
+     * @param companyId the company ID
+     * @param path the bundle path
+     * @param basename the bundle basename
+     * @param keys the keys in display order
+     */
+    public void load(final String companyId, final String path, final String basename, final List<String> keys) {
+        this.companyId = companyId;
+        this.path = path;
+        this.basename = basename;
+        this.keys = new ArrayList<String>(keys);
+        reload();
+    }
+
+    /**
+     * Reloads currently loaded keys. Pending edits are discarded.
+     */
+    public void reload() {
+        editBuffer.clear();
+        entries.clear();
+        for (final String locale : locales) {
+            table.removeGeneratedColumn(locale);
+        }
+        locales.clear();
+
+        final TreeSet<String> loadedLocales = new TreeSet<String>();
+        if (!keys.isEmpty()) {
+            final List<Entry> loadedEntries = entityManager.createQuery(
+                    "select e from Entry as e where e.owner.companyId = :companyId and e.path = :path"
+                            + " and e.basename = :basename and e.key in :keys and e.deleted is null", Entry.class)
+                    .setParameter("companyId", companyId)
+                    .setParameter("path", path)
+                    .setParameter("basename", basename)
+                    .setParameter("keys", keys)
+                    .getResultList();
+            for (final Entry entry : loadedEntries) {
+                entityManager.detach(entry);
+                final String locale = BundleKey.of(entry).getLocaleSuffix();
+                Map<String, Entry> keyEntries = entries.get(entry.getKey());
+                if (keyEntries == null) {
+                    keyEntries = new HashMap<String, Entry>();
+                    entries.put(entry.getKey(), keyEntries);
+                }
+                keyEntries.put(locale, entry);
+                loadedLocales.add(locale);
+            }
+        }
+        locales.addAll(loadedLocales);
+
+        final IndexedContainer container = new IndexedContainer();
+        container.addContainerProperty(KEY_COLUMN, String.class, null);
+        for (final String key : keys) {
+            final Item item = container.addItem(key);
+            item.getItemProperty(KEY_COLUMN).setValue(key);
+        }
+        table.setContainerDataSource(container);
+
+        final List<Object> visibleColumns = new ArrayList<Object>();
+        visibleColumns.add(KEY_COLUMN);
+        table.setColumnHeader(KEY_COLUMN, "Key");
+        for (final String locale : locales) {
+            table.addGeneratedColumn(locale, new Table.ColumnGenerator() {
+                /** Serial version UID. */
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public Component generateCell(final Table source, final Object itemId, final Object columnId) {
+                    final Map<String, Entry> keyEntries = entries.get(itemId);
+                    final Entry entry = keyEntries != null ? keyEntries.get(columnId) : null;
+                    if (entry == null) {
+                        return new Label();
+                    }
+                    return editBuffer.getField(entry);
+                }
+            });
+            table.setColumnHeader(locale, locale.length() == 0 ? "Base" : locale.substring(1));
+            table.setColumnExpandRatio(locale, 1f);
+            visibleColumns.add(locale);
+        }
+        table.setVisibleColumns(visibleColumns.toArray());
+    }
+
+    /**
+     * @return the loaded keys
+     */
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * @return the number of edited entries not yet saved
+     */
+    public int getPendingCount() {
+        return editBuffer.getPendingCount();
+    }
+
+    /**
+     * Discards pending edits by reloading the matrix.
+     */
+    public void discard() {
+        reload();
+    }
+
+    /**
+     * Saves pending edits. The matrix is not reloaded; saved values stay in their cells.
+     * @param author the author of the edits
+     * @return the number of edits which could not be saved
+     */
+    public int commit(final String author) {
+        return editBuffer.commit(author);
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import biz.eelis.translation.model.Entry;
+import biz.eelis.translation.util.ReadRouting;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.Button.ClickListener;
+import com.vaadin.ui.GridLayout;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Notification;
+import org.vaadin.addons.sitekit.flow.AbstractFlowlet;
+
+import javax.persistence.EntityManager;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bundle matrix Flowlet showing a page of keys of a bundle in all locales.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class EntryMatrixFlowlet extends AbstractFlowlet {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+    /** The number of keys on a page. */
+    private static final int PAGE_SIZE = 50;
+
+    /** The entity manager. */
+    private EntityManager entityManager;
+    /** The read routing of the UI. */
+    private ReadRouting readRouting;
+    /** The matrix. */
+    private EntryMatrix matrix;
+    /** The next page button. */
+    private Button nextButton;
+
+    /** The company ID of the bundle. */
+    private String companyId;
+    /** The path of the bundle. */
+    private String path;
+    /** The basename of the bundle. */
+    private String basename;
+
+    @Override
+    public String getFlowletKey() {
+        return "entry-matrix";
+    }
+
+    @Override
+    public boolean isDirty() {
+        return matrix.getPendingCount() > 0;
+    }
+
+    @Override
+    public boolean isValid() {
+        return true;
+    }
+
+    @Override
+    public void initialize() {
+        entityManager = getSite().getSiteContext().getObject(EntityManager.class);
+        readRouting = getSite().getSiteContext().getObject(ReadRouting.class);
+
+        final GridLayout gridLayout = new GridLayout(1, 2);
+        gridLayout.setSizeFull();
+        gridLayout.setMargin(false);
+        gridLayout.setSpacing(true);
+        gridLayout.setRowExpandRatio(1, 1f);
+        setViewContent(gridLayout);
+
+        final HorizontalLayout buttonLayout = new HorizontalLayout();
+        buttonLayout.setSpacing(true);
+        gridLayout.addComponent(buttonLayout, 0, 0);
+
+        matrix = new EntryMatrix(entityManager);
+        gridLayout.addComponent(matrix, 0, 1);
+
+        final Button previousButton = new Button("Previous");
+        buttonLayout.addComponent(previousButton);
+        previousButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                if (checkPending() || matrix.getKeys().isEmpty()) {
+                    return;
+                }
+                final List<String> previousKeys = entityManager.createQuery(
+                        "select distinct e.key from Entry as e where e.owner.companyId = :companyId"
+                                + " and e.path = :path and e.basename = :basename and e.deleted is null"
+                                + " and e.key < :key order by e.key desc", String.class)
+                        .setParameter("companyId", companyId)
+                        .setParameter("path", path)
+                        .setParameter("basename", basename)
+                        .setParameter("key", matrix.getKeys().get(0))
+                        .setMaxResults(PAGE_SIZE)
+                        .getResultList();
+                if (!previousKeys.isEmpty()) {
+                    loadPage(previousKeys.get(previousKeys.size() - 1));
+                }
+            }
+        });
+
+        nextButton = new Button("Next");
+        buttonLayout.addComponent(nextButton);
+        nextButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                if (checkPending() || matrix.getKeys().isEmpty()) {
+                    return;
+                }
+                final List<String> keys = matrix.getKeys();
+                loadPage(keys.get(keys.size() - 1) + '\0');
+            }
+        });
+
+        final Button saveButton = new Button("Save All");
+        buttonLayout.addComponent(saveButton);
+        saveButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                final int pendingCount = matrix.getPendingCount();
+                final int failedCount = matrix.commit(getSite().getSecurityProvider().getUser());
+                readRouting.markWritten();
+                if (failedCount > 0) {
+                    Notification.show("Saved " + (pendingCount - failedCount) + " translations.",
+                            failedCount + " translations failed, see the marked cells.",
+                            Notification.Type.ERROR_MESSAGE);
+                } else if (pendingCount > 0) {
+                    Notification.show("Saved " + pendingCount + " translations.",
+                            Notification.Type.TRAY_NOTIFICATION);
+                }
+            }
+        });
+
+        final Button discardButton = new Button("Discard All");
+        buttonLayout.addComponent(discardButton);
+        discardButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                matrix.discard();
+            }
+        });
+    }
+
+    /**
+     * Shows bundle of given entry starting from the page of its key.
+     * @param entry the entry
+     */
+    public void show(final Entry entry) {
+        companyId = entry.getOwner().getCompanyId();
+        path = entry.getPath();
+        basename = entry.getBasename();
+        matrix.setCaption(basename);
+        loadPage(entry.getKey());
+    }
+
+    /**
+     * Loads page of keys starting from given key.
+     * @param fromKey the first key or key before the first key
+     */
+    private void loadPage(final String fromKey) {
+        final List<String> keys = entityManager.createQuery(
+                "select distinct e.key from Entry as e where e.owner.companyId = :companyId"
+                        + " and e.path = :path and e.basename = :basename and e.deleted is null"
+                        + " and e.key >= :key order by e.key", String.class)
+                .setParameter("companyId", companyId)
+                .setParameter("path", path)
+                .setParameter("basename", basename)
+                .setParameter("key", fromKey)
+                .setMaxResults(PAGE_SIZE + 1)
+                .getResultList();
+        nextButton.setEnabled(keys.size() > PAGE_SIZE);
+        if (keys.isEmpty()) {
+            matrix.load(companyId, path, basename, Collections.<String>emptyList());
+        } else {
+            matrix.load(companyId, path, basename, keys.subList(0, Math.min(PAGE_SIZE, keys.size())));
+        }
+    }
+
+    /**
+     * Checks if there are unsaved edits and notifies the translator.
+     * @return true if there are unsaved edits
+     */
+    private boolean checkPending() {
+        if (matrix.getPendingCount() > 0) {
+            Notification.show("Save or discard edits before changing page.", Notification.Type.WARNING_MESSAGE);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void enter() {
+    }
+
+}
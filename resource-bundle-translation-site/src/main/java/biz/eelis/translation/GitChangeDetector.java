@@ -0,0 +1,148 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists bundle files changed in git repository since the revision of last completed synchronization.
+ * Revisions are kept in memory so the first cycle after startup processes every file.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+final class GitChangeDetector {
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(GitChangeDetector.class);
+
+    /** Revisions of completed synchronizations by bundle directory path. */
+    private final Map<String, String> syncedRevisions = new HashMap<String, String>();
+    /** Revisions of current synchronization by bundle directory path. */
+    private final Map<String, String> pendingRevisions = new HashMap<String, String>();
+
+    /**
+     * Gets files changed in bundle directory since last completed synchronization.
+     * @param directory the bundle directory
+     * @return the changed files or null if changes are not known and every file should be processed
+     */
+    public List<File> getChangedFiles(final File directory) {
+        final String path = directory.getAbsolutePath();
+        try {
+            final List<String> head = execute(directory, "git", "rev-parse", "HEAD");
+            if (head == null || head.size() != 1) {
+                return null;
+            }
+            final String revision = head.get(0).trim();
+            pendingRevisions.put(path, revision);
+            final String syncedRevision = syncedRevisions.get(path);
+            if (syncedRevision == null) {
+                return null;
+            }
+            final List<File> changedFiles = new ArrayList<File>();
+            if (syncedRevision.equals(revision)) {
+                return changedFiles;
+            }
+            final List<String> names = execute(directory, "git", "diff", "--name-only", "--relative",
+                    syncedRevision, revision);
+            if (names == null) {
+                return null;
+            }
+            for (final String name : names) {
+                if (name.trim().length() > 0) {
+                    changedFiles.add(new File(directory, name.trim()));
+                }
+            }
+            LOGGER.debug("Files changed in " + path + " since " + syncedRevision + ": " + changedFiles);
+            return changedFiles;
+        } catch (final Exception e) {
+            LOGGER.warn("Error listing git changes of: " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Gets top level directory of git repository containing directory. Paths listed by git diff are
+     * relative to it.
+     * @param directory the directory
+     * @return the top level directory or null if directory is not in a git repository
+     */
+    public static File getTopLevel(final File directory) {
+        try {
+            final List<String> topLevel = execute(directory, "git", "rev-parse", "--show-toplevel");
+            if (topLevel == null || topLevel.size() != 1) {
+                return null;
+            }
+            return new File(topLevel.get(0).trim());
+        } catch (final Exception e) {
+            LOGGER.warn("Error resolving git repository of: " + directory.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Records revisions of current synchronization as synchronized once the cycle has completed.
+     */
+    public void commit() {
+        syncedRevisions.putAll(pendingRevisions);
+        pendingRevisions.clear();
+    }
+
+    /**
+     * Discards revisions of failed or interrupted synchronization so that the next cycle lists the
+     * same changes again.
+     */
+    public void rollback() {
+        pendingRevisions.clear();
+    }
+
+    /**
+     * Executes command in directory.
+     * @param directory the working directory
+     * @param command the command and arguments
+     * @return the output lines or null if command failed
+     * @throws IOException if command can not be executed.
+     * @throws InterruptedException if interrupted while waiting for command.
+     */
+    private static List<String> execute(final File directory, final String... command)
+            throws IOException, InterruptedException {
+        final Process process = new ProcessBuilder(command).directory(directory).redirectErrorStream(true).start();
+        final List<String> lines = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        if (process.waitFor() != 0) {
+            LOGGER.warn("Command " + command[0] + " " + command[1] + " failed in " + directory.getAbsolutePath()
+                    + ": " + lines);
+            return null;
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import biz.eelis.translation.dao.BundleStatisticsDao;
+import biz.eelis.translation.model.BundleStatistics;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.Button.ClickListener;
+import com.vaadin.ui.GridLayout;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Notification;
+import com.vaadin.ui.Table;
+import com.vaadin.ui.TextField;
+import org.vaadin.addons.lazyquerycontainer.LazyEntityContainer;
+import org.vaadin.addons.sitekit.flow.AbstractFlowlet;
+import org.vaadin.addons.sitekit.grid.FieldDescriptor;
+import org.vaadin.addons.sitekit.grid.FilterDescriptor;
+import org.vaadin.addons.sitekit.grid.FormattingTable;
+import org.vaadin.addons.sitekit.grid.Grid;
+import org.vaadin.addons.sitekit.model.Company;
+import org.vaadin.addons.sitekit.util.ContainerUtil;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bundle statistics Flowlet showing translation completeness of bundle locales.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class StatisticsFlowlet extends AbstractFlowlet {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+    /** The container. */
+    private LazyEntityContainer<BundleStatistics> container;
+
+    @Override
+    public String getFlowletKey() {
+        return "statistics";
+    }
+
+    @Override
+    public boolean isDirty() {
+        return false;
+    }
+
+    @Override
+    public boolean isValid() {
+        return true;
+    }
+
+    @Override
+    public void initialize() {
+        final List<FieldDescriptor> fieldDescriptors = TranslationSiteFields.getFieldDescriptors(
+                BundleStatistics.class);
+
+        final List<FilterDescriptor> filterDefinitions = new ArrayList<FilterDescriptor>();
+
+        filterDefinitions.add(new FilterDescriptor("basename", "basename", "Basename", new TextField(),
+                200, "like", String.class, ""));
+
+        filterDefinitions.add(new FilterDescriptor("language", "language", "Language", new TextField(),
+                30, "=", String.class, ""));
+
+        filterDefinitions.add(new FilterDescriptor("country", "country", "Country", new TextField(),
+                30, "=", String.class, ""));
+
+        final EntityManager entityManager = getSite().getSiteContext().getObject(EntityManager.class);
+        container = new LazyEntityContainer<BundleStatistics>(entityManager, true, true, false,
+                BundleStatistics.class, 1000,
+                new String[] {"basename", "language", "country"},
+                new boolean[] {true, true, true}, "bundleStatisticsId");
+
+        ContainerUtil.addContainerProperties(container, fieldDescriptors);
+
+        final GridLayout gridLayout = new GridLayout(1, 2);
+        gridLayout.setSizeFull();
+        gridLayout.setMargin(false);
+        gridLayout.setSpacing(true);
+        gridLayout.setRowExpandRatio(1, 1f);
+        setViewContent(gridLayout);
+
+        final HorizontalLayout buttonLayout = new HorizontalLayout();
+        buttonLayout.setSpacing(true);
+        buttonLayout.setSizeUndefined();
+        gridLayout.addComponent(buttonLayout, 0, 0);
+
+        final Table table = new FormattingTable();
+        final Grid grid = new Grid(table, container);
+        grid.setFields(fieldDescriptors);
+        grid.setFilters(filterDefinitions);
+
+        table.setColumnCollapsed("bundleStatisticsId", true);
+        gridLayout.addComponent(grid, 0, 1);
+
+        final Company company = getSite().getSiteContext().getObject(Company.class);
+
+        final Button refreshButton = new Button("Refresh");
+        buttonLayout.addComponent(refreshButton);
+        refreshButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                container.refresh();
+            }
+        });
+
+        final Button resetButton = new Button("Reset Modified");
+        buttonLayout.addComponent(resetButton);
+        resetButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                BundleStatisticsDao.resetModifiedCounts(entityManager, company);
+                container.refresh();
+            }
+        });
+
+        final Button rebuildButton = new Button("Rebuild");
+        rebuildButton.setDescription("Recounts statistics from entries.");
+        buttonLayout.addComponent(rebuildButton);
+        rebuildButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                BundleStatisticsDao.rebuild(entityManager, company);
+                container.refresh();
+            }
+        });
+
+        final Button synchronizeButton = new Button("Synchronize");
+        synchronizeButton.setDescription("Synchronizes bundles ahead of periodic synchronization.");
+        buttonLayout.addComponent(synchronizeButton);
+        synchronizeButton.addClickListener(new ClickListener() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void buttonClick(final ClickEvent event) {
+                final TranslationSynchronizer synchronizer = TranslationSiteUI.getSynchronizer();
+                if (synchronizer != null && synchronizer.requestSynchronization(company.getCompanyId())) {
+                    Notification.show("Synchronization requested.", Notification.Type.HUMANIZED_MESSAGE);
+                } else {
+                    Notification.show("Synchronization queue is full, please try again later.",
+                            Notification.Type.WARNING_MESSAGE);
+                }
+            }
+        });
+
+        container.removeDefaultFilters();
+        container.addDefaultFilter(
+                new Compare.Equal("owner.companyId", company.getCompanyId()));
+        grid.refresh();
+    }
+
+    @Override
+    public void enter() {
+        container.refresh();
+    }
+
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+/**
+ * Priorities of synchronization work in the order they are served.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public enum SyncPriority {
+    /** Synchronization requested by administrator. */
+    ON_DEMAND,
+    /** Write-behind publishing of bundles saved in the site. */
+    PUBLISH,
+    /** Periodic synchronization cycle. */
+    BACKGROUND
+}
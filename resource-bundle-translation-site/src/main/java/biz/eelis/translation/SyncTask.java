@@ -0,0 +1,80 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+/**
+ * Unit of synchronization work queued for the synchronizer thread.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class SyncTask {
+
+    /** The priority. */
+    private final SyncPriority priority;
+    /** The ID of the company the work belongs to. */
+    private final String companyId;
+    /** The key identifying equal work which is queued only once. */
+    private final String key;
+    /** The work. */
+    private final Runnable work;
+
+    /**
+     * Constructor for setting values.
+     * @param priority the priority
+     * @param companyId the ID of the company the work belongs to
+     * @param key the key identifying equal work which is queued only once
+     * @param work the work
+     */
+    public SyncTask(final SyncPriority priority, final String companyId, final String key, final Runnable work) {
+        this.priority = priority;
+        this.companyId = companyId;
+        this.key = key;
+        this.work = work;
+    }
+
+    /**
+     * @return the priority
+     */
+    public SyncPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return the ID of the company the work belongs to
+     */
+    public String getCompanyId() {
+        return companyId;
+    }
+
+    /**
+     * @return the key identifying equal work which is queued only once
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the work
+     */
+    public Runnable getWork() {
+        return work;
+    }
+
+    @Override
+    public String toString() {
+        return priority + " " + key;
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Synchronization work queue serving priorities strictly in order and companies of a priority in
+ * round-robin so that a company with a large bundle tree does not delay other companies. On-demand
+ * and publish work is bounded per company and producers wait for space or are rejected. Background
+ * work is not bounded as a synchronization cycle queues at most one task per bundle path prefix and
+ * the next cycle starts only after the previous one has been worked off. Work with the same key is
+ * queued only once.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class SyncWorkQueue {
+
+    /** The maximum number of queued tasks per company and bounded priority. */
+    private final int capacity;
+    /** Task queues of companies in round-robin order per priority. */
+    private final Map<SyncPriority, LinkedHashMap<String, LinkedList<SyncTask>>> queues =
+            new EnumMap<SyncPriority, LinkedHashMap<String, LinkedList<SyncTask>>>(SyncPriority.class);
+    /** Keys of queued tasks. */
+    private final Set<String> queuedKeys = new HashSet<String>();
+    /** The lock. */
+    private final Lock lock = new ReentrantLock();
+    /** Condition signalled when task is added. */
+    private final Condition notEmpty = lock.newCondition();
+    /** Condition signalled when task is removed. */
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * @param capacity the maximum number of queued tasks per company and bounded priority
+     */
+    public SyncWorkQueue(final int capacity) {
+        this.capacity = capacity;
+        for (final SyncPriority priority : SyncPriority.values()) {
+            queues.put(priority, new LinkedHashMap<String, LinkedList<SyncTask>>());
+        }
+    }
+
+    /**
+     * Adds task waiting for space in the queue of its company if necessary.
+     * @param task the task
+     * @param timeoutMillis the maximum time to wait for space in milliseconds
+     * @return ADDED if task was queued, MERGED if task with the same key was already queued or REJECTED
+     * if queue remained full
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public SyncOfferResult offer(final SyncTask task, final long timeoutMillis) throws InterruptedException {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (true) {
+                if (queuedKeys.contains(task.getKey())) {
+                    return SyncOfferResult.MERGED;
+                }
+                final LinkedHashMap<String, LinkedList<SyncTask>> companyQueues = queues.get(task.getPriority());
+                LinkedList<SyncTask> companyQueue = companyQueues.get(task.getCompanyId());
+                if (task.getPriority() == SyncPriority.BACKGROUND || companyQueue == null
+                        || companyQueue.size() < capacity) {
+                    if (companyQueue == null) {
+                        companyQueue = new LinkedList<SyncTask>();
+                        companyQueues.put(task.getCompanyId(), companyQueue);
+                    }
+                    companyQueue.add(task);
+                    queuedKeys.add(task.getKey());
+                    notEmpty.signal();
+                    return SyncOfferResult.ADDED;
+                }
+                if (remainingNanos <= 0) {
+                    return SyncOfferResult.REJECTED;
+                }
+                remainingNanos = notFull.awaitNanos(remainingNanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes next task. The company served is moved to the end of its priority round.
+     * @param timeoutMillis the maximum time to wait for task in milliseconds
+     * @return the task or null if no task was queued within timeout
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public SyncTask poll(final long timeoutMillis) throws InterruptedException {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (true) {
+                for (final SyncPriority priority : SyncPriority.values()) {
+                    final LinkedHashMap<String, LinkedList<SyncTask>> companyQueues = queues.get(priority);
+                    final Iterator<Map.Entry<String, LinkedList<SyncTask>>> iterator =
+                            companyQueues.entrySet().iterator();
+                    if (!iterator.hasNext()) {
+                        continue;
+                    }
+                    final Map.Entry<String, LinkedList<SyncTask>> companyEntry = iterator.next();
+                    final String companyId = companyEntry.getKey();
+                    final LinkedList<SyncTask> companyQueue = companyEntry.getValue();
+                    final SyncTask task = companyQueue.removeFirst();
+                    iterator.remove();
+                    if (!companyQueue.isEmpty()) {
+                        companyQueues.put(companyId, companyQueue);
+                    }
+                    queuedKeys.remove(task.getKey());
+                    notFull.signalAll();
+                    return task;
+                }
+                if (remainingNanos <= 0) {
+                    return null;
+                }
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of queued tasks
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return queuedKeys.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import biz.eelis.translation.model.BundleKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Bundle files and database bundles to process in one synchronization cycle. Full scope covers every
+ * file. Otherwise a locale file is processed if it, its base bundle file or its directory is listed
+ * as changed or if its entries have been changed in database.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+final class SynchronizationScope {
+
+    /** Canonical paths of changed files and directories or null if every file is in scope. */
+    private final Set<String> changedPaths;
+    /** The bundles changed in database. */
+    private final Set<BundleKey> changedBundles;
+
+    /**
+     * @param full true if every file is in scope
+     * @param changedBundles the bundles changed in database
+     */
+    SynchronizationScope(final boolean full, final Set<BundleKey> changedBundles) {
+        this.changedPaths = full ? null : new HashSet<String>();
+        this.changedBundles = changedBundles;
+    }
+
+    /**
+     * @return true if every file is in scope
+     */
+    public boolean isFull() {
+        return changedPaths == null;
+    }
+
+    /**
+     * Adds changed files. All files of a changed directory are in scope.
+     * @param files the changed files or directories
+     */
+    public void addChangedFiles(final Collection<File> files) {
+        if (changedPaths != null) {
+            for (final File file : files) {
+                changedPaths.add(getCanonicalPath(file));
+            }
+        }
+    }
+
+    /**
+     * @return the changed files and directories, empty if every file is in scope
+     */
+    public Collection<File> getChangedFiles() {
+        final Collection<File> files = new ArrayList<File>();
+        if (changedPaths != null) {
+            for (final String changedPath : changedPaths) {
+                files.add(new File(changedPath));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return the bundles changed in database
+     */
+    public Set<BundleKey> getChangedBundles() {
+        return changedBundles;
+    }
+
+    /**
+     * Checks whether any file of bundle has changed on disk or any of its locales in database.
+     * @param directory the bundle directory
+     * @param companyId the company ID
+     * @param basename the bundle basename
+     * @return true if bundle has changes
+     */
+    public boolean isChanged(final File directory, final String companyId, final String basename) {
+        final String directoryPath = getCanonicalPath(directory);
+        if (changedPaths == null || changedPaths.contains(directoryPath)) {
+            return true;
+        }
+        for (final String changedPath : changedPaths) {
+            final File changedFile = new File(changedPath);
+            if (directoryPath.equals(changedFile.getParent()) && changedFile.getName().startsWith(basename)) {
+                return true;
+            }
+        }
+        for (final BundleKey bundleKey : changedBundles) {
+            if (bundleKey.getCompanyId().equals(companyId) && directory.getAbsolutePath().equals(bundleKey.getPath())
+                    && bundleKey.getBasename().equals(basename)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether file has changed on disk.
+     * @param file the file
+     * @return true if file or its directory is listed as changed
+     */
+    public boolean isFileChanged(final File file) {
+        return changedPaths == null || changedPaths.contains(getCanonicalPath(file))
+                || changedPaths.contains(getCanonicalPath(file.getAbsoluteFile().getParentFile()));
+    }
+
+    /**
+     * Checks whether entries of bundle have changed in database.
+     * @param bundleKey the bundle key
+     * @return true if entries have changed
+     */
+    public boolean isBundleChanged(final BundleKey bundleKey) {
+        return changedBundles.contains(bundleKey);
+    }
+
+    /**
+     * Gets canonical path falling back to absolute path if file system can not resolve it.
+     * @param file the file
+     * @return the path
+     */
+    private static String getCanonicalPath(final File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (final IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+}
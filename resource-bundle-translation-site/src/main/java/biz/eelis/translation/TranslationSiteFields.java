@@ -15,8 +15,10 @@
  */
 package biz.eelis.translation;
 
+import biz.eelis.translation.model.BundleStatistics;
 import biz.eelis.translation.model.Entry;
 import com.vaadin.data.Validator;
+import com.vaadin.ui.CheckBox;
 import com.vaadin.ui.TextArea;
 import com.vaadin.ui.TextField;
 import org.vaadin.addons.sitekit.grid.FieldDescriptor;
@@ -135,6 +137,11 @@ public final class TranslationSiteFields {
                 TextArea.class, null,
                 400, null, String.class, "",
                 false, true, true));
+        TranslationSiteFields.add(Entry.class, new FieldDescriptor(
+                "reviewRequired", "Review",
+                CheckBox.class, null,
+                60, null, Boolean.class, false,
+                false, true, false));
         TranslationSiteFields.add(Entry.class, new FieldDescriptor(
                 "author", "Author",
                 TextField.class, null,
@@ -152,5 +159,56 @@ public final class TranslationSiteFields {
                 150, null, Date.class, null,
                 true, true, true));
 
+        TranslationSiteFields.add(BundleStatistics.class, new FieldDescriptor(
+                "bundleStatisticsId", "Bundle Statistics ID",
+                TextField.class, null,
+                100, null, String.class, null,
+                true, false, false));
+        TranslationSiteFields.add(BundleStatistics.class, new FieldDescriptor(
+                "basename", "Basename",
+                TextField.class, null,
+                -1, null, String.class, "",
+                true, true, false));
+        TranslationSiteFields.add(BundleStatistics.class, new FieldDescriptor(
+                "language", "Language",
+                TextField.class, null,
+                25, null, String.class, "",
+                true, true, false));
+        TranslationSiteFields.add(BundleStatistics.class, new FieldDescriptor(
+                "country", "Country",
+                TextField.class, null,
+                25, null, String.class, "",
+                true, true, false));
+        TranslationSiteFields.add(BundleStatistics.class, new FieldDescriptor(
+                "completeness", "Complete %",
+                TextField.class, null,
+                75, null, Double.class, null,
+                true, false, false));
+        TranslationSiteFields.add(BundleStatistics.class, new FieldDescriptor(
+                "entryCount", "Entries",
+                TextField.class, null,
+                75, null, Long.class, null,
+                true, true, false));
+        TranslationSiteFields.add(BundleStatistics.class, new FieldDescriptor(
+                "emptyCount", "Empty",
+                TextField.class, null,
+                75, null, Long.class, null,
+                true, true, false));
+        TranslationSiteFields.add(BundleStatistics.class, new FieldDescriptor(
+                "modifiedCount", "Modified",
+                TextField.class, null,
+                75, null, Long.class, null,
+                true, true, false));
+        TranslationSiteFields.add(BundleStatistics.class, new FieldDescriptor(
+                "since", "Modified Since",
+                TimestampField.class, TimestampFormatter.class,
+                150, null, Date.class, null,
+                true, true, false));
+        TranslationSiteFields.add(BundleStatistics.class, new FieldDescriptor(
+                "modified", "Last Modified",
+                TimestampField.class, TimestampFormatter.class,
+                150, null, Date.class, null,
+                true, true, false));
+
     }
 }
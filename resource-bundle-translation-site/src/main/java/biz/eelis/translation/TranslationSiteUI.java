@@ -15,6 +15,8 @@
  */
 package biz.eelis.translation;
 
+import biz.eelis.translation.util.HostCompanyCache;
+import biz.eelis.translation.util.ReadRouting;
 import com.vaadin.annotations.Theme;
 import com.vaadin.server.VaadinRequest;
 import com.vaadin.server.VaadinService;
@@ -58,7 +60,12 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * BareSite UI.
@@ -75,17 +82,36 @@ public final class TranslationSiteUI extends AbstractSiteUI implements ContentPr
     private static final String PROPERTIES_CATEGORY = "translation-site";
     /** The persistence unit to be used. */
     public static final String PERSISTENCE_UNIT = "translation-site";
+    /** The roles of the site. */
+    private static final List<String> ROLES = Collections.unmodifiableList(
+            Arrays.asList("administrator", "translator", "user"));
 
     /**
-     * Main method for running TranslationSiteUI.
+     * Main method for running TranslationSiteUI. Persistence unit deployment and synchronizer start
+     * run in parallel with Jetty startup. If system property translation-site.exit-after-startup is
+     * true the server is stopped once started, which is used to measure startup time.
      * @param args the commandline arguments
      * @throws Exception if exception occurs in jetty startup.
      */
     public static void main(final String[] args) throws Exception {
+        final long startTime = System.currentTimeMillis();
         DOMConfigurator.configure("./log4j.xml");
 
         entityManagerFactory = PersistenceUtil.getEntityManagerFactory(PERSISTENCE_UNIT, PROPERTIES_CATEGORY);
 
+        final ExecutorService initializer = Executors.newSingleThreadExecutor();
+        final Future<TranslationSynchronizer> synchronizerFuture = initializer.submit(
+                new Callable<TranslationSynchronizer>() {
+            @Override
+            public TranslationSynchronizer call() throws Exception {
+                // Creating first entity manager deploys the persistence unit.
+                final EntityManager entityManager = entityManagerFactory.createEntityManager();
+                LOGGER.info("Persistence unit deployed in " + (System.currentTimeMillis() - startTime) + " ms.");
+                return new TranslationSynchronizer(entityManager);
+            }
+        });
+        initializer.shutdown();
+
         final String webappUrl = TranslationSiteUI.class.getClassLoader()
                 .getResource("webapp/").toExternalForm();
 
@@ -99,12 +125,26 @@ public final class TranslationSiteUI extends AbstractSiteUI implements ContentPr
         context.setDescriptor(webappUrl + "/WEB-INF/web.xml");
         context.setResourceBase(webappUrl);
         context.setParentLoaderPriority(true);
+        // Classes are loaded from parent class path so there are no WEB-INF libraries or fragments to scan.
+        context.setConfigurationClasses(new String[] {
+                "org.eclipse.jetty.webapp.WebInfConfiguration",
+                "org.eclipse.jetty.webapp.WebXmlConfiguration",
+                "org.eclipse.jetty.webapp.JettyWebXmlConfiguration"});
 
         server.setHandler(context);
         server.start();
+        LOGGER.info("Jetty started in " + (System.currentTimeMillis() - startTime) + " ms.");
 
-        final TranslationSynchronizer translationSynchronizer = new TranslationSynchronizer(
-                entityManagerFactory.createEntityManager());
+        final TranslationSynchronizer translationSynchronizer = synchronizerFuture.get();
+        synchronizer = translationSynchronizer;
+        LOGGER.info("Started in " + (System.currentTimeMillis() - startTime) + " ms.");
+
+        if (Boolean.getBoolean("translation-site.exit-after-startup")) {
+            translationSynchronizer.shutdown();
+            server.stop();
+            entityManagerFactory.close();
+            return;
+        }
 
         Runtime.getRuntime().addShutdownHook(new Thread() {
             public void run() {
@@ -121,35 +161,92 @@ public final class TranslationSiteUI extends AbstractSiteUI implements ContentPr
 
     @Override
     protected Site constructSite(final VaadinRequest request) {
+        final long startTime = System.currentTimeMillis();
 
         final ContentProvider contentProvider = this;
 
-        final LocalizationProvider localizationProvider =
-                new LocalizationProviderBundleImpl(new String[] {"translation-site-localization",
-                        "bare-site-localization"});
+        final LocalizationProvider localizationProvider = getLocalizationProvider();
         BareSiteFields.initialize(localizationProvider, getLocale());
         TranslationSiteFields.initialize(localizationProvider, getLocale());
 
         final SiteContext siteContext = new SiteContext();
         final EntityManager entityManager = entityManagerFactory.createEntityManager();
         siteContext.putObject(EntityManager.class, entityManager);
+        siteContext.putObject(ReadRouting.class, new ReadRouting(entityManager));
 
-        Company company = CompanyDao.getCompany(entityManager,
+        final Company company = HostCompanyCache.getCompany(entityManager,
                 ((VaadinServletRequest) VaadinService.getCurrentRequest()).getHttpServletRequest().getServerName());
+        siteContext.putObject(Company.class, company);
+
+        final SecurityProviderSessionImpl securityProvider = new SecurityProviderSessionImpl(ROLES);
+
+        final Site site = new Site(SiteMode.PRODUCTION, contentProvider, localizationProvider, securityProvider,
+                siteContext);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Constructed site in " + (System.currentTimeMillis() - startTime) + " ms.");
+        }
+        return site;
+    }
+
+    /**
+     * Gets localization provider shared by all UIs.
+     * @return the localization provider
+     */
+    private static synchronized LocalizationProvider getLocalizationProvider() {
+        if (localizationProvider == null) {
+            localizationProvider = new LocalizationProviderBundleImpl(new String[] {"translation-site-localization",
+                    "bare-site-localization"});
+        }
+        return localizationProvider;
+    }
+
+    /**
+     * Resolves company serving given host name.
+     * @param entityManager the entity manager
+     * @param serverName the server host name
+     * @return the company or null if neither host specific nor global company exists
+     */
+    public static Company resolveCompany(final EntityManager entityManager, final String serverName) {
+        Company company = CompanyDao.getCompany(entityManager, serverName);
         if (company == null) {
             // If no exact host match exists then try to find global company marked with *.
             company = CompanyDao.getCompany(entityManager, "*");
         }
-        siteContext.putObject(Company.class, company);
+        return company;
+    }
 
-        final SecurityProviderSessionImpl securityProvider = new SecurityProviderSessionImpl(
-                Arrays.asList("administrator", "translator", "user"));
+    /**
+     * @return the entity manager factory
+     */
+    public static EntityManagerFactory getEntityManagerFactory() {
+        return entityManagerFactory;
+    }
 
-        return new Site(SiteMode.PRODUCTION, contentProvider, localizationProvider, securityProvider, siteContext);
+    /**
+     * @return the translation synchronizer or null if not started
+     */
+    public static TranslationSynchronizer getSynchronizer() {
+        return synchronizer;
     }
 
     @Override
     public SiteDescriptor getSiteDescriptor() {
+        return SiteDescriptorHolder.SITE_DESCRIPTOR;
+    }
+
+    /**
+     * Holder of site descriptor shared by all UIs. The descriptor is constructed on first use.
+     */
+    private static final class SiteDescriptorHolder {
+        /** The site descriptor. */
+        private static final SiteDescriptor SITE_DESCRIPTOR = constructSiteDescriptor();
+    }
+
+    /**
+     * Constructs the site descriptor.
+     * @return the site descriptor
+     */
+    private static SiteDescriptor constructSiteDescriptor() {
         final List<ViewDescriptor> viewDescriptors = new ArrayList<ViewDescriptor>();
 
         viewDescriptors.add(new ViewDescriptor("master", null, null, new ViewVersion(0, null, "Master", "",
@@ -172,6 +269,14 @@ public final class TranslationSiteUI extends AbstractSiteUI implements ContentPr
                         EntryFlowViewlet.class.getCanonicalName())
                 ))));
 
+        viewDescriptors.add(new ViewDescriptor("statistics", null, null, new ViewVersion(
+                0, "master", "Statistics", "", "This is statistics page.",
+                FixedWidthView.class.getCanonicalName(), new String[]{"translator", "administrator"},
+                Arrays.asList(new ViewletDescriptor(
+                        "content", "Flowlet Sheet", "This is flow sheet.", null,
+                        StatisticsFlowViewlet.class.getCanonicalName())
+                ))));
+
         viewDescriptors.add(new ViewDescriptor("users", null, null, new ViewVersion(
                 0, "master", "Users", "", "This is users page.",
                 FixedWidthView.class.getCanonicalName(), new String[]{"administrator"},
@@ -219,7 +324,7 @@ public final class TranslationSiteUI extends AbstractSiteUI implements ContentPr
                 ))));
 
         final NavigationDescriptor navigationDescriptor = new NavigationDescriptor("navigation", null, null,
-                new NavigationVersion(0, "default", "default;users;groups;companies;login", true));
+                new NavigationVersion(0, "default", "default;statistics;users;groups;companies;login", true));
 
         return new SiteDescriptor("Test site.", "test site", "This is a test site.",
                 navigationDescriptor, viewDescriptors);
@@ -228,5 +333,9 @@ public final class TranslationSiteUI extends AbstractSiteUI implements ContentPr
 
     /** The entity manager factory for test. */
     private static EntityManagerFactory entityManagerFactory;
+    /** The localization provider shared by all UIs. */
+    private static LocalizationProvider localizationProvider;
+    /** The translation synchronizer started by main. */
+    private static volatile TranslationSynchronizer synchronizer;
 
 }
@@ -15,7 +15,15 @@
  */
 package biz.eelis.translation;
 
+import biz.eelis.translation.change.EntryChangeEvent;
+import biz.eelis.translation.change.EntryChangeListener;
+import biz.eelis.translation.change.EntryChangeNotifier;
+import biz.eelis.translation.dao.BundleStatisticsDao;
+import biz.eelis.translation.dao.BundleStatisticsDelta;
+import biz.eelis.translation.dao.ExactMatchIndex;
+import biz.eelis.translation.model.BundleKey;
 import biz.eelis.translation.model.Entry;
+import biz.eelis.translation.util.OptimisticLockUtil;
 import org.apache.log4j.Logger;
 import org.vaadin.addons.sitekit.dao.CompanyDao;
 import org.vaadin.addons.sitekit.dao.UserDao;
@@ -31,15 +39,15 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -65,7 +73,59 @@ public class TranslationSynchronizer {
     /**
      * Shutdown requested.
      */
-    private boolean shutdown = false;
+    private volatile boolean shutdown = false;
+    /**
+     * Source of changed file lists: all, hook or git.
+     */
+    private final String changedFilesSource;
+    /**
+     * Git change detector or null if git is not the source of changed files.
+     */
+    private final GitChangeDetector gitChangeDetector;
+    /**
+     * Bundles changed in database by others than synchronizer since the last cycle started.
+     */
+    private final Set<BundleKey> changedBundles = Collections.synchronizedSet(new HashSet<BundleKey>());
+    /**
+     * Files which failed to synchronize and are retried in the next cycle.
+     */
+    private final Set<File> retryFiles = new HashSet<File>();
+    /**
+     * The entry change listener recording changed bundles.
+     */
+    private final EntryChangeListener changeListener;
+    /**
+     * The bundle file writer.
+     */
+    private final BundleFileWriter bundleFileWriter;
+    /**
+     * The write-behind publisher of bundles saved in the site.
+     */
+    private final BundlePublisher bundlePublisher;
+    /**
+     * The synchronization work queue.
+     */
+    private final SyncWorkQueue workQueue;
+    /**
+     * Company IDs of bundle path prefixes resolved in the last cycle.
+     */
+    private volatile Map<String, String> prefixCompanyIds = Collections.emptyMap();
+    /**
+     * Number of background tasks of the current cycle not yet executed or -1 if no cycle is running.
+     */
+    private int pendingCycleTasks = -1;
+    /**
+     * True once a cycle has processed every file.
+     */
+    private boolean fullScanDone = false;
+    /**
+     * The scope of the current cycle.
+     */
+    private SynchronizationScope cycleScope;
+    /**
+     * True if a background task of the current cycle failed or was interrupted.
+     */
+    private boolean cycleFailed;
 
     /**
      * Constructor which starts synchronizer.
@@ -78,6 +138,10 @@ public class TranslationSynchronizer {
 
         final long synchronizePeriodMillis = Long.parseLong(PropertiesUtil.getProperty("translation-site",
                 "synchronize-period-millis"));
+        changedFilesSource = PropertiesUtil.getProperty("translation-site", "synchronize-changed-files");
+        gitChangeDetector = "git".equals(changedFilesSource) ? new GitChangeDetector() : null;
+        workQueue = new SyncWorkQueue(Integer.parseInt(PropertiesUtil.getProperty("translation-site",
+                "sync-queue-capacity")));
 
         thread = new Thread(new Runnable() {
             @Override
@@ -86,258 +150,726 @@ public class TranslationSynchronizer {
                 lastTimeMillis = lastTimeMillis - lastTimeMillis % synchronizePeriodMillis;
 
                 while (!shutdown) {
+                    if (pendingCycleTasks < 0 && System.currentTimeMillis() >= lastTimeMillis
+                            + synchronizePeriodMillis) {
+                        lastTimeMillis = System.currentTimeMillis();
+                        lastTimeMillis = lastTimeMillis - lastTimeMillis % synchronizePeriodMillis;
+                        startCycle();
+                    }
 
-                    while (System.currentTimeMillis() < lastTimeMillis + synchronizePeriodMillis) {
-                        try {
-                            Thread.sleep(100);
-                        } catch (final InterruptedException e) {
-                            LOGGER.debug(e);
-                            if (shutdown) {
-                                return;
-                            }
-                        }
+                    final SyncTask task;
+                    try {
+                        task = workQueue.poll(100);
+                    } catch (final InterruptedException e) {
+                        LOGGER.debug(e);
+                        continue;
+                    }
+                    if (task != null) {
+                        execute(task);
                     }
 
-                    lastTimeMillis = System.currentTimeMillis();
-                    lastTimeMillis = lastTimeMillis - lastTimeMillis % synchronizePeriodMillis;
-                    synchronize();
+                    if (pendingCycleTasks == 0 && !shutdown) {
+                        finishCycle();
+                    }
                 }
             }
-        });
+        }, "translation-synchronizer");
+
+        changeListener = new EntryChangeListener() {
+            @Override
+            public void entriesChanged(final EntryChangeEvent event) {
+                if (Thread.currentThread() != thread) {
+                    changedBundles.addAll(event.getBundleKeys());
+                }
+            }
+        };
+        EntryChangeNotifier.addListener(changeListener);
+
+        bundleFileWriter = new BundleFileWriter(entityManager);
+        bundlePublisher = new BundlePublisher(workQueue, bundleFileWriter, thread);
+
         thread.start();
     }
 
     /**
-     * Synchronizes bundles and database.
+     * Requests synchronization of every bundle of company ahead of periodic synchronization.
+     *
+     * @param companyId the company ID
+     * @return false if synchronization queue of the company is full
      */
-    private void synchronize() {
-        entityManager.clear();
+    public boolean requestSynchronization(final String companyId) {
+        final SynchronizationScope scope = new SynchronizationScope(true, Collections.<BundleKey>emptySet());
+        for (final Map.Entry<String, String> prefixCompanyId : prefixCompanyIds.entrySet()) {
+            if (companyId.equals(prefixCompanyId.getValue())) {
+                final String prefixPart = prefixCompanyId.getKey();
+                try {
+                    if (workQueue.offer(createBundleTask(SyncPriority.ON_DEMAND, companyId, prefixPart, scope),
+                            0) == SyncOfferResult.REJECTED) {
+                        return false;
+                    }
+                } catch (final InterruptedException e) {
+                    LOGGER.debug(e);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
 
-        executeShellCommand(PropertiesUtil.getProperty("translation-site", "pre-synchronize-command-hook"));
+    /**
+     * Starts synchronization cycle by executing pre-synchronize hook and queuing background task
+     * for each bundle path prefix.
+     */
+    private void startCycle() {
+        entityManager.clear();
 
-        final String bundleCharacterSet = PropertiesUtil.getProperty("translation-site", "bundle-character-set");
-        final String[] prefixes = PropertiesUtil.getProperty("translation-site", "bundle-path-prefixes").split(",");
-
-        for (final String prefixPart : prefixes) {
-            final String prefix = prefixPart.split(":")[1];
-            final String host = prefixPart.split(":")[0];
-            final Company company = CompanyDao.getCompany(entityManager, host);
-            final File baseBundle = new File(prefix + ".properties");
-            if (!baseBundle.exists()) {
-                LOGGER.info("Base bundle does not exist: " + baseBundle.getAbsolutePath());
+        final List<String> hookOutput = executeShellCommand(PropertiesUtil.getProperty("translation-site",
+                "pre-synchronize-command-hook"));
+        final SynchronizationScope scope = createScope(hookOutput);
+        cycleScope = scope;
+        cycleFailed = false;
+
+        pendingCycleTasks = 0;
+        final Map<String, String> companyIds = new LinkedHashMap<String, String>();
+        for (final String prefixPart : PropertiesUtil.getProperty("translation-site", "bundle-path-prefixes")
+                .split(",")) {
+            final Company company = CompanyDao.getCompany(entityManager, prefixPart.split(":")[0]);
+            if (company == null) {
+                LOGGER.warn("No company for bundle path prefix: " + prefixPart);
                 continue;
             }
+            final String companyId = company.getCompanyId();
+            companyIds.put(prefixPart, companyId);
+            try {
+                // Prefix listed twice is queued once and must be counted once for the cycle to finish.
+                if (workQueue.offer(createBundleTask(SyncPriority.BACKGROUND, companyId, prefixPart, scope), 0)
+                        == SyncOfferResult.ADDED) {
+                    pendingCycleTasks++;
+                }
+            } catch (final InterruptedException e) {
+                LOGGER.debug(e);
+            }
+        }
+        prefixCompanyIds = companyIds;
+    }
 
-            LOGGER.info("Base bundle exists: " + baseBundle.getAbsolutePath());
-            String baseName = baseBundle.getName().substring(0, baseBundle.getName().length() - 11);
-            if (baseName.indexOf('_') >= 0) {
-                baseName = baseName.substring(0, baseName.indexOf('_'));
+    /**
+     * Finishes synchronization cycle once its tasks have been executed. If a task failed or was
+     * interrupted the changes of the cycle are carried over to the next cycle.
+     */
+    private void finishCycle() {
+        pendingCycleTasks = -1;
+        if (cycleFailed) {
+            LOGGER.warn("Synchronization cycle did not complete, retrying its changes in the next cycle.");
+            if (gitChangeDetector != null) {
+                gitChangeDetector.rollback();
             }
+            if (cycleScope.isFull()) {
+                fullScanDone = false;
+            } else {
+                retryFiles.addAll(cycleScope.getChangedFiles());
+                changedBundles.addAll(cycleScope.getChangedBundles());
+            }
+        } else {
+            fullScanDone = true;
+            if (gitChangeDetector != null) {
+                gitChangeDetector.commit();
+            }
+        }
+        cycleScope = null;
 
-            final File bundleDirectory = baseBundle.getParentFile();
-            final String bundleDirectoryPath = bundleDirectory.getAbsolutePath();
+        purgeOrphans();
 
-            LOGGER.info("Basename: " + baseName);
-            LOGGER.info("Path: " + bundleDirectoryPath);
+        executeShellCommand(PropertiesUtil.getProperty("translation-site", "post-synchronize-command-hook"));
+    }
 
-            final Set<Object> keys;
-            final Properties baseBundleProperties;
-            try {
-                baseBundleProperties = new Properties();
-                final FileInputStream baseBundleInputStream = new FileInputStream(baseBundle);
-                baseBundleProperties.load(new InputStreamReader(baseBundleInputStream, bundleCharacterSet));
-                keys = baseBundleProperties.keySet();
-                baseBundleInputStream.close();
-            } catch (Exception e) {
-                LOGGER.error("Error reading bundle: " + baseName, e);
-                continue;
+    /**
+     * Executes task on synchronizer thread.
+     *
+     * @param task the task
+     */
+    private void execute(final SyncTask task) {
+        final long startTimeMillis = System.currentTimeMillis();
+        try {
+            task.getWork().run();
+        } catch (final Throwable t) {
+            LOGGER.error("Error executing synchronization task: " + task, t);
+            if (task.getPriority() == SyncPriority.BACKGROUND) {
+                cycleFailed = true;
             }
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            entityManager.clear();
+            if (task.getPriority() == SyncPriority.BACKGROUND && pendingCycleTasks > 0) {
+                pendingCycleTasks--;
+            }
+        }
+        LOGGER.debug("Executed " + task + " in " + (System.currentTimeMillis() - startTimeMillis) + " ms, queued: "
+                + workQueue.size());
+    }
+
+    /**
+     * Creates task synchronizing bundle of path prefix.
+     *
+     * @param priority the priority
+     * @param companyId the company ID
+     * @param prefixPart the bundle path prefix with host
+     * @param scope the synchronization scope
+     * @return the task
+     */
+    private SyncTask createBundleTask(final SyncPriority priority, final String companyId, final String prefixPart,
+                                      final SynchronizationScope scope) {
+        return new SyncTask(priority, companyId, priority + ":" + prefixPart, new Runnable() {
+            @Override
+            public void run() {
+                if (!synchronizeBundle(companyId, prefixPart, scope) && priority == SyncPriority.BACKGROUND) {
+                    cycleFailed = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * Synchronizes bundle of path prefix and database. Unless every file is in scope only bundle
+     * files listed as changed, their locales and bundles changed in database are processed.
+     *
+     * @param companyId the company ID
+     * @param prefixPart the bundle path prefix with host
+     * @param scope the synchronization scope
+     * @return false if synchronization was interrupted by shutdown
+     */
+    private boolean synchronizeBundle(final String companyId, final String prefixPart,
+                                      final SynchronizationScope scope) {
+        final String bundleCharacterSet = PropertiesUtil.getProperty("translation-site", "bundle-character-set");
+        final String prefix = prefixPart.split(":")[1];
+        final Company company = entityManager.find(Company.class, companyId);
+        final File baseBundle = new File(prefix + ".properties");
+        if (!baseBundle.exists()) {
+            LOGGER.info("Base bundle does not exist: " + baseBundle.getAbsolutePath());
+            return true;
+        }
+
+        LOGGER.info("Base bundle exists: " + baseBundle.getAbsolutePath());
+        String baseName = baseBundle.getName().substring(0, baseBundle.getName().length() - 11);
+        if (baseName.indexOf('_') >= 0) {
+            baseName = baseName.substring(0, baseName.indexOf('_'));
+        }
+
+        final File bundleDirectory = baseBundle.getAbsoluteFile().getParentFile();
+        final String bundleDirectoryPath = bundleDirectory.getAbsolutePath();
+
+        LOGGER.info("Basename: " + baseName);
+        LOGGER.info("Path: " + bundleDirectoryPath);
+
+        if (gitChangeDetector != null) {
+            final List<File> changedFiles = gitChangeDetector.getChangedFiles(bundleDirectory);
+            scope.addChangedFiles(changedFiles != null ? changedFiles
+                    : Collections.singletonList(bundleDirectory));
+        }
+        if (!scope.isChanged(bundleDirectory, company.getCompanyId(), baseName)) {
+            LOGGER.info("No changes in bundle: " + baseName);
+            return true;
+        }
+        final boolean baseChanged = scope.isFileChanged(baseBundle);
+
+        final List<String> keys;
+        final Properties baseBundleProperties;
+        try {
+            baseBundleProperties = loadProperties(baseBundle, bundleCharacterSet);
+            keys = new ArrayList<String>(baseBundleProperties.stringPropertyNames());
+            Collections.sort(keys);
+        } catch (Exception e) {
+            LOGGER.error("Error reading bundle: " + baseName, e);
+            return true;
+        }
 
-            final Map<String, List<String>> missingKeys = new HashMap<String, List<String>>();
-            final SimpleDateFormat format = new SimpleDateFormat("yyyy/MM/dd hh:mm:ss");
+        final Map<String, List<String>> missingKeys = new HashMap<String, List<String>>();
+        final List<BundleKey> synchronizedBundleKeys = new ArrayList<BundleKey>();
+        final ExactMatchIndex exactMatchIndex = new ExactMatchIndex(entityManager, company.getCompanyId());
 
-            for (final File candidate : bundleDirectory.listFiles()) {
-                if (candidate.getName().startsWith(baseName) && candidate.getName().endsWith(".properties")) {
+        for (final File candidate : bundleDirectory.listFiles()) {
+            if (candidate.getName().startsWith(baseName) && candidate.getName().endsWith(".properties")) {
 
-                    final String name = candidate.getName().split("\\.")[0];
-                    final String[] parts = name.split("_");
+                final String name = candidate.getName().split("\\.")[0];
+                final String[] parts = name.split("_");
 
-                    String candidateBaseName = parts[0];
-                    if (candidateBaseName.equals(baseName)) {
-                        String language = "";
-                        String country = "";
-                        if (parts.length > 1) {
-                            language = parts [1];
-                            if (parts.length > 2) {
-                                country = parts[2];
-                            }
+                String candidateBaseName = parts[0];
+                if (candidateBaseName.equals(baseName)) {
+                    String language = "";
+                    String country = "";
+                    if (parts.length > 1) {
+                        language = parts [1];
+                        if (parts.length > 2) {
+                            country = parts[2];
                         }
+                    }
 
-                        LOGGER.info("Bundle basename: '" + candidateBaseName
-                                + "' language: '" + language + "' country: '" + country + "'");
+                    LOGGER.info("Bundle basename: '" + candidateBaseName
+                            + "' language: '" + language + "' country: '" + country + "'");
 
-                        entityManager.getTransaction().begin();
-                        try {
-                            final Properties properties = new Properties();
-                            final FileInputStream bundleInputStream = new FileInputStream(candidate);
-                            properties.load(new InputStreamReader(bundleInputStream, bundleCharacterSet));
-                            bundleInputStream.close();
-
-                            final TypedQuery<Entry> query = entityManager.createQuery("select e from Entry as e where " +
-                                    "e.path=:path and e.basename=:basename and " +
-                                    "e.language=:language and e.country=:country order by e.key", Entry.class);
-                            query.setParameter("path", bundleDirectoryPath);
-                            query.setParameter("basename", baseName);
-                            query.setParameter("language", language);
-                            query.setParameter("country", country);
-                            final List<Entry> entries = query.getResultList();
-                            final Set<String> existingKeys = new HashSet<String>();
-
-                            for (final Entry entry : entries) {
-                                if (keys.contains(entry.getKey())) {
-                                    if (candidate.equals(baseBundle) || (entry.getValue().length() == 0 && properties.containsKey(entry.getKey()) &&
-                                            ((String) properties.get(entry.getKey())).length() > 0)) {
-                                        entry.setValue((String) properties.get(entry.getKey()));
-                                        entityManager.persist(entry);
-                                    }
-
-                                }
-                                existingKeys.add(entry.getKey());
-                            }
-
-                            for (final Object obj : keys) {
-                                final String key = (String) obj;
-
-                                final String value;
-                                if (properties.containsKey(key)) {
-                                    value = (String) properties.get(key);
-                                } else {
-                                    value = "";
-                                }
-
-                                if (!existingKeys.contains(key)) {
-                                    final Entry entry = new Entry();
-                                    entry.setOwner(company);
-                                    entry.setPath(bundleDirectoryPath);
-                                    entry.setBasename(baseName);
-                                    entry.setLanguage(language);
-                                    entry.setCountry(country);
-                                    entry.setKey(key);
-                                    entry.setValue(value);
-                                    entry.setCreated(new Date());
-                                    entry.setModified(entry.getCreated());
-                                    entityManager.persist(entry);
-
-                                    final String locale = entry.getLanguage() + "_" + entry.getCountry();
-
-                                    if (!missingKeys.containsKey(locale)) {
-                                        missingKeys.put(locale, new ArrayList<String>());
-                                    }
-
-                                    missingKeys.get(locale).add(entry.getKey());
-                                }
-
-                            }
-                            entityManager.getTransaction().commit();
-
-                            if (!candidate.equals(baseBundle)) {
-
-                                final FileOutputStream fileOutputStream = new FileOutputStream(candidate, false);
-                                final OutputStreamWriter writer = new OutputStreamWriter(fileOutputStream,
-                                        bundleCharacterSet);
-                                final PrintWriter printWriter = new PrintWriter(writer);
-
-                                for (final Entry entry : query.getResultList()) {
-                                    printWriter.print("# Modified: ");
-                                    printWriter.print(format.format(entry.getModified()));
-                                    if (entry.getAuthor() != null) {
-                                        printWriter.print(" Author: ");
-                                        printWriter.print(entry.getAuthor());
-                                    }
-                                    printWriter.println();
-                                    printWriter.print(entry.getKey());
-                                    printWriter.print("=");
-                                    final String value = entry.getValue().replace("\n", "\\\n");
-                                    printWriter.println(value);
-                                }
-
-                                printWriter.flush();
-                                printWriter.close();
-                                fileOutputStream.close();
-
-
-                            }
-                        } catch (Exception e) {
-                            if (entityManager.getTransaction().isActive()) {
-                                entityManager.getTransaction().rollback();
-                            }
-                            LOGGER.error("Error reading bundle: " + baseName, e);
+                    final BundleKey bundleKey = new BundleKey(company.getCompanyId(), bundleDirectoryPath,
+                            baseName, language, country);
+                    final boolean fileChanged = baseChanged || scope.isFileChanged(candidate);
+                    if (!fileChanged && !scope.isBundleChanged(bundleKey)) {
+                        continue;
+                    }
+                    final List<String> localeMissingKeys = new ArrayList<String>();
+                    try {
+                        if (!synchronizeLocale(bundleKey, candidate, candidate.getName().equals(
+                                baseBundle.getName()), fileChanged, keys, baseBundleProperties,
+                                exactMatchIndex, localeMissingKeys, bundleCharacterSet)) {
+                            return false;
+                        }
+                        synchronizedBundleKeys.add(bundleKey);
+                    } catch (Exception e) {
+                        if (entityManager.getTransaction().isActive()) {
+                            entityManager.getTransaction().rollback();
+                        }
+                        retryFiles.add(candidate);
+                        if (OptimisticLockUtil.isOptimisticLockFailure(e)) {
+                            // Translator edits win over synchronizer updates. The rest of the bundle is not
+                            // retried now but picked up again with fresh state on the next synchronization
+                            // cycle. Chunks committed before the conflict are kept.
+                            LOGGER.info("Entries of bundle were modified concurrently, skipping until next cycle: "
+                                    + candidate.getAbsolutePath());
                             continue;
                         }
+                        LOGGER.error("Error reading bundle: " + baseName, e);
+                        continue;
+                    } finally {
+                        entityManager.clear();
+                        if (!localeMissingKeys.isEmpty()) {
+                            missingKeys.put(language + "_" + country, localeMissingKeys);
+                        }
                     }
                 }
             }
+        }
 
-            final String smtpHost = PropertiesUtil.getProperty("translation-site", "smtp-host");
-            for (final String locale : missingKeys.keySet()) {
-                final List<String> keySet = missingKeys.get(locale);
+        try {
+            bundleFileWriter.writeDerived(company.getCompanyId(), bundleDirectoryPath, baseName,
+                    synchronizedBundleKeys, bundleCharacterSet);
+        } catch (final Exception e) {
+            LOGGER.error("Error writing resolved bundles and artifacts: " + baseName, e);
+        }
 
-                final String subject = "Please translate " + locale;
-                String content = "Missing keys are: ";
-                for (final String key : keySet) {
-                    content += key + "\n";
-                }
+        final String smtpHost = PropertiesUtil.getProperty("translation-site", "smtp-host");
+        for (final String locale : missingKeys.keySet()) {
+            final List<String> keySet = missingKeys.get(locale);
 
-                final Group group = UserDao.getGroup(entityManager, company, locale);
+            final String subject = "Please translate " + locale;
+            String content = "Missing keys are: ";
+            for (final String key : keySet) {
+                content += key + "\n";
+            }
+
+            final Group group = UserDao.getGroup(entityManager, company, locale);
 
-                if (group != null) {
-                    final List<User> users = UserDao.getGroupMembers(entityManager, company, group);
-                    for (final User user : users) {
-                        LOGGER.info("Sending translation request to " + user.getEmailAddress() + " for " + locale +
-                                " keys " + keySet);
-                        EmailUtil.send(smtpHost,
-                                user.getEmailAddress(), company.getSupportEmailAddress(), subject, content);
+            if (group != null) {
+                final List<User> users = UserDao.getGroupMembers(entityManager, company, group);
+                for (final User user : users) {
+                    LOGGER.info("Sending translation request to " + user.getEmailAddress() + " for " + locale +
+                            " keys " + keySet);
+                    EmailUtil.send(smtpHost,
+                            user.getEmailAddress(), company.getSupportEmailAddress(), subject, content);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates scope of synchronization cycle. Every file is in scope in the first cycle after startup,
+     * when changed files are not tracked and when the pre-synchronize hook fails. In hook mode each
+     * output line of the pre-synchronize hook ending with .properties is a changed file path, either
+     * absolute or relative to the top level of the git repository of bundle directories as git diff
+     * lists them. Files which failed in the previous cycle are always in scope.
+     *
+     * @param hookOutput the output lines of the pre-synchronize hook or null if it failed
+     * @return the synchronization scope
+     */
+    private SynchronizationScope createScope(final List<String> hookOutput) {
+        final Set<BundleKey> cycleChangedBundles;
+        synchronized (changedBundles) {
+            cycleChangedBundles = new HashSet<BundleKey>(changedBundles);
+            changedBundles.clear();
+        }
+        final boolean hookSource = "hook".equals(changedFilesSource);
+        final boolean full = !fullScanDone || !(hookSource || gitChangeDetector != null)
+                || (hookSource && hookOutput == null);
+        final SynchronizationScope scope = new SynchronizationScope(full, cycleChangedBundles);
+        if (hookSource && hookOutput != null) {
+            final List<File> repositoryRoots = getRepositoryRoots();
+            final List<File> changedFiles = new ArrayList<File>();
+            for (final String line : hookOutput) {
+                final String name = line.trim();
+                if (!name.endsWith(".properties")) {
+                    continue;
+                }
+                if (new File(name).isAbsolute()) {
+                    changedFiles.add(new File(name));
+                } else {
+                    for (final File repositoryRoot : repositoryRoots) {
+                        changedFiles.add(new File(repositoryRoot, name));
                     }
                 }
             }
+            scope.addChangedFiles(changedFiles);
+        }
+        scope.addChangedFiles(retryFiles);
+        retryFiles.clear();
+        if (!full) {
+            LOGGER.info("Synchronizing changed files only, bundles changed in database: "
+                    + cycleChangedBundles.size());
+        }
+        return scope;
+    }
+
+    /**
+     * Gets roots which relative changed file paths of pre-synchronize hook are resolved against. Root
+     * of bundle directory is the top level of its git repository or the directory itself if it is not
+     * in a git repository.
+     *
+     * @return the repository roots
+     */
+    private List<File> getRepositoryRoots() {
+        final Set<File> repositoryRoots = new LinkedHashSet<File>();
+        for (final String prefixPart : PropertiesUtil.getProperty("translation-site", "bundle-path-prefixes")
+                .split(",")) {
+            final File bundleDirectory = new File(prefixPart.split(":")[1]).getAbsoluteFile().getParentFile();
+            if (!bundleDirectory.isDirectory()) {
+                continue;
+            }
+            final File topLevel = GitChangeDetector.getTopLevel(bundleDirectory);
+            repositoryRoots.add(topLevel != null ? topLevel : bundleDirectory);
+        }
+        return new ArrayList<File>(repositoryRoots);
+    }
 
+    /**
+     * Synchronizes locale bundle file and database. Keys are processed in chunks each committed in
+     * its own transaction with persistence context cleared afterwards so that memory use and lock
+     * duration do not grow with bundle size. Processing a chunk is idempotent so a bundle interrupted
+     * by shutdown or failure is completed by the next cycle without progress bookkeeping. Files are
+     * written only after all chunks have been committed. If neither the file nor the base bundle has
+     * changed the files are only rewritten from database.
+     *
+     * @param bundleKey the bundle key
+     * @param file the locale bundle file
+     * @param base true if file is the base bundle
+     * @param fileChanged true if the file or the base bundle has changed on disk
+     * @param keys the keys of the base bundle in sorted order
+     * @param baseProperties the properties of the base bundle file
+     * @param exactMatchIndex the index of existing translations by base value
+     * @param missingKeys the list to collect keys of created entries to
+     * @param bundleCharacterSet the bundle character set
+     * @return false if synchronization was interrupted by shutdown
+     * @throws IOException if exception occurs in reading or writing files.
+     */
+    private boolean synchronizeLocale(final BundleKey bundleKey, final File file, final boolean base,
+                                      final boolean fileChanged, final List<String> keys,
+                                      final Properties baseProperties, final ExactMatchIndex exactMatchIndex,
+                                      final List<String> missingKeys, final String bundleCharacterSet)
+            throws IOException {
+        final int chunkSize = Integer.parseInt(PropertiesUtil.getProperty("translation-site",
+                "synchronize-chunk-size"));
+        if (!fileChanged) {
+            bundleFileWriter.write(bundleKey, file, base, chunkSize, bundleCharacterSet);
+            return true;
+        }
+        final Properties properties = loadProperties(file, bundleCharacterSet);
 
+        for (int i = 0; i < keys.size(); i += chunkSize) {
+            if (shutdown) {
+                return false;
+            }
+            synchronizeChunk(bundleKey, base, properties, baseProperties, exactMatchIndex,
+                    keys.subList(i, Math.min(i + chunkSize, keys.size())), missingKeys);
         }
 
-        executeShellCommand(PropertiesUtil.getProperty("translation-site", "post-synchronize-command-hook"));
+        if (!markOrphans(bundleKey, new HashSet<String>(keys), chunkSize)) {
+            return false;
+        }
 
+        bundleFileWriter.write(bundleKey, file, base, chunkSize, bundleCharacterSet);
+        return true;
     }
 
     /**
-     * Executes requested shell command.
+     * Synchronizes chunk of keys in one transaction. Entries created without value in the locale
+     * bundle file are pre-filled with an existing translation of identical base value and flagged
+     * for review instead of being reported missing.
      *
-     * @param cmd the shell command to execute
+     * @param bundleKey the bundle key
+     * @param base true if synchronizing the base bundle
+     * @param properties the properties of the locale bundle file
+     * @param baseProperties the properties of the base bundle file
+     * @param exactMatchIndex the index of existing translations by base value
+     * @param chunkKeys the keys of the chunk
+     * @param missingKeys the list to collect keys of created entries to
      */
-    private void executeShellCommand(final String cmd) {
-        LOGGER.debug("Executing shell command: " + cmd);
+    private void synchronizeChunk(final BundleKey bundleKey, final boolean base, final Properties properties,
+                                  final Properties baseProperties, final ExactMatchIndex exactMatchIndex,
+                                  final List<String> chunkKeys, final List<String> missingKeys) {
+        final List<Entry> changedEntries = new ArrayList<Entry>();
+        final List<String> createdKeys = new ArrayList<String>();
+        final BundleStatisticsDelta statisticsDelta = new BundleStatisticsDelta();
+        final Date now = new Date();
+
+        entityManager.getTransaction().begin();
         try {
-            Runtime runtime = Runtime.getRuntime();
-            Process process = runtime.exec(new String[] {"/bin/sh", "-c", cmd});
-            process.waitFor();
+            final TypedQuery<Entry> query = entityManager.createQuery("select e from Entry as e where "
+                    + "e.path=:path and e.basename=:basename and e.language=:language and e.country=:country "
+                    + "and e.key in :keys", Entry.class);
+            query.setParameter("path", bundleKey.getPath());
+            query.setParameter("basename", bundleKey.getBasename());
+            query.setParameter("language", bundleKey.getLanguage());
+            query.setParameter("country", bundleKey.getCountry());
+            query.setParameter("keys", chunkKeys);
+            final Map<String, Entry> entries = new HashMap<String, Entry>();
+            for (final Entry entry : query.getResultList()) {
+                entries.put(entry.getKey(), entry);
+            }
 
-            String line;
+            final Company owner = entityManager.getReference(Company.class, bundleKey.getCompanyId());
+            for (final String key : chunkKeys) {
+                final String bundleValue = properties.getProperty(key);
+                final Entry entry = entries.get(key);
+                if (entry == null) {
+                    final Entry newEntry = new Entry();
+                    newEntry.setOwner(owner);
+                    newEntry.setPath(bundleKey.getPath());
+                    newEntry.setBasename(bundleKey.getBasename());
+                    newEntry.setLanguage(bundleKey.getLanguage());
+                    newEntry.setCountry(bundleKey.getCountry());
+                    newEntry.setKey(key);
+                    newEntry.setValue(bundleValue != null ? bundleValue : "");
+                    if (!base && newEntry.getValue().length() == 0) {
+                        final String translation = exactMatchIndex.getTranslation(bundleKey.getLanguage(),
+                                bundleKey.getCountry(), baseProperties.getProperty(key));
+                        if (translation != null) {
+                            newEntry.setValue(translation);
+                            newEntry.setReviewRequired(true);
+                        }
+                    }
+                    newEntry.setCreated(now);
+                    newEntry.setModified(now);
+                    entityManager.persist(newEntry);
+                    changedEntries.add(newEntry);
+                    statisticsDelta.entryAdded(newEntry);
+                    if (!newEntry.isReviewRequired()) {
+                        createdKeys.add(key);
+                    }
+                    continue;
+                }
+                if (entry.getDeleted() != null) {
+                    // Key was added back to base bundle before the entry was purged.
+                    entry.setDeleted(null);
+                    changedEntries.add(entry);
+                    statisticsDelta.entryAdded(entry);
+                }
+                if ((base || (entry.getValue().length() == 0 && bundleValue != null && bundleValue.length() > 0))
+                        && !entry.getValue().equals(bundleValue)) {
+                    final String oldValue = entry.getValue();
+                    entry.setValue(bundleValue);
+                    statisticsDelta.valueChanged(entry, oldValue);
+                    changedEntries.add(entry);
+                }
+            }
 
-            BufferedReader error = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            while ((line = error.readLine()) != null){
-                LOGGER.error(line);
+            BundleStatisticsDao.apply(entityManager, statisticsDelta);
+            entityManager.getTransaction().commit();
+            missingKeys.addAll(createdKeys);
+            EntryChangeNotifier.fireEntriesChanged(changedEntries);
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
             }
-            error.close();
+            entityManager.clear();
+        }
+    }
 
-            BufferedReader input = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            while ((line = input.readLine()) != null){
-                LOGGER.info(line);
+    /**
+     * Marks entries deleted if their key has been removed from the base bundle. Orphans are detected
+     * from a projection of entry IDs and keys without loading entries and marked in chunks.
+     *
+     * @param bundleKey the bundle key
+     * @param keys the keys of the base bundle
+     * @param chunkSize the number of entries to mark per transaction
+     * @return false if marking was interrupted by shutdown
+     */
+    private boolean markOrphans(final BundleKey bundleKey, final Set<String> keys, final int chunkSize) {
+        final TypedQuery<Object[]> query = entityManager.createQuery("select e.entryId, e.key from Entry as e "
+                + "where e.path=:path and e.basename=:basename and e.language=:language and e.country=:country "
+                + "and e.deleted is null", Object[].class);
+        query.setParameter("path", bundleKey.getPath());
+        query.setParameter("basename", bundleKey.getBasename());
+        query.setParameter("language", bundleKey.getLanguage());
+        query.setParameter("country", bundleKey.getCountry());
+        final List<String> orphanIds = new ArrayList<String>();
+        for (final Object[] row : query.getResultList()) {
+            if (!keys.contains((String) row[1])) {
+                orphanIds.add((String) row[0]);
             }
+        }
 
-            input.close();
+        for (int i = 0; i < orphanIds.size(); i += chunkSize) {
+            if (shutdown) {
+                return false;
+            }
+            final List<Entry> changedEntries = new ArrayList<Entry>();
+            final BundleStatisticsDelta statisticsDelta = new BundleStatisticsDelta();
+            final Date now = new Date();
+            entityManager.getTransaction().begin();
+            try {
+                for (final Entry entry : entityManager.createQuery("select e from Entry as e "
+                        + "where e.entryId in :entryIds and e.deleted is null", Entry.class)
+                        .setParameter("entryIds", orphanIds.subList(i, Math.min(i + chunkSize, orphanIds.size())))
+                        .getResultList()) {
+                    entry.setDeleted(now);
+                    changedEntries.add(entry);
+                    statisticsDelta.entryRemoved(entry);
+                }
+                BundleStatisticsDao.apply(entityManager, statisticsDelta);
+                entityManager.getTransaction().commit();
+                EntryChangeNotifier.fireEntriesChanged(changedEntries);
+            } finally {
+                if (entityManager.getTransaction().isActive()) {
+                    entityManager.getTransaction().rollback();
+                }
+                entityManager.clear();
+            }
+        }
+        return true;
+    }
 
-            LOGGER.debug("Executed shell command: " + cmd);
+    /**
+     * Loads properties file.
+     *
+     * @param file the properties file
+     * @param bundleCharacterSet the bundle character set
+     * @return the properties
+     * @throws IOException if exception occurs in reading.
+     */
+    private static Properties loadProperties(final File file, final String bundleCharacterSet) throws IOException {
+        final Properties properties = new Properties();
+        final FileInputStream inputStream = new FileInputStream(file);
+        try {
+            properties.load(new InputStreamReader(inputStream, bundleCharacterSet));
+        } finally {
+            inputStream.close();
+        }
+        return properties;
+    }
+
+    /**
+     * Purges entries which have been marked deleted for longer than retention period. Entries are
+     * deleted in batches committed separately and purging stops when the time limit is reached so
+     * that large backlogs are worked off over several synchronization cycles without long locks.
+     */
+    private void purgeOrphans() {
+        final int retentionDays = Integer.parseInt(PropertiesUtil.getProperty("translation-site",
+                "orphan-retention-days"));
+        final int batchSize = Integer.parseInt(PropertiesUtil.getProperty("translation-site",
+                "orphan-purge-batch-size"));
+        final long maxMillis = Long.parseLong(PropertiesUtil.getProperty("translation-site",
+                "orphan-purge-max-millis"));
+        final long startTimeMillis = System.currentTimeMillis();
+        final Date purgeBefore = new Date(startTimeMillis - retentionDays * 24L * 60 * 60 * 1000);
+
+        int purgedCount = 0;
+        while (!shutdown && System.currentTimeMillis() - startTimeMillis < maxMillis) {
+            entityManager.getTransaction().begin();
+            try {
+                final List<String> entryIds = entityManager.createQuery("select e.entryId from Entry as e "
+                        + "where e.deleted < :purgeBefore", String.class)
+                        .setParameter("purgeBefore", purgeBefore)
+                        .setMaxResults(batchSize)
+                        .getResultList();
+                if (!entryIds.isEmpty()) {
+                    entityManager.createQuery("delete from Entry e where e.entryId in :entryIds")
+                            .setParameter("entryIds", entryIds)
+                            .executeUpdate();
+                }
+                entityManager.getTransaction().commit();
+                purgedCount += entryIds.size();
+                if (entryIds.size() < batchSize) {
+                    break;
+                }
+            } catch (final Exception e) {
+                LOGGER.error("Error purging deleted entries.", e);
+                break;
+            } finally {
+                if (entityManager.getTransaction().isActive()) {
+                    entityManager.getTransaction().rollback();
+                }
+            }
+        }
+        if (purgedCount > 0) {
+            LOGGER.info("Purged " + purgedCount + " entries deleted before " + purgeBefore + " in "
+                    + (System.currentTimeMillis() - startTimeMillis) + " ms.");
+        }
+    }
+
+    /**
+     * Executes requested shell command. Standard error is drained and logged on its own thread while
+     * standard output is read to the end so that the command never blocks on a full pipe.
+     *
+     * @param cmd the shell command to execute
+     * @return the standard output lines or null if command failed
+     */
+    private List<String> executeShellCommand(final String cmd) {
+        LOGGER.debug("Executing shell command: " + cmd);
+        try {
+            final Process process = new ProcessBuilder("/bin/sh", "-c", cmd).start();
+            final Thread errorThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final BufferedReader error = new BufferedReader(new InputStreamReader(
+                            process.getErrorStream()));
+                    try {
+                        String line;
+                        while ((line = error.readLine()) != null) {
+                            LOGGER.error(line);
+                        }
+                    } catch (final IOException e) {
+                        LOGGER.debug(e);
+                    } finally {
+                        try {
+                            error.close();
+                        } catch (final IOException e) {
+                            LOGGER.debug(e);
+                        }
+                    }
+                }
+            }, "shell-command-error");
+            errorThread.setDaemon(true);
+            errorThread.start();
+
+            final List<String> output = new ArrayList<String>();
+            final BufferedReader input = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            try {
+                String line;
+                while ((line = input.readLine()) != null) {
+                    output.add(line);
+                }
+            } finally {
+                input.close();
+            }
+            final int exitValue = process.waitFor();
+            errorThread.join();
+
+            LOGGER.debug("Executed shell command: " + cmd + " output: " + output);
+            if (exitValue != 0) {
+                LOGGER.warn("Shell command exited with " + exitValue + ": " + cmd);
+                return null;
+            }
+            return output;
         } catch (final Throwable t) {
             LOGGER.error("Error executing shell command: " + cmd, t);
+            return null;
         }
     }
 
@@ -346,6 +878,8 @@ public class TranslationSynchronizer {
      */
     public final void shutdown() {
         shutdown = true;
+        EntryChangeNotifier.removeListener(changeListener);
+        bundlePublisher.shutdown();
         try {
             thread.interrupt();
             thread.join();
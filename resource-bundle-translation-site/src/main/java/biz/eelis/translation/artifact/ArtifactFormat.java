@@ -0,0 +1,42 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.artifact;
+
+import java.io.IOException;
+
+/**
+ * Output format of bundle artifacts. Implementations are stateless and listed by name or class name
+ * in artifact-formats.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public interface ArtifactFormat {
+
+    /**
+     * @return the file extension including dot
+     */
+    String getExtension();
+
+    /**
+     * Renders bundle snapshot.
+     * @param snapshot the bundle snapshot
+     * @param characterSet the bundle character set
+     * @return the rendered artifact
+     * @throws IOException if exception occurs in rendering.
+     */
+    byte[] render(final BundleSnapshot snapshot, final String characterSet) throws IOException;
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.artifact;
+
+import biz.eelis.translation.bundle.LocaleTree;
+import biz.eelis.translation.model.BundleKey;
+import biz.eelis.translation.util.GzipUtil;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Renders changed bundles to artifacts of all configured formats in the directory named by
+ * artifact-directory under the bundle directory. Locales are taken from the locale tree of the bundle
+ * and each affected locale is captured once to a snapshot shared by all formats. Artifacts
+ * are written to temporary files and renamed in place. Nothing is written if artifact-directory is
+ * empty.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class ArtifactPipeline {
+
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(ArtifactPipeline.class);
+
+    /** The artifact directory name or empty if disabled. */
+    private final String artifactDirectoryName;
+    /** The artifact formats. */
+    private final List<ArtifactFormat> formats;
+    /** True if gzip precompressed copies are written. */
+    private final boolean gzip;
+    /** True if locale values are resolved against fallback chain. */
+    private final boolean resolved;
+
+    /**
+     * Default constructor reading configuration from translation-site properties.
+     */
+    public ArtifactPipeline() {
+        final String directoryName = PropertiesUtil.getProperty("translation-site", "artifact-directory");
+        this.artifactDirectoryName = directoryName != null ? directoryName.trim() : "";
+        this.formats = parseFormats(PropertiesUtil.getProperty("translation-site", "artifact-formats"));
+        this.gzip = Boolean.parseBoolean(PropertiesUtil.getProperty("translation-site", "artifact-gzip"));
+        this.resolved = Boolean.parseBoolean(PropertiesUtil.getProperty("translation-site", "artifact-resolved"));
+    }
+
+    /**
+     * @return true if artifact directory and at least one format is configured
+     */
+    public boolean isEnabled() {
+        return artifactDirectoryName.length() > 0 && !formats.isEmpty();
+    }
+
+    /**
+     * Builds artifacts of locales affected by changed locales of the bundle.
+     *
+     * @param localeTree the locale tree of the bundle
+     * @param companyId the company ID
+     * @param path the bundle directory path
+     * @param basename the bundle basename
+     * @param changedBundleKeys the keys of changed locales of the bundle
+     * @param bundleCharacterSet the bundle character set
+     * @throws IOException if exception occurs in writing.
+     */
+    public void build(final LocaleTree localeTree, final String companyId, final String path,
+                      final String basename, final Collection<BundleKey> changedBundleKeys,
+                      final String bundleCharacterSet)
+            throws IOException {
+        if (!isEnabled() || changedBundleKeys.isEmpty()) {
+            return;
+        }
+        final File artifactDirectory = new File(path, artifactDirectoryName);
+        if (!artifactDirectory.exists() && !artifactDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory: " + artifactDirectory.getAbsolutePath());
+        }
+
+        for (final String[] locale : localeTree.getLocales()) {
+            final BundleKey bundleKey = new BundleKey(companyId, path, basename, locale[0], locale[1]);
+            if (!isAffected(bundleKey, changedBundleKeys)) {
+                continue;
+            }
+            final BundleSnapshot snapshot = new BundleSnapshot(bundleKey, resolved
+                    ? localeTree.getResolved(locale[0], locale[1]) : localeTree.getValues(locale[0], locale[1]));
+            for (final ArtifactFormat format : formats) {
+                final byte[] content = format.render(snapshot, bundleCharacterSet);
+                final String fileName = snapshot.getName() + format.getExtension();
+                writeFile(new File(artifactDirectory, fileName), content);
+                if (gzip) {
+                    writeFile(new File(artifactDirectory, fileName + ".gz"), GzipUtil.compress(content));
+                }
+            }
+            LOGGER.debug("Built artifacts: " + new File(artifactDirectory, snapshot.getName()).getAbsolutePath());
+        }
+    }
+
+    /**
+     * Checks whether locale artifacts need to be rebuilt.
+     * @param bundleKey the locale bundle key
+     * @param changedBundleKeys the keys of changed locales
+     * @return true if locale or, when resolving, one of its fallbacks has changed
+     */
+    private boolean isAffected(final BundleKey bundleKey, final Collection<BundleKey> changedBundleKeys) {
+        for (final BundleKey changedBundleKey : changedBundleKeys) {
+            if (resolved ? LocaleTree.isFallbackOf(changedBundleKey, bundleKey)
+                    : changedBundleKey.withoutPath().equals(bundleKey.withoutPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes file through temporary file so that readers never see partially written content.
+     * @param file the file
+     * @param content the content
+     * @throws IOException if exception occurs in writing.
+     */
+    private static void writeFile(final File file, final byte[] content) throws IOException {
+        final File temporaryFile = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+        final FileOutputStream outputStream = new FileOutputStream(temporaryFile, false);
+        try {
+            outputStream.write(content);
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+        if (!temporaryFile.renameTo(file)) {
+            throw new IOException("Unable to replace file: " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Parses comma separated artifact format names. Format is either one of properties, json, min.json
+     * and rbb or class name of an ArtifactFormat implementation.
+     * @param formatNames the format names
+     * @return the artifact formats
+     */
+    private static List<ArtifactFormat> parseFormats(final String formatNames) {
+        if (formatNames == null || formatNames.trim().length() == 0) {
+            return Collections.emptyList();
+        }
+        final List<ArtifactFormat> formats = new ArrayList<ArtifactFormat>();
+        for (final String formatName : formatNames.split(",")) {
+            final String name = formatName.trim();
+            if ("properties".equals(name)) {
+                formats.add(new PropertiesArtifactFormat());
+            } else if ("json".equals(name)) {
+                formats.add(new JsonArtifactFormat(false));
+            } else if ("min.json".equals(name)) {
+                formats.add(new JsonArtifactFormat(true));
+            } else if ("rbb".equals(name)) {
+                formats.add(new BinaryArtifactFormat());
+            } else if (name.length() > 0) {
+                try {
+                    formats.add((ArtifactFormat) Class.forName(name).newInstance());
+                } catch (final Exception e) {
+                    LOGGER.error("Unable to load artifact format: " + name, e);
+                }
+            }
+        }
+        return formats;
+    }
+
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.artifact;
+
+import biz.eelis.translation.runtime.BinaryBundleControl;
+import biz.eelis.translation.runtime.BinaryBundleWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Binary bundle artifact format readable with BinaryBundleControl.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BinaryArtifactFormat implements ArtifactFormat {
+
+    @Override
+    public String getExtension() {
+        return "." + BinaryBundleControl.EXTENSION;
+    }
+
+    @Override
+    public byte[] render(final BundleSnapshot snapshot, final String characterSet) throws IOException {
+        final BinaryBundleWriter binaryBundleWriter = new BinaryBundleWriter();
+        for (final Map.Entry<String, String> entry : snapshot.getValues().entrySet()) {
+            binaryBundleWriter.put(entry.getKey(), entry.getValue());
+        }
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        binaryBundleWriter.write(outputStream);
+        return outputStream.toByteArray();
+    }
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.artifact;
+
+import biz.eelis.translation.model.BundleKey;
+
+import java.util.Collections;
+import java.util.SortedMap;
+
+/**
+ * Immutable snapshot of bundle locale values shared by all artifact formats.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BundleSnapshot {
+
+    /** The bundle key. */
+    private final BundleKey bundleKey;
+    /** The values in key order. */
+    private final SortedMap<String, String> values;
+
+    /**
+     * Constructor for setting values.
+     * @param bundleKey the bundle key
+     * @param values the values in key order
+     */
+    public BundleSnapshot(final BundleKey bundleKey, final SortedMap<String, String> values) {
+        this.bundleKey = bundleKey;
+        this.values = Collections.unmodifiableSortedMap(values);
+    }
+
+    /**
+     * @return the bundle key
+     */
+    public BundleKey getBundleKey() {
+        return bundleKey;
+    }
+
+    /**
+     * @return the artifact file name without extension
+     */
+    public String getName() {
+        return bundleKey.getBasename() + bundleKey.getLocaleSuffix();
+    }
+
+    /**
+     * @return the values in key order
+     */
+    public SortedMap<String, String> getValues() {
+        return values;
+    }
+
+}
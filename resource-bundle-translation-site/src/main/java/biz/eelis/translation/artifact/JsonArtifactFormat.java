@@ -0,0 +1,119 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.artifact;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * JSON artifact format rendering bundle as a flat object of keys and values in UTF-8. The minified
+ * variant leaves out all whitespace.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class JsonArtifactFormat implements ArtifactFormat {
+
+    /** The hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** True if whitespace is left out. */
+    private final boolean minified;
+
+    /**
+     * Default constructor for indented JSON.
+     */
+    public JsonArtifactFormat() {
+        this(false);
+    }
+
+    /**
+     * @param minified true if whitespace is left out
+     */
+    public JsonArtifactFormat(final boolean minified) {
+        this.minified = minified;
+    }
+
+    @Override
+    public String getExtension() {
+        return minified ? ".min.json" : ".json";
+    }
+
+    @Override
+    public byte[] render(final BundleSnapshot snapshot, final String characterSet) throws IOException {
+        final StringBuilder builder = new StringBuilder(snapshot.getValues().size() * 48 + 4);
+        builder.append('{');
+        boolean first = true;
+        for (final Map.Entry<String, String> entry : snapshot.getValues().entrySet()) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            if (!minified) {
+                builder.append("\n  ");
+            }
+            appendString(builder, entry.getKey());
+            builder.append(minified ? ":" : ": ");
+            appendString(builder, entry.getValue());
+        }
+        if (!minified) {
+            builder.append('\n');
+        }
+        builder.append('}');
+        if (!minified) {
+            builder.append('\n');
+        }
+        return builder.toString().getBytes("UTF-8");
+    }
+
+    /**
+     * Appends quoted and escaped JSON string.
+     * @param builder the builder
+     * @param string the string
+     */
+    private static void appendString(final StringBuilder builder, final String string) {
+        builder.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        builder.append("\\u")
+                                .append(HEX_DIGITS[(c >> 12) & 0xf]).append(HEX_DIGITS[(c >> 8) & 0xf])
+                                .append(HEX_DIGITS[(c >> 4) & 0xf]).append(HEX_DIGITS[c & 0xf]);
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.artifact;
+
+import biz.eelis.translation.bundle.PropertiesWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Map;
+
+/**
+ * Java properties artifact format.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class PropertiesArtifactFormat implements ArtifactFormat {
+
+    @Override
+    public String getExtension() {
+        return ".properties";
+    }
+
+    @Override
+    public byte[] render(final BundleSnapshot snapshot, final String characterSet) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final PropertiesWriter writer = new PropertiesWriter(new OutputStreamWriter(outputStream, characterSet));
+        for (final Map.Entry<String, String> entry : snapshot.getValues().entrySet()) {
+            writer.write(entry.getKey(), entry.getValue());
+        }
+        writer.flush();
+        return outputStream.toByteArray();
+    }
+
+}
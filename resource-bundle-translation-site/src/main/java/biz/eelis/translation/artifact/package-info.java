@@ -0,0 +1,6 @@
+/**
+ * This package contains rendering of synchronized bundles to build artifacts.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+package biz.eelis.translation.artifact;
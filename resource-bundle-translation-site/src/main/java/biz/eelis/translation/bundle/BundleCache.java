@@ -0,0 +1,291 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.bundle;
+
+import biz.eelis.translation.TranslationSiteUI;
+import biz.eelis.translation.change.EntryChangeEvent;
+import biz.eelis.translation.change.EntryChangeListener;
+import biz.eelis.translation.change.EntryChangeNotifier;
+import biz.eelis.translation.model.BundleKey;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * In-memory cache of bundles compiled from entries. Concurrent requests of a missing bundle
+ * share a single compilation. Cached bundles are invalidated when entries of the bundle change
+ * and recompiled in background so that polling consumers keep hitting the cache. Bundles resolved
+ * against their locale fallback chain are cached separately and invalidated when any locale of
+ * their fallback chain changes.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BundleCache implements EntryChangeListener {
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(BundleCache.class);
+    /** The singleton instance. */
+    private static BundleCache instance;
+
+    /** The compiled bundles by format. */
+    private final Map<BundleFormat, ConcurrentMap<BundleKey, FutureTask<CompiledBundle>>> bundlesByFormat =
+            new EnumMap<BundleFormat, ConcurrentMap<BundleKey, FutureTask<CompiledBundle>>>(BundleFormat.class);
+    /** The compiled fallback resolved bundles by format. */
+    private final Map<BundleFormat, ConcurrentMap<BundleKey, FutureTask<CompiledBundle>>> resolvedBundlesByFormat =
+            new EnumMap<BundleFormat, ConcurrentMap<BundleKey, FutureTask<CompiledBundle>>>(BundleFormat.class);
+    /** The background compilation executor. */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "bundle-cache");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /** The bundle character set. */
+    private final String characterSet;
+
+    /**
+     * Private constructor to enforce singleton.
+     */
+    private BundleCache() {
+        characterSet = PropertiesUtil.getProperty("translation-site", "bundle-character-set");
+        for (final BundleFormat format : BundleFormat.values()) {
+            bundlesByFormat.put(format, new ConcurrentHashMap<BundleKey, FutureTask<CompiledBundle>>());
+            resolvedBundlesByFormat.put(format, new ConcurrentHashMap<BundleKey, FutureTask<CompiledBundle>>());
+        }
+    }
+
+    /**
+     * @return the singleton instance registered as entry change listener
+     */
+    public static synchronized BundleCache getInstance() {
+        if (instance == null) {
+            instance = new BundleCache();
+            EntryChangeNotifier.addListener(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * @return the character set of compiled bundles
+     */
+    public String getCharacterSet() {
+        return characterSet;
+    }
+
+    /**
+     * Gets compiled bundle compiling it if not cached.
+     * @param bundleKey the bundle key, path may be null to combine entries of all paths
+     * @param format the bundle format
+     * @return the compiled bundle or null if bundle has no entries
+     * @throws IOException if exception occurs in compilation.
+     */
+    public CompiledBundle get(final BundleKey bundleKey, final BundleFormat format) throws IOException {
+        return get(bundleKey, format, false);
+    }
+
+    /**
+     * Gets compiled bundle compiling it if not cached.
+     * @param bundleKey the bundle key, path may be null to combine entries of all paths
+     * @param format the bundle format
+     * @param resolved true to resolve values missing from the locale from its fallback chain
+     * @return the compiled bundle or null if bundle has no entries
+     * @throws IOException if exception occurs in compilation.
+     */
+    public CompiledBundle get(final BundleKey bundleKey, final BundleFormat format, final boolean resolved)
+            throws IOException {
+        final ConcurrentMap<BundleKey, FutureTask<CompiledBundle>> bundles =
+                (resolved ? resolvedBundlesByFormat : bundlesByFormat).get(format);
+        FutureTask<CompiledBundle> task = bundles.get(bundleKey);
+        if (task == null) {
+            final FutureTask<CompiledBundle> newTask = newCompileTask(bundleKey, format, resolved);
+            task = bundles.putIfAbsent(bundleKey, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            }
+        }
+        try {
+            final CompiledBundle bundle = task.get();
+            if (bundle == null) {
+                bundles.remove(bundleKey, task);
+            }
+            return bundle;
+        } catch (final InterruptedException e) {
+            throw new IOException("Interrupted while compiling bundle: " + bundleKey, e);
+        } catch (final ExecutionException e) {
+            bundles.remove(bundleKey, task);
+            throw new IOException("Error compiling bundle: " + bundleKey, e.getCause());
+        }
+    }
+
+    @Override
+    public void entriesChanged(final EntryChangeEvent event) {
+        for (final BundleKey bundleKey : event.getBundleKeys()) {
+            for (final BundleFormat format : BundleFormat.values()) {
+                invalidate(bundleKey, format, false);
+                invalidate(bundleKey.withoutPath(), format, false);
+                for (final BundleKey resolvedBundleKey : resolvedBundlesByFormat.get(format).keySet()) {
+                    if (LocaleTree.isFallbackOf(bundleKey, resolvedBundleKey)) {
+                        invalidate(resolvedBundleKey, format, true);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidates bundle and schedules background recompilation if it was cached.
+     * @param bundleKey the bundle key
+     * @param format the bundle format
+     * @param resolved true if bundle is resolved from its fallback chain
+     */
+    private void invalidate(final BundleKey bundleKey, final BundleFormat format, final boolean resolved) {
+        final ConcurrentMap<BundleKey, FutureTask<CompiledBundle>> bundles =
+                (resolved ? resolvedBundlesByFormat : bundlesByFormat).get(format);
+        final FutureTask<CompiledBundle> task = bundles.get(bundleKey);
+        if (task == null) {
+            return;
+        }
+        final FutureTask<CompiledBundle> newTask = newCompileTask(bundleKey, format, resolved);
+        if (bundles.replace(bundleKey, task, newTask)) {
+            executor.execute(newTask);
+        }
+    }
+
+    /**
+     * Constructs task compiling the bundle.
+     * @param bundleKey the bundle key
+     * @param format the bundle format
+     * @param resolved true if bundle is resolved from its fallback chain
+     * @return the task
+     */
+    private FutureTask<CompiledBundle> newCompileTask(final BundleKey bundleKey, final BundleFormat format,
+                                                      final boolean resolved) {
+        return new FutureTask<CompiledBundle>(new Callable<CompiledBundle>() {
+            @Override
+            public CompiledBundle call() throws Exception {
+                return resolved ? compileResolved(bundleKey, format) : compile(bundleKey, format);
+            }
+        });
+    }
+
+    /**
+     * Compiles bundle from entries. Keys without value are left out so that consumers
+     * fall back to parent bundles.
+     * @param bundleKey the bundle key
+     * @param format the bundle format
+     * @return the compiled bundle or null if bundle has no entries
+     * @throws IOException if exception occurs in compilation.
+     */
+    private CompiledBundle compile(final BundleKey bundleKey, final BundleFormat format) throws IOException {
+        final long startTimeMillis = System.currentTimeMillis();
+        final List<Object[]> rows;
+        final EntityManager entityManager = TranslationSiteUI.getEntityManagerFactory().createEntityManager();
+        try {
+            final TypedQuery<Object[]> query = entityManager.createQuery("select e.key, e.value from Entry as e "
+                    + "where e.owner.companyId=:companyId and e.basename=:basename and e.language=:language "
+                    + "and e.country=:country and e.deleted is null"
+                    + (bundleKey.getPath() != null ? " and e.path=:path" : "")
+                    + " order by e.key", Object[].class);
+            query.setParameter("companyId", bundleKey.getCompanyId());
+            query.setParameter("basename", bundleKey.getBasename());
+            query.setParameter("language", bundleKey.getLanguage());
+            query.setParameter("country", bundleKey.getCountry());
+            if (bundleKey.getPath() != null) {
+                query.setParameter("path", bundleKey.getPath());
+            }
+            rows = query.getResultList();
+        } finally {
+            entityManager.close();
+        }
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        final List<Object[]> translatedRows = new ArrayList<Object[]>(rows.size());
+        for (final Object[] row : rows) {
+            final String value = (String) row[1];
+            if (value != null && value.length() > 0) {
+                translatedRows.add(row);
+            }
+        }
+        final CompiledBundle bundle = new CompiledBundle(format.encode(translatedRows, characterSet),
+                translatedRows.size());
+        LOGGER.debug("Compiled " + format + " bundle " + bundleKey + " with " + translatedRows.size()
+                + " entries in " + (System.currentTimeMillis() - startTimeMillis) + " ms.");
+        return bundle;
+    }
+
+    /**
+     * Compiles bundle resolved from its fallback chain. Entries of the locale and its fallbacks are
+     * read with one query and resolved in memory.
+     * @param bundleKey the bundle key
+     * @param format the bundle format
+     * @return the compiled bundle or null if neither bundle nor its fallbacks have entries
+     * @throws IOException if exception occurs in compilation.
+     */
+    private CompiledBundle compileResolved(final BundleKey bundleKey, final BundleFormat format)
+            throws IOException {
+        final long startTimeMillis = System.currentTimeMillis();
+        final List<Object[]> rows;
+        final EntityManager entityManager = TranslationSiteUI.getEntityManagerFactory().createEntityManager();
+        try {
+            final TypedQuery<Object[]> query = entityManager.createQuery("select e.language, e.country, e.key, "
+                    + "e.value from Entry as e where e.owner.companyId=:companyId and e.basename=:basename "
+                    + "and e.language in :languages and e.country in :countries and e.deleted is null"
+                    + (bundleKey.getPath() != null ? " and e.path=:path" : ""), Object[].class);
+            query.setParameter("companyId", bundleKey.getCompanyId());
+            query.setParameter("basename", bundleKey.getBasename());
+            query.setParameter("languages", Arrays.asList("", bundleKey.getLanguage()));
+            query.setParameter("countries", Arrays.asList("", bundleKey.getCountry()));
+            if (bundleKey.getPath() != null) {
+                query.setParameter("path", bundleKey.getPath());
+            }
+            rows = query.getResultList();
+        } finally {
+            entityManager.close();
+        }
+        final LocaleTree localeTree = new LocaleTree(rows);
+        if (localeTree.isEmpty()) {
+            return null;
+        }
+
+        final List<Object[]> resolvedRows = localeTree.getResolvedRows(bundleKey.getLanguage(),
+                bundleKey.getCountry());
+        final CompiledBundle bundle = new CompiledBundle(format.encode(resolvedRows, characterSet),
+                resolvedRows.size());
+        LOGGER.debug("Compiled resolved " + format + " bundle " + bundleKey + " with " + resolvedRows.size()
+                + " entries in " + (System.currentTimeMillis() - startTimeMillis) + " ms.");
+        return bundle;
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.bundle;
+
+import biz.eelis.translation.runtime.BinaryBundleWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.List;
+
+/**
+ * Formats in which bundles are compiled and served.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public enum BundleFormat {
+    /** Java properties file. */
+    PROPERTIES(".properties") {
+        @Override
+        public String getContentType(final String characterSet) {
+            return "text/plain; charset=" + characterSet;
+        }
+
+        @Override
+        byte[] encode(final List<Object[]> rows, final String characterSet) throws IOException {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final PropertiesWriter writer = new PropertiesWriter(new OutputStreamWriter(outputStream, characterSet));
+            for (final Object[] row : rows) {
+                writer.write((String) row[0], (String) row[1]);
+            }
+            writer.flush();
+            return outputStream.toByteArray();
+        }
+    },
+    /** Memory mappable binary bundle loadable with BinaryBundleControl of translation-bundle-runtime. */
+    BINARY(".rbb") {
+        @Override
+        public String getContentType(final String characterSet) {
+            return "application/octet-stream";
+        }
+
+        @Override
+        byte[] encode(final List<Object[]> rows, final String characterSet) throws IOException {
+            final BinaryBundleWriter writer = new BinaryBundleWriter();
+            for (final Object[] row : rows) {
+                writer.put((String) row[0], (String) row[1]);
+            }
+            return writer.toByteArray();
+        }
+    };
+
+    /** The file extension including dot. */
+    private final String extension;
+
+    /**
+     * Constructor for setting the file extension.
+     * @param extension the file extension including dot
+     */
+    private BundleFormat(final String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return the file extension including dot
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @param characterSet the bundle character set
+     * @return the HTTP content type
+     */
+    public abstract String getContentType(final String characterSet);
+
+    /**
+     * Encodes key value rows. Rows are in key order and have non empty values.
+     * @param rows the key value rows
+     * @param characterSet the bundle character set
+     * @return the encoded bundle
+     * @throws IOException if exception occurs in encoding.
+     */
+    abstract byte[] encode(final List<Object[]> rows, final String characterSet) throws IOException;
+
+    /**
+     * Resolves format from file name.
+     * @param fileName the file name
+     * @return the format or null if extension is not supported
+     */
+    public static BundleFormat forFileName(final String fileName) {
+        for (final BundleFormat format : values()) {
+            if (fileName.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.bundle;
+
+import biz.eelis.translation.model.BundleKey;
+import biz.eelis.translation.util.HostCompanyCache;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Read-only servlet serving bundles compiled from entries of the company resolved from
+ * server name. Bundles are requested as /bundle/basename[_language[_country]].properties
+ * or as binary bundle /bundle/basename[_language[_country]].rbb with optional path parameter.
+ * Responses carry strong entity tags so that polling consumers receive 304 Not Modified until
+ * entries of the bundle change. With parameter resolved=true values missing from the locale are
+ * filled from its fallback chain so that consumers need no parent bundles.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BundleServlet extends HttpServlet {
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
+        final String pathInfo = request.getPathInfo();
+        final BundleFormat format = pathInfo != null ? BundleFormat.forFileName(pathInfo) : null;
+        if (format == null || pathInfo.lastIndexOf('/') != 0) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        final String[] parts = pathInfo.substring(1, pathInfo.length() - format.getExtension().length()).split("_");
+        final String basename = parts[0];
+        final String language = parts.length > 1 ? parts[1] : "";
+        final String country = parts.length > 2 ? parts[2] : "";
+
+        final String companyId = HostCompanyCache.getCompanyId(request.getServerName());
+        if (companyId == null || basename.length() == 0) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final BundleKey bundleKey = new BundleKey(companyId, request.getParameter("path"), basename,
+                language, country);
+        final BundleCache bundleCache = BundleCache.getInstance();
+        final CompiledBundle bundle = bundleCache.get(bundleKey, format,
+                Boolean.parseBoolean(request.getParameter("resolved")));
+        if (bundle == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final String acceptEncoding = request.getHeader("Accept-Encoding");
+        final boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+        response.setHeader("ETag", bundle.getETag(gzip));
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("Vary", "Accept-Encoding");
+        if (bundle.matches(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(format.getContentType(bundleCache.getCharacterSet()));
+        final byte[] body;
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+            body = bundle.getGzipContent();
+        } else {
+            body = bundle.getContent();
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.bundle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable compiled bundle content with precomputed gzip encoding and strong entity tag.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class CompiledBundle {
+
+    /** The hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** The content. */
+    private final byte[] content;
+    /** The gzip encoded content. */
+    private final byte[] gzipContent;
+    /** The content hash in hexadecimal. */
+    private final String hash;
+    /** The number of entries in the bundle. */
+    private final int entryCount;
+
+    /**
+     * Constructor which compresses content and computes its hash.
+     * @param content the content
+     * @param entryCount the number of entries in the bundle
+     * @throws IOException if exception occurs in compression.
+     */
+    public CompiledBundle(final byte[] content, final int entryCount) throws IOException {
+        this.content = content;
+        this.entryCount = entryCount;
+        final ByteArrayOutputStream gzipOutputStream = new ByteArrayOutputStream(content.length / 3 + 32);
+        final GZIPOutputStream gzip = new GZIPOutputStream(gzipOutputStream);
+        gzip.write(content);
+        gzip.close();
+        this.gzipContent = gzipOutputStream.toByteArray();
+        this.hash = toHex(sha1(content));
+    }
+
+    /**
+     * @return the content
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * @return the gzip encoded content
+     */
+    public byte[] getGzipContent() {
+        return gzipContent;
+    }
+
+    /**
+     * @return the number of entries in the bundle
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the content hash in hexadecimal
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Gets strong entity tag of the representation. Gzip encoded representation has its own tag.
+     * @param gzip true if gzip encoded representation
+     * @return the quoted entity tag
+     */
+    public String getETag(final boolean gzip) {
+        return gzip ? "\"" + hash + "-gzip\"" : "\"" + hash + "\"";
+    }
+
+    /**
+     * Checks whether If-None-Match header value matches either representation of this bundle.
+     * @param ifNoneMatch the If-None-Match header value or null
+     * @return true if header matches
+     */
+    public boolean matches(final String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(getETag(false)) || tag.equals(getETag(true))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes SHA-1 digest.
+     * @param bytes the bytes to digest
+     * @return the digest
+     */
+    static byte[] sha1(final byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(bytes);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not supported.", e);
+        }
+    }
+
+    /**
+     * Converts bytes to hexadecimal string.
+     * @param bytes the bytes
+     * @return the hexadecimal string
+     */
+    static String toHex(final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
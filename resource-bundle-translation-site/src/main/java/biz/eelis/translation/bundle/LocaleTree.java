@@ -0,0 +1,165 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.bundle;
+
+import biz.eelis.translation.model.BundleKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * In-memory tree of the locales of one bundle which resolves each locale against its fallback
+ * chain language_country, language and base in the same way as {@link java.util.ResourceBundle}.
+ * A resolved locale contains every key with value of the nearest locale translating it so that
+ * consumers find values with a single lookup. Resolved locales are built once and reused by their
+ * child locales.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class LocaleTree {
+
+    /** Non empty values of each locale by locale name. */
+    private final Map<String, Map<String, String>> values = new HashMap<String, Map<String, String>>();
+    /** The locales as language and country pairs. */
+    private final List<String[]> locales = new ArrayList<String[]>();
+    /** Resolved values of each locale by locale name. */
+    private final Map<String, SortedMap<String, String>> resolved = new HashMap<String, SortedMap<String, String>>();
+
+    /**
+     * Constructor which builds tree from entry rows.
+     * @param rows the rows of language, country, key and value
+     */
+    public LocaleTree(final List<Object[]> rows) {
+        for (final Object[] row : rows) {
+            final String language = (String) row[0];
+            final String country = (String) row[1];
+            final String name = getName(language, country);
+            Map<String, String> localeValues = values.get(name);
+            if (localeValues == null) {
+                localeValues = new HashMap<String, String>();
+                values.put(name, localeValues);
+                locales.add(new String[] {language, country});
+            }
+            final String value = (String) row[3];
+            if (value != null && value.length() > 0) {
+                localeValues.put((String) row[2], value);
+            }
+        }
+    }
+
+    /**
+     * @return true if tree has no entries
+     */
+    public boolean isEmpty() {
+        return locales.isEmpty();
+    }
+
+    /**
+     * @return the locales of the tree as language and country pairs
+     */
+    public List<String[]> getLocales() {
+        return Collections.unmodifiableList(locales);
+    }
+
+    /**
+     * Gets non empty values of locale without fallback values.
+     * @param language the language
+     * @param country the country
+     * @return the values in key order
+     */
+    public SortedMap<String, String> getValues(final String language, final String country) {
+        final Map<String, String> localeValues = values.get(getName(language, country));
+        if (localeValues == null) {
+            return new TreeMap<String, String>();
+        }
+        return new TreeMap<String, String>(localeValues);
+    }
+
+    /**
+     * Gets values of locale resolved against its fallback chain.
+     * @param language the language
+     * @param country the country
+     * @return the resolved values in key order
+     */
+    public SortedMap<String, String> getResolved(final String language, final String country) {
+        final String name = getName(language, country);
+        SortedMap<String, String> localeResolved = resolved.get(name);
+        if (localeResolved == null) {
+            if (country.length() > 0) {
+                localeResolved = new TreeMap<String, String>(getResolved(language, ""));
+            } else if (language.length() > 0) {
+                localeResolved = new TreeMap<String, String>(getResolved("", ""));
+            } else {
+                localeResolved = new TreeMap<String, String>();
+            }
+            final Map<String, String> localeValues = values.get(name);
+            if (localeValues != null) {
+                localeResolved.putAll(localeValues);
+            }
+            resolved.put(name, localeResolved);
+        }
+        return localeResolved;
+    }
+
+    /**
+     * Gets resolved values of locale as key value rows.
+     * @param language the language
+     * @param country the country
+     * @return the key value rows in key order
+     */
+    public List<Object[]> getResolvedRows(final String language, final String country) {
+        final SortedMap<String, String> localeResolved = getResolved(language, country);
+        final List<Object[]> rows = new ArrayList<Object[]>(localeResolved.size());
+        for (final Map.Entry<String, String> entry : localeResolved.entrySet()) {
+            rows.add(new Object[] {entry.getKey(), entry.getValue()});
+        }
+        return rows;
+    }
+
+    /**
+     * Checks whether bundle is part of the fallback chain of another bundle, in which case changes
+     * of the first change resolved values of the second.
+     * @param parent the bundle which may be in fallback chain
+     * @param child the bundle whose fallback chain is checked, path may be null to match all paths
+     * @return true if parent is the child itself or one of its fallbacks
+     */
+    public static boolean isFallbackOf(final BundleKey parent, final BundleKey child) {
+        if (!parent.getCompanyId().equals(child.getCompanyId()) || !parent.getBasename().equals(child.getBasename())
+                || (child.getPath() != null && !child.getPath().equals(parent.getPath()))) {
+            return false;
+        }
+        if (parent.getLanguage().length() == 0) {
+            return true;
+        }
+        return parent.getLanguage().equals(child.getLanguage())
+                && (parent.getCountry().length() == 0 || parent.getCountry().equals(child.getCountry()));
+    }
+
+    /**
+     * @param language the language
+     * @param country the country
+     * @return the locale name
+     */
+    private static String getName(final String language, final String country) {
+        return language + "_" + country;
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.bundle;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes properties file content with escaping compatible with {@link java.util.Properties#load}.
+ * Characters outside ASCII are written as is so the writer encoding determines the file encoding.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class PropertiesWriter {
+
+    /** The writer. */
+    private final Writer writer;
+
+    /**
+     * Constructor for setting the underlying writer.
+     * @param writer the writer
+     */
+    public PropertiesWriter(final Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writes comment line.
+     * @param comment the comment
+     * @throws IOException if exception occurs in writing.
+     */
+    public void writeComment(final String comment) throws IOException {
+        writer.write("# ");
+        writer.write(comment.replace('\n', ' ').replace('\r', ' '));
+        writer.write('\n');
+    }
+
+    /**
+     * Writes key value pair.
+     * @param key the key
+     * @param value the value
+     * @throws IOException if exception occurs in writing.
+     */
+    public void write(final String key, final String value) throws IOException {
+        writer.write(escape(key, true));
+        writer.write('=');
+        writer.write(escape(value, false));
+        writer.write('\n');
+    }
+
+    /**
+     * Flushes the underlying writer.
+     * @throws IOException if exception occurs in flushing.
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * Escapes key or value.
+     * @param string the string to escape
+     * @param key true if string is a key
+     * @return the escaped string
+     */
+    static String escape(final String string, final boolean key) {
+        final StringBuilder builder = new StringBuilder(string.length() + 8);
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            switch (c) {
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\f':
+                    builder.append("\\f");
+                    break;
+                case ' ':
+                    if (key || i == 0) {
+                        builder.append('\\');
+                    }
+                    builder.append(c);
+                    break;
+                case '=':
+                case ':':
+                case '#':
+                case '!':
+                    if (key) {
+                        builder.append('\\');
+                    }
+                    builder.append(c);
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
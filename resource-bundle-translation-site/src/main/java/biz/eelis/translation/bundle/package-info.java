@@ -0,0 +1,6 @@
+/**
+ * This package contains bundle compilation and serving.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+package biz.eelis.translation.bundle;
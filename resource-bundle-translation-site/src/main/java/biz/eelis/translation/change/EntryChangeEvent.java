@@ -0,0 +1,73 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.change;
+
+import biz.eelis.translation.model.BundleKey;
+import biz.eelis.translation.model.Entry;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Event describing committed changes of entries.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class EntryChangeEvent {
+
+    /** The keys of the changed bundles. */
+    private final Set<BundleKey> bundleKeys;
+    /** The IDs of the changed entries. */
+    private final Set<String> entryIds;
+
+    /**
+     * Constructor which collects bundle keys and entry IDs of changed entries.
+     * @param entries the changed entries
+     */
+    public EntryChangeEvent(final Collection<Entry> entries) {
+        final Set<BundleKey> bundleKeys = new HashSet<BundleKey>();
+        final Set<String> entryIds = new HashSet<String>();
+        for (final Entry entry : entries) {
+            bundleKeys.add(BundleKey.of(entry));
+            if (entry.getEntryId() != null) {
+                entryIds.add(entry.getEntryId());
+            }
+        }
+        this.bundleKeys = Collections.unmodifiableSet(bundleKeys);
+        this.entryIds = Collections.unmodifiableSet(entryIds);
+    }
+
+    /**
+     * @return the keys of the changed bundles
+     */
+    public Set<BundleKey> getBundleKeys() {
+        return bundleKeys;
+    }
+
+    /**
+     * @return the IDs of the changed entries
+     */
+    public Set<String> getEntryIds() {
+        return entryIds;
+    }
+
+    @Override
+    public String toString() {
+        return "bundles: " + bundleKeys + " entries: " + entryIds.size();
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.change;
+
+/**
+ * Listener of committed entry changes.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public interface EntryChangeListener {
+
+    /**
+     * Invoked after entry changes have been committed. Invoked in the thread which committed
+     * the changes so implementations should only record the change and return quickly.
+     * @param event the change event
+     */
+    void entriesChanged(final EntryChangeEvent event);
+
+}
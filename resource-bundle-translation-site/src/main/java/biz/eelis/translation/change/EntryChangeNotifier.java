@@ -0,0 +1,86 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.change;
+
+import biz.eelis.translation.model.Entry;
+import org.apache.log4j.Logger;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Distributes committed entry changes to registered listeners within the JVM.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class EntryChangeNotifier {
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(EntryChangeNotifier.class);
+
+    /** The listeners. */
+    private static final List<EntryChangeListener> LISTENERS = new CopyOnWriteArrayList<EntryChangeListener>();
+
+    /**
+     * Private default constructor to disable construction.
+     */
+    private EntryChangeNotifier() {
+    }
+
+    /**
+     * Adds listener.
+     * @param listener the listener
+     */
+    public static void addListener(final EntryChangeListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Removes listener.
+     * @param listener the listener
+     */
+    public static void removeListener(final EntryChangeListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Notifies listeners of committed change of single entry.
+     * @param entry the changed entry
+     */
+    public static void fireEntryChanged(final Entry entry) {
+        fireEntriesChanged(Collections.singletonList(entry));
+    }
+
+    /**
+     * Notifies listeners of committed entry changes. Nothing is fired for empty collection.
+     * @param entries the changed entries
+     */
+    public static void fireEntriesChanged(final Collection<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        final EntryChangeEvent event = new EntryChangeEvent(entries);
+        for (final EntryChangeListener listener : LISTENERS) {
+            try {
+                listener.entriesChanged(event);
+            } catch (final Throwable t) {
+                LOGGER.error("Error in entry change listener: " + listener, t);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,6 @@
+/**
+ * This package contains entry change notification.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+package biz.eelis.translation.change;
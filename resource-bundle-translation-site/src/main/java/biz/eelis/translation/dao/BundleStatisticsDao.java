@@ -0,0 +1,221 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.dao;
+
+import biz.eelis.translation.model.BundleKey;
+import biz.eelis.translation.model.BundleStatistics;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.sitekit.model.Company;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data access of bundle statistics.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BundleStatisticsDao {
+
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(BundleStatisticsDao.class);
+    /** Maximum number of rebuild attempts when statistics are concurrently created. */
+    private static final int MAX_REBUILD_ATTEMPTS = 3;
+
+    /**
+     * Private default constructor to disable construction.
+     */
+    private BundleStatisticsDao() {
+    }
+
+    /**
+     * Applies statistics delta within the active transaction of the entity manager so that
+     * statistics commit or roll back together with the entry changes. Empty statistics are seeded
+     * in a separate transaction for bundles which do not have them yet so that concurrent first
+     * saves of a bundle do not fail the active transaction on the unique constraint.
+     * @param entityManager the entity manager
+     * @param delta the delta
+     */
+    public static void apply(final EntityManager entityManager, final BundleStatisticsDelta delta) {
+        final Date now = new Date();
+        for (final Map.Entry<BundleKey, long[]> change : delta.getChanges().entrySet()) {
+            final BundleKey bundleKey = change.getKey();
+            final long[] counts = change.getValue();
+            if (update(entityManager, bundleKey, counts, now) == 0) {
+                seed(entityManager.getEntityManagerFactory(), bundleKey, now);
+                update(entityManager, bundleKey, counts, now);
+            }
+        }
+    }
+
+    /**
+     * Adds counts to existing bundle statistics.
+     * @param entityManager the entity manager
+     * @param bundleKey the bundle key
+     * @param counts the count deltas
+     * @param now the modification time
+     * @return the number of updated statistics
+     */
+    private static int update(final EntityManager entityManager, final BundleKey bundleKey, final long[] counts,
+                              final Date now) {
+        final Company owner = entityManager.getReference(Company.class, bundleKey.getCompanyId());
+        return entityManager.createQuery("update BundleStatistics s set "
+                + "s.entryCount = s.entryCount + :entryCount, s.emptyCount = s.emptyCount + :emptyCount, "
+                + "s.modifiedCount = s.modifiedCount + :modifiedCount, s.modified = :modified "
+                + "where s.owner = :owner and s.basename = :basename and s.language = :language "
+                + "and s.country = :country")
+                .setParameter("entryCount", counts[BundleStatisticsDelta.ENTRIES])
+                .setParameter("emptyCount", counts[BundleStatisticsDelta.EMPTY])
+                .setParameter("modifiedCount", counts[BundleStatisticsDelta.MODIFIED])
+                .setParameter("modified", now)
+                .setParameter("owner", owner)
+                .setParameter("basename", bundleKey.getBasename())
+                .setParameter("language", bundleKey.getLanguage())
+                .setParameter("country", bundleKey.getCountry())
+                .executeUpdate();
+    }
+
+    /**
+     * Creates empty statistics of bundle in separate transaction. Statistics created concurrently
+     * by another transaction are left as they are.
+     * @param entityManagerFactory the entity manager factory
+     * @param bundleKey the bundle key
+     * @param now the creation time
+     */
+    private static void seed(final EntityManagerFactory entityManagerFactory, final BundleKey bundleKey,
+                             final Date now) {
+        final EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            final BundleStatistics statistics = new BundleStatistics();
+            statistics.setOwner(entityManager.getReference(Company.class, bundleKey.getCompanyId()));
+            statistics.setBasename(bundleKey.getBasename());
+            statistics.setLanguage(bundleKey.getLanguage());
+            statistics.setCountry(bundleKey.getCountry());
+            statistics.setSince(now);
+            statistics.setModified(now);
+            entityManager.persist(statistics);
+            entityManager.getTransaction().commit();
+        } catch (final PersistenceException e) {
+            LOGGER.debug("Bundle statistics created concurrently: " + bundleKey, e);
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Gets statistics of company bundles.
+     * @param entityManager the entity manager
+     * @param owner the company
+     * @return the statistics ordered by basename, language and country
+     */
+    public static List<BundleStatistics> getStatistics(final EntityManager entityManager, final Company owner) {
+        final TypedQuery<BundleStatistics> query = entityManager.createQuery("select s from BundleStatistics as s "
+                + "where s.owner = :owner order by s.basename, s.language, s.country", BundleStatistics.class);
+        query.setParameter("owner", owner);
+        return query.getResultList();
+    }
+
+    /**
+     * Resets modification counts of company bundles.
+     * @param entityManager the entity manager
+     * @param owner the company
+     */
+    public static void resetModifiedCounts(final EntityManager entityManager, final Company owner) {
+        entityManager.getTransaction().begin();
+        try {
+            entityManager.createQuery("update BundleStatistics s set s.modifiedCount = 0, s.since = :since "
+                    + "where s.owner = :owner")
+                    .setParameter("since", new Date())
+                    .setParameter("owner", owner)
+                    .executeUpdate();
+            entityManager.getTransaction().commit();
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds statistics of company bundles by counting entries. Used to repair statistics
+     * which have drifted, for example because of changes made directly to database.
+     * Modification counts restart from zero. Rebuild is retried if statistics of a bundle are
+     * seeded concurrently between delete and insert.
+     * @param entityManager the entity manager
+     * @param owner the company
+     */
+    public static void rebuild(final EntityManager entityManager, final Company owner) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                rebuildStatistics(entityManager, owner);
+                return;
+            } catch (final PersistenceException e) {
+                if (attempt >= MAX_REBUILD_ATTEMPTS) {
+                    throw e;
+                }
+                LOGGER.debug("Retrying statistics rebuild after concurrent statistics creation.", e);
+                entityManager.clear();
+            }
+        }
+    }
+
+    /**
+     * Replaces statistics of company bundles with counts of entries in one transaction.
+     * @param entityManager the entity manager
+     * @param owner the company
+     */
+    private static void rebuildStatistics(final EntityManager entityManager, final Company owner) {
+        final TypedQuery<Object[]> query = entityManager.createQuery("select e.basename, e.language, e.country, "
+                + "count(e), sum(case when e.value = '' then 1 else 0 end) from Entry as e where e.owner = :owner "
+                + "and e.deleted is null group by e.basename, e.language, e.country", Object[].class);
+        query.setParameter("owner", owner);
+
+        entityManager.getTransaction().begin();
+        try {
+            final List<Object[]> rows = query.getResultList();
+            entityManager.createQuery("delete from BundleStatistics s where s.owner = :owner")
+                    .setParameter("owner", owner)
+                    .executeUpdate();
+            final Date now = new Date();
+            for (final Object[] row : rows) {
+                final BundleStatistics statistics = new BundleStatistics();
+                statistics.setOwner(owner);
+                statistics.setBasename((String) row[0]);
+                statistics.setLanguage((String) row[1]);
+                statistics.setCountry((String) row[2]);
+                statistics.setEntryCount(((Number) row[3]).longValue());
+                statistics.setEmptyCount(((Number) row[4]).longValue());
+                statistics.setSince(now);
+                statistics.setModified(now);
+                entityManager.persist(statistics);
+            }
+            entityManager.getTransaction().commit();
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.dao;
+
+import biz.eelis.translation.model.BundleKey;
+import biz.eelis.translation.model.Entry;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects changes of bundle statistics caused by entry changes of one transaction.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BundleStatisticsDelta {
+    /** Index of entry count change. */
+    static final int ENTRIES = 0;
+    /** Index of empty count change. */
+    static final int EMPTY = 1;
+    /** Index of modified count change. */
+    static final int MODIFIED = 2;
+
+    /** The count changes by bundle key without path. */
+    private final Map<BundleKey, long[]> changes = new LinkedHashMap<BundleKey, long[]>();
+
+    /**
+     * Records added entry.
+     * @param entry the entry
+     */
+    public void entryAdded(final Entry entry) {
+        final long[] change = getChange(entry);
+        change[ENTRIES]++;
+        change[EMPTY] += isEmpty(entry.getValue()) ? 1 : 0;
+    }
+
+    /**
+     * Records removed entry.
+     * @param entry the entry with its persisted value
+     */
+    public void entryRemoved(final Entry entry) {
+        final long[] change = getChange(entry);
+        change[ENTRIES]--;
+        change[EMPTY] -= isEmpty(entry.getValue()) ? 1 : 0;
+    }
+
+    /**
+     * Records changed value of entry.
+     * @param entry the entry with its new value
+     * @param oldValue the persisted value before change
+     */
+    public void valueChanged(final Entry entry, final String oldValue) {
+        final long[] change = getChange(entry);
+        change[EMPTY] += (isEmpty(entry.getValue()) ? 1 : 0) - (isEmpty(oldValue) ? 1 : 0);
+        change[MODIFIED]++;
+    }
+
+    /**
+     * @return true if no changes have been recorded
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * @return the count changes by bundle key indexed with ENTRIES, EMPTY and MODIFIED
+     */
+    Map<BundleKey, long[]> getChanges() {
+        return Collections.unmodifiableMap(changes);
+    }
+
+    /**
+     * Gets count changes of the bundle of entry.
+     * @param entry the entry
+     * @return the count changes
+     */
+    private long[] getChange(final Entry entry) {
+        final BundleKey bundleKey = BundleKey.of(entry).withoutPath();
+        long[] change = changes.get(bundleKey);
+        if (change == null) {
+            change = new long[3];
+            changes.put(bundleKey, change);
+        }
+        return change;
+    }
+
+    /**
+     * @param value the value
+     * @return true if value is null or empty
+     */
+    private static boolean isEmpty(final String value) {
+        return value == null || value.length() == 0;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.dao;
+
+import javax.persistence.EntityManager;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash index of base values to their reviewed translations in a company. Translations of a
+ * locale are loaded with a single query on first lookup of the locale, so the index is meant
+ * to live for one synchronization cycle. The latest modified translation wins when a base value
+ * has been translated differently in different bundles.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class ExactMatchIndex {
+
+    /** The entity manager. */
+    private final EntityManager entityManager;
+    /** The company ID. */
+    private final String companyId;
+    /** The translations by base value by locale. */
+    private final Map<String, Map<String, String>> translationsByLocale = new HashMap<String, Map<String, String>>();
+
+    /**
+     * Constructor for setting the entity manager and company.
+     * @param entityManager the entity manager
+     * @param companyId the company ID
+     */
+    public ExactMatchIndex(final EntityManager entityManager, final String companyId) {
+        this.entityManager = entityManager;
+        this.companyId = companyId;
+    }
+
+    /**
+     * Gets translation of identical base value.
+     * @param language the language of the translation
+     * @param country the country of the translation
+     * @param baseValue the base value
+     * @return the translation or null if base value has not been translated to the locale
+     */
+    public String getTranslation(final String language, final String country, final String baseValue) {
+        if (baseValue == null || baseValue.length() == 0) {
+            return null;
+        }
+        final String locale = language + "_" + country;
+        Map<String, String> translations = translationsByLocale.get(locale);
+        if (translations == null) {
+            translations = loadTranslations(language, country);
+            translationsByLocale.put(locale, translations);
+        }
+        return translations.get(baseValue);
+    }
+
+    /**
+     * Loads reviewed translations of the locale by base value.
+     * @param language the language
+     * @param country the country
+     * @return the translations by base value
+     */
+    private Map<String, String> loadTranslations(final String language, final String country) {
+        final List<Object[]> rows = entityManager.createQuery(
+                "select b.value, t.value from Entry as t, Entry as b"
+                        + " where t.owner.companyId = :companyId and t.language = :language"
+                        + " and t.country = :country and t.deleted is null and t.reviewRequired = false"
+                        + " and t.value <> '' and b.owner = t.owner and b.path = t.path"
+                        + " and b.basename = t.basename and b.key = t.key and b.language = ''"
+                        + " and b.country = '' and b.deleted is null and b.value <> ''"
+                        + " order by t.modified", Object[].class)
+                .setParameter("companyId", companyId)
+                .setParameter("language", language)
+                .setParameter("country", country)
+                .getResultList();
+        final Map<String, String> translations = new HashMap<String, String>(rows.size() * 2);
+        for (final Object[] row : rows) {
+            translations.put((String) row[0], (String) row[1]);
+        }
+        return translations;
+    }
+}
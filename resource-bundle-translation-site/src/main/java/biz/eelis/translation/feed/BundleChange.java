@@ -0,0 +1,95 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.feed;
+
+import biz.eelis.translation.model.BundleKey;
+
+/**
+ * Immutable change of a bundle in the change feed. The version is the feed sequence number
+ * of the change.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BundleChange {
+
+    /** The version of the bundle. */
+    private final long version;
+    /** The key of the changed bundle without path. */
+    private final BundleKey bundleKey;
+
+    /**
+     * Constructor for setting the version and bundle key.
+     * @param version the version
+     * @param bundleKey the bundle key without path
+     */
+    public BundleChange(final long version, final BundleKey bundleKey) {
+        this.version = version;
+        this.bundleKey = bundleKey;
+    }
+
+    /**
+     * @return the version of the bundle
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the key of the changed bundle
+     */
+    public BundleKey getBundleKey() {
+        return bundleKey;
+    }
+
+    /**
+     * @return the change as JSON object
+     */
+    public String toJson() {
+        final StringBuilder builder = new StringBuilder(96);
+        builder.append("{\"version\":").append(version);
+        appendJsonField(builder, "basename", bundleKey.getBasename());
+        appendJsonField(builder, "language", bundleKey.getLanguage());
+        appendJsonField(builder, "country", bundleKey.getCountry());
+        builder.append('}');
+        return builder.toString();
+    }
+
+    /**
+     * Appends string field to JSON object.
+     * @param builder the builder
+     * @param name the field name
+     * @param value the field value
+     */
+    private static void appendJsonField(final StringBuilder builder, final String name, final String value) {
+        builder.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return version + " " + bundleKey;
+    }
+}
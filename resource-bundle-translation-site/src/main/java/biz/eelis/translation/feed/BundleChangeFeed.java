@@ -0,0 +1,198 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.feed;
+
+import biz.eelis.translation.change.EntryChangeEvent;
+import biz.eelis.translation.change.EntryChangeListener;
+import biz.eelis.translation.change.EntryChangeNotifier;
+import biz.eelis.translation.model.BundleKey;
+import org.apache.log4j.Logger;
+import org.eclipse.jetty.continuation.Continuation;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory feed of bundle changes. Changes are numbered with a global sequence which is seeded
+ * from startup time so that versions keep increasing across restarts. A bounded window of recent
+ * changes is retained and subscribers behind the window have to reset. Waiting subscribers are
+ * held as suspended continuations per company and resumed when bundles of the company change.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BundleChangeFeed implements EntryChangeListener {
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(BundleChangeFeed.class);
+    /** The singleton instance. */
+    private static BundleChangeFeed instance;
+
+    /** The maximum number of retained changes. */
+    private final int bufferSize;
+    /** The retained changes in sequence order. Guarded by this. */
+    private final ArrayDeque<BundleChange> changes;
+    /** The sequence of the latest change. Guarded by this. */
+    private long sequence;
+    /** The suspended subscribers by company ID. */
+    private final ConcurrentMap<String, Set<Continuation>> subscribers =
+            new ConcurrentHashMap<String, Set<Continuation>>();
+
+    /**
+     * Private constructor to enforce singleton.
+     */
+    private BundleChangeFeed() {
+        bufferSize = Integer.parseInt(PropertiesUtil.getProperty("translation-site", "feed-buffer-size"));
+        changes = new ArrayDeque<BundleChange>(bufferSize);
+        sequence = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the singleton instance registered as entry change listener
+     */
+    public static synchronized BundleChangeFeed getInstance() {
+        if (instance == null) {
+            instance = new BundleChangeFeed();
+            EntryChangeNotifier.addListener(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * @return the sequence of the latest change
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets changes of company bundles after the given sequence up to and including the given
+     * sequence.
+     * @param companyId the company ID
+     * @param basename the basename or null to include all bundles
+     * @param since the sequence already seen by subscriber
+     * @param until the sequence to return changes up to, obtained from {@link #getSequence()}
+     * @return the changes in sequence order or null if changes after the sequence are no longer retained
+     */
+    public synchronized List<BundleChange> getChanges(final String companyId, final String basename,
+                                                      final long since, final long until) {
+        if (since > until) {
+            return null;
+        }
+        if (since == until) {
+            return Collections.<BundleChange>emptyList();
+        }
+        final BundleChange oldest = changes.peekFirst();
+        if (oldest == null || oldest.getVersion() > since + 1) {
+            return null;
+        }
+        final List<BundleChange> result = new ArrayList<BundleChange>();
+        final Iterator<BundleChange> iterator = changes.descendingIterator();
+        while (iterator.hasNext()) {
+            final BundleChange change = iterator.next();
+            if (change.getVersion() <= since) {
+                break;
+            }
+            if (change.getVersion() > until) {
+                continue;
+            }
+            final BundleKey bundleKey = change.getBundleKey();
+            if (bundleKey.getCompanyId().equals(companyId)
+                    && (basename == null || bundleKey.getBasename().equals(basename))) {
+                result.add(change);
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Adds suspended subscriber to be resumed on next change of company bundles.
+     * @param companyId the company ID
+     * @param continuation the suspended continuation
+     */
+    public void subscribe(final String companyId, final Continuation continuation) {
+        Set<Continuation> companySubscribers = subscribers.get(companyId);
+        if (companySubscribers == null) {
+            final Set<Continuation> newSubscribers = Collections.newSetFromMap(
+                    new ConcurrentHashMap<Continuation, Boolean>());
+            companySubscribers = subscribers.putIfAbsent(companyId, newSubscribers);
+            if (companySubscribers == null) {
+                companySubscribers = newSubscribers;
+            }
+        }
+        companySubscribers.add(continuation);
+    }
+
+    /**
+     * Removes subscriber.
+     * @param companyId the company ID
+     * @param continuation the continuation
+     * @return true if subscriber was waiting
+     */
+    public boolean unsubscribe(final String companyId, final Continuation continuation) {
+        final Set<Continuation> companySubscribers = subscribers.get(companyId);
+        return companySubscribers != null && companySubscribers.remove(continuation);
+    }
+
+    @Override
+    public void entriesChanged(final EntryChangeEvent event) {
+        final Set<BundleKey> bundleKeys = new LinkedHashSet<BundleKey>();
+        for (final BundleKey bundleKey : event.getBundleKeys()) {
+            bundleKeys.add(bundleKey.withoutPath());
+        }
+        final Set<String> companyIds = new LinkedHashSet<String>();
+        synchronized (this) {
+            for (final BundleKey bundleKey : bundleKeys) {
+                sequence++;
+                if (changes.size() == bufferSize) {
+                    changes.removeFirst();
+                }
+                changes.addLast(new BundleChange(sequence, bundleKey));
+                companyIds.add(bundleKey.getCompanyId());
+            }
+        }
+        for (final String companyId : companyIds) {
+            final Set<Continuation> companySubscribers = subscribers.get(companyId);
+            if (companySubscribers == null) {
+                continue;
+            }
+            for (final Continuation continuation : companySubscribers) {
+                if (companySubscribers.remove(continuation)) {
+                    resume(continuation);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resumes suspended subscriber.
+     * @param continuation the continuation
+     */
+    static void resume(final Continuation continuation) {
+        try {
+            continuation.resume();
+        } catch (final IllegalStateException e) {
+            LOGGER.debug("Subscriber was no longer suspended: " + e.getMessage());
+        }
+    }
+}
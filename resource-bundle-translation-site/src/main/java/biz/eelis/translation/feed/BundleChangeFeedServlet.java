@@ -0,0 +1,181 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.feed;
+
+import biz.eelis.translation.util.HostCompanyCache;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationSupport;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Servlet streaming bundle changes of the company resolved from server name. Clients either
+ * long-poll /feed?since=version[&amp;basename=basename] receiving a JSON document or subscribe with
+ * Accept: text/event-stream receiving server-sent events. Waiting requests are suspended as
+ * continuations so that idle subscribers do not hold threads.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BundleChangeFeedServlet extends HttpServlet {
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+    /** The request attribute holding sequence already delivered to subscriber. */
+    private static final String SINCE_ATTRIBUTE = BundleChangeFeedServlet.class.getName() + ".since";
+    /** The event stream content type. */
+    private static final String EVENT_STREAM = "text/event-stream";
+
+    /** The time to keep subscriber suspended. */
+    private long timeoutMillis;
+
+    @Override
+    public void init() throws ServletException {
+        timeoutMillis = Long.parseLong(PropertiesUtil.getProperty("translation-site", "feed-timeout-millis"));
+        BundleChangeFeed.getInstance();
+    }
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
+        final String companyId = HostCompanyCache.getCompanyId(request.getServerName());
+        if (companyId == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        final String basename = request.getParameter("basename");
+        final String accept = request.getHeader("Accept");
+        final boolean eventStream = accept != null && accept.contains(EVENT_STREAM);
+
+        final BundleChangeFeed feed = BundleChangeFeed.getInstance();
+        final Continuation continuation = ContinuationSupport.getContinuation(request);
+        final boolean initial = continuation.isInitial();
+
+        final Long since;
+        if (initial) {
+            try {
+                since = parseSince(eventStream ? request.getHeader("Last-Event-ID") : null,
+                        request.getParameter("since"));
+            } catch (final NumberFormatException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+        } else {
+            // Subscriber may have been redispatched by timeout while still subscribed.
+            feed.unsubscribe(companyId, continuation);
+            since = (Long) request.getAttribute(SINCE_ATTRIBUTE);
+        }
+
+        final long until = feed.getSequence();
+        if (eventStream) {
+            if (initial) {
+                response.setContentType(EVENT_STREAM + "; charset=UTF-8");
+                response.setHeader("Cache-Control", "no-cache");
+            }
+            final List<BundleChange> changes = since != null
+                    ? feed.getChanges(companyId, basename, since, until) : null;
+            final PrintWriter writer = response.getWriter();
+            if (since != null && changes == null) {
+                writer.print("event: reset\ndata: {\"sequence\":" + until + "}\n\n");
+            } else if (changes != null && !changes.isEmpty()) {
+                for (final BundleChange change : changes) {
+                    writer.print("id: " + change.getVersion() + "\nevent: bundle\ndata: " + change.toJson() + "\n\n");
+                }
+            } else {
+                writer.print(": " + until + "\n\n");
+            }
+            response.flushBuffer();
+            if (writer.checkError()) {
+                return;
+            }
+            suspend(request, continuation, companyId, until);
+            return;
+        }
+
+        if (since == null) {
+            writeJson(response, "{\"sequence\":" + until + ",\"changes\":[]}");
+            return;
+        }
+        final List<BundleChange> changes = feed.getChanges(companyId, basename, since, until);
+        if (changes == null) {
+            writeJson(response, "{\"sequence\":" + until + ",\"reset\":true}");
+            return;
+        }
+        if (!changes.isEmpty() || continuation.isExpired()) {
+            final StringBuilder json = new StringBuilder("{\"sequence\":").append(until).append(",\"changes\":[");
+            for (int i = 0; i < changes.size(); i++) {
+                json.append(i > 0 ? "," : "").append(changes.get(i).toJson());
+            }
+            writeJson(response, json.append("]}").toString());
+            return;
+        }
+        suspend(request, continuation, companyId, until);
+    }
+
+    /**
+     * Suspends request until bundles of the company change or timeout expires. The
+     * sequence is checked after subscribing so that changes committed while suspending
+     * are not missed.
+     * @param request the request
+     * @param continuation the continuation of the request
+     * @param companyId the company ID
+     * @param since the sequence already delivered to subscriber
+     */
+    private void suspend(final HttpServletRequest request, final Continuation continuation, final String companyId,
+                         final long since) {
+        final BundleChangeFeed feed = BundleChangeFeed.getInstance();
+        request.setAttribute(SINCE_ATTRIBUTE, since);
+        continuation.setTimeout(timeoutMillis);
+        continuation.suspend();
+        feed.subscribe(companyId, continuation);
+        if (feed.getSequence() > since && feed.unsubscribe(companyId, continuation)) {
+            BundleChangeFeed.resume(continuation);
+        }
+    }
+
+    /**
+     * Parses sequence already seen by subscriber.
+     * @param lastEventId the last event ID header or null
+     * @param sinceParameter the since parameter or null
+     * @return the sequence or null if subscriber has not seen any
+     */
+    private static Long parseSince(final String lastEventId, final String sinceParameter) {
+        if (lastEventId != null && lastEventId.length() > 0) {
+            return Long.valueOf(lastEventId);
+        }
+        if (sinceParameter != null && sinceParameter.length() > 0) {
+            return Long.valueOf(sinceParameter);
+        }
+        return null;
+    }
+
+    /**
+     * Writes JSON response.
+     * @param response the response
+     * @param json the JSON document
+     * @throws IOException if exception occurs in writing.
+     */
+    private static void writeJson(final HttpServletResponse response, final String json) throws IOException {
+        response.setContentType("application/json; charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.getWriter().print(json);
+    }
+}
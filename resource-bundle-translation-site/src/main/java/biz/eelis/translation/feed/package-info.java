@@ -0,0 +1,6 @@
+/**
+ * This package contains bundle change feed for bundle consumers.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+package biz.eelis.translation.feed;
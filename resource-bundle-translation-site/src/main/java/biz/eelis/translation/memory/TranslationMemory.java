@@ -0,0 +1,329 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.memory;
+
+import biz.eelis.translation.TranslationSiteUI;
+import biz.eelis.translation.change.EntryChangeEvent;
+import biz.eelis.translation.change.EntryChangeListener;
+import biz.eelis.translation.change.EntryChangeNotifier;
+import biz.eelis.translation.model.Entry;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * In-memory translation memory of base values paired with their translations. An index is
+ * built per company and locale in background on first lookup and kept up to date from entry
+ * changes. Builds and updates run in order on a single thread so that changes made before a
+ * build are read by it and changes made during a build are applied after it.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class TranslationMemory implements EntryChangeListener {
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(TranslationMemory.class);
+    /** The number of segments loaded per query when building index. */
+    private static final int BUILD_PAGE_SIZE = 10000;
+    /** The number of entries loaded per query when updating indexes. */
+    private static final int UPDATE_CHUNK_SIZE = 1000;
+    /** The singleton instance. */
+    private static TranslationMemory instance;
+
+    /** The indexes by company ID and locale. */
+    private final ConcurrentMap<String, FutureTask<TranslationMemoryIndex>> indexes =
+            new ConcurrentHashMap<String, FutureTask<TranslationMemoryIndex>>();
+    /** The background build and update executor. */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "translation-memory");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /** The maximum number of suggestions. */
+    private final int suggestionCount;
+    /** The minimum similarity of suggestions. */
+    private final double minSimilarity;
+
+    /**
+     * Private constructor to enforce singleton.
+     */
+    private TranslationMemory() {
+        suggestionCount = Integer.parseInt(PropertiesUtil.getProperty("translation-site",
+                "memory-suggestion-count"));
+        minSimilarity = Double.parseDouble(PropertiesUtil.getProperty("translation-site",
+                "memory-min-similarity"));
+    }
+
+    /**
+     * @return the singleton instance registered as entry change listener
+     */
+    public static synchronized TranslationMemory getInstance() {
+        if (instance == null) {
+            instance = new TranslationMemory();
+            EntryChangeNotifier.addListener(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Suggests translations for base value from translations of similar base values.
+     * @param companyId the company ID
+     * @param language the language of the translation
+     * @param country the country of the translation
+     * @param source the base value to translate
+     * @return the suggestions in descending similarity order, empty while index is being built
+     */
+    public List<TranslationSuggestion> suggest(final String companyId, final String language,
+                                               final String country, final String source) {
+        if (language.length() == 0) {
+            return Collections.emptyList();
+        }
+        final TranslationMemoryIndex index = getIndex(companyId, language, country);
+        if (index == null) {
+            return Collections.emptyList();
+        }
+        return index.search(source, suggestionCount, minSimilarity);
+    }
+
+    @Override
+    public void entriesChanged(final EntryChangeEvent event) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        final List<String> entryIds = new ArrayList<String>(event.getEntryIds());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    update(entryIds);
+                } catch (final Throwable t) {
+                    LOGGER.error("Error updating translation memory.", t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets index starting its build in background if not built.
+     * @param companyId the company ID
+     * @param language the language
+     * @param country the country
+     * @return the index or null if index is being built or build failed
+     */
+    private TranslationMemoryIndex getIndex(final String companyId, final String language, final String country) {
+        final String indexKey = getIndexKey(companyId, language, country);
+        FutureTask<TranslationMemoryIndex> task = indexes.get(indexKey);
+        if (task == null) {
+            final FutureTask<TranslationMemoryIndex> newTask = new FutureTask<TranslationMemoryIndex>(
+                    new Callable<TranslationMemoryIndex>() {
+                @Override
+                public TranslationMemoryIndex call() throws Exception {
+                    return build(companyId, language, country);
+                }
+            });
+            task = indexes.putIfAbsent(indexKey, newTask);
+            if (task == null) {
+                task = newTask;
+                executor.execute(task);
+            }
+        }
+        if (!task.isDone()) {
+            return null;
+        }
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException e) {
+            indexes.remove(indexKey, task);
+            LOGGER.error("Error building translation memory: " + indexKey, e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Gets built index if exists. Index which has not been built yet is skipped as its build runs
+     * later on the same thread and reads the changes.
+     * @param indexKey the index key
+     * @return the index or null
+     */
+    private TranslationMemoryIndex getBuiltIndex(final String indexKey) {
+        final FutureTask<TranslationMemoryIndex> task = indexes.get(indexKey);
+        if (task == null || !task.isDone()) {
+            return null;
+        }
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds index of translations in given locale paired with base values of the same keys.
+     * @param companyId the company ID
+     * @param language the language
+     * @param country the country
+     * @return the index
+     */
+    private TranslationMemoryIndex build(final String companyId, final String language, final String country) {
+        final long startTime = System.currentTimeMillis();
+        final TranslationMemoryIndex index = new TranslationMemoryIndex();
+        final EntityManager entityManager = TranslationSiteUI.getEntityManagerFactory().createEntityManager();
+        try {
+            String lastEntryId = "";
+            while (true) {
+                final List<Object[]> rows = entityManager.createQuery(
+                        "select t.entryId, b.value, t.value from Entry as t, Entry as b"
+                                + " where t.owner.companyId = :companyId and t.language = :language"
+                                + " and t.country = :country and t.deleted is null and t.entryId > :lastEntryId"
+                                + " and b.owner = t.owner and b.path = t.path and b.basename = t.basename"
+                                + " and b.key = t.key and b.language = '' and b.country = '' and b.deleted is null"
+                                + " order by t.entryId", Object[].class)
+                        .setParameter("companyId", companyId)
+                        .setParameter("language", language)
+                        .setParameter("country", country)
+                        .setParameter("lastEntryId", lastEntryId)
+                        .setMaxResults(BUILD_PAGE_SIZE)
+                        .getResultList();
+                for (final Object[] row : rows) {
+                    if (row[2] != null && ((String) row[2]).length() > 0) {
+                        index.put((String) row[0], (String) row[1], (String) row[2]);
+                    }
+                }
+                if (rows.size() < BUILD_PAGE_SIZE) {
+                    break;
+                }
+                lastEntryId = (String) rows.get(rows.size() - 1)[0];
+                entityManager.clear();
+            }
+        } finally {
+            entityManager.close();
+        }
+        LOGGER.info("Built translation memory " + getIndexKey(companyId, language, country) + " with "
+                + index.getSegmentCount() + " segments in " + (System.currentTimeMillis() - startTime) + " ms.");
+        return index;
+    }
+
+    /**
+     * Updates indexes with current state of changed entries. Base value changes update the
+     * segments of all translations of the key.
+     * @param entryIds the IDs of changed entries
+     */
+    private void update(final List<String> entryIds) {
+        final EntityManager entityManager = TranslationSiteUI.getEntityManagerFactory().createEntityManager();
+        try {
+            for (int i = 0; i < entryIds.size(); i += UPDATE_CHUNK_SIZE) {
+                final List<String> chunk = entryIds.subList(i, Math.min(i + UPDATE_CHUNK_SIZE, entryIds.size()));
+                final List<Entry> changedEntries = entityManager.createQuery(
+                        "select e from Entry as e where e.entryId in :entryIds", Entry.class)
+                        .setParameter("entryIds", chunk).getResultList();
+                final Map<String, Set<String>> keysByCompany = new HashMap<String, Set<String>>();
+                for (final Entry entry : changedEntries) {
+                    final String companyId = entry.getOwner().getCompanyId();
+                    if (entry.getDeleted() != null) {
+                        final TranslationMemoryIndex index = getBuiltIndex(getIndexKey(companyId,
+                                entry.getLanguage(), entry.getCountry()));
+                        if (index != null) {
+                            index.remove(entry.getEntryId());
+                        }
+                        continue;
+                    }
+                    if (!keysByCompany.containsKey(companyId)) {
+                        keysByCompany.put(companyId, new HashSet<String>());
+                    }
+                    keysByCompany.get(companyId).add(entry.getKey());
+                }
+                for (final Map.Entry<String, Set<String>> companyKeys : keysByCompany.entrySet()) {
+                    updateKeys(entityManager, companyKeys.getKey(), companyKeys.getValue());
+                }
+                entityManager.clear();
+            }
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Replaces segments of given keys in built indexes of the company.
+     * @param entityManager the entity manager
+     * @param companyId the company ID
+     * @param keys the keys
+     */
+    private void updateKeys(final EntityManager entityManager, final String companyId, final Set<String> keys) {
+        final List<Entry> entries = entityManager.createQuery(
+                "select e from Entry as e where e.owner.companyId = :companyId and e.key in :keys"
+                        + " and e.deleted is null", Entry.class)
+                .setParameter("companyId", companyId)
+                .setParameter("keys", keys)
+                .getResultList();
+        final Map<String, String> baseValues = new HashMap<String, String>();
+        for (final Entry entry : entries) {
+            if (entry.getLanguage().length() == 0 && entry.getCountry().length() == 0) {
+                baseValues.put(entry.getPath() + '/' + entry.getBasename() + '/' + entry.getKey(), entry.getValue());
+            }
+        }
+        for (final Entry entry : entries) {
+            if (entry.getLanguage().length() == 0) {
+                continue;
+            }
+            final TranslationMemoryIndex index = getBuiltIndex(getIndexKey(companyId, entry.getLanguage(),
+                    entry.getCountry()));
+            if (index == null) {
+                continue;
+            }
+            final String baseValue = baseValues.get(entry.getPath() + '/' + entry.getBasename() + '/'
+                    + entry.getKey());
+            if (baseValue != null && entry.getValue() != null && entry.getValue().length() > 0) {
+                index.put(entry.getEntryId(), baseValue, entry.getValue());
+            } else {
+                index.remove(entry.getEntryId());
+            }
+        }
+    }
+
+    /**
+     * @param companyId the company ID
+     * @param language the language
+     * @param country the country
+     * @return the index key
+     */
+    private static String getIndexKey(final String companyId, final String language, final String country) {
+        return companyId + '/' + language + '_' + country;
+    }
+}
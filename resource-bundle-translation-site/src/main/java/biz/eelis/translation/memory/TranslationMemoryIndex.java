@@ -0,0 +1,403 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Fuzzy match index of translated segments of one locale. Segments are base values paired with
+ * their translations and identified by entry ID of the translation. Candidates sharing rare trigrams
+ * with the looked up value are preselected, ranked by trigram overlap and the best of them by edit
+ * distance. Postings of common trigrams are not scanned so that lookup cost does not grow with the
+ * number of segments. Replaced and removed segments are left as tombstones until half of the slots
+ * are dead, at which point the index is compacted.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+final class TranslationMemoryIndex {
+    /** The number of trigram candidates ranked by edit distance per suggestion. */
+    private static final int CANDIDATES_PER_SUGGESTION = 10;
+    /** The number of preselected candidates ranked by trigram overlap per ranked candidate. */
+    private static final int PRESELECTED_PER_CANDIDATE = 4;
+    /** The maximum posting size scanned for candidates. Larger postings belong to common trigrams. */
+    private static final int MAX_SCANNED_POSTING_SIZE = 2000;
+    /** The minimum number of slots before compaction is considered. */
+    private static final int MIN_COMPACTION_SIZE = 1024;
+
+    /** The comparator ordering candidates of slot and score by ascending score. */
+    private static final Comparator<int[]> CANDIDATE_COMPARATOR = new Comparator<int[]>() {
+        @Override
+        public int compare(final int[] o1, final int[] o2) {
+            return o1[1] - o2[1];
+        }
+    };
+
+    /** The lock guarding the index. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** The entry IDs by slot. */
+    private String[] entryIds = new String[MIN_COMPACTION_SIZE];
+    /** The base values by slot, null for dead slots. */
+    private String[] sources = new String[MIN_COMPACTION_SIZE];
+    /** The translated values by slot. */
+    private String[] targets = new String[MIN_COMPACTION_SIZE];
+    /** The numbers of distinct trigrams of base values by slot. */
+    private int[] trigramCounts = new int[MIN_COMPACTION_SIZE];
+    /** The number of used slots. */
+    private int size = 0;
+    /** The number of dead slots. */
+    private int deadCount = 0;
+    /** The live slots by entry ID. */
+    private final Map<String, Integer> slots = new HashMap<String, Integer>();
+    /** The slots of base values containing the trigram by trigram. */
+    private final Map<Integer, IntList> postings = new HashMap<Integer, IntList>();
+
+    /**
+     * @return the number of segments in the index
+     */
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or replaces segment.
+     * @param entryId the entry ID of the translation
+     * @param source the base value
+     * @param target the translated value
+     */
+    public void put(final String entryId, final String source, final String target) {
+        final int[] trigrams = trigrams(source);
+        lock.writeLock().lock();
+        try {
+            final Integer slot = slots.get(entryId);
+            if (slot != null) {
+                if (sources[slot].equals(source) && targets[slot].equals(target)) {
+                    return;
+                }
+                kill(slot);
+            }
+            if (trigrams.length == 0) {
+                return;
+            }
+            add(entryId, source, target, trigrams);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes segment if exists.
+     * @param entryId the entry ID of the translation
+     */
+    public void remove(final String entryId) {
+        lock.writeLock().lock();
+        try {
+            final Integer slot = slots.get(entryId);
+            if (slot != null) {
+                kill(slot);
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds translations of segments with base value similar to given value.
+     * @param source the value to find translations for
+     * @param limit the maximum number of suggestions
+     * @param minSimilarity the minimum similarity between 0 and 1
+     * @return the suggestions with distinct translations in descending similarity order
+     */
+    public List<TranslationSuggestion> search(final String source, final int limit, final double minSimilarity) {
+        final int[] trigrams = trigrams(source);
+        if (trigrams.length == 0) {
+            return Collections.emptyList();
+        }
+        final int candidateCount = limit * CANDIDATES_PER_SUGGESTION;
+        final List<String[]> candidateValues = new ArrayList<String[]>();
+        lock.readLock().lock();
+        try {
+            final List<IntList> scannedPostings = new ArrayList<IntList>();
+            IntList rarestPosting = null;
+            for (final int trigram : trigrams) {
+                final IntList posting = postings.get(trigram);
+                if (posting == null) {
+                    continue;
+                }
+                if (posting.size <= MAX_SCANNED_POSTING_SIZE) {
+                    scannedPostings.add(posting);
+                }
+                if (rarestPosting == null || posting.size < rarestPosting.size) {
+                    rarestPosting = posting;
+                }
+            }
+            if (rarestPosting == null) {
+                return Collections.emptyList();
+            }
+            final Map<Integer, int[]> sharedCounts = new HashMap<Integer, int[]>();
+            if (scannedPostings.isEmpty()) {
+                // Only common trigrams, candidates are taken from the head of the shortest posting.
+                countSlots(rarestPosting, MAX_SCANNED_POSTING_SIZE, sharedCounts);
+            } else {
+                for (final IntList posting : scannedPostings) {
+                    countSlots(posting, posting.size, sharedCounts);
+                }
+            }
+
+            final PriorityQueue<int[]> preselected = new PriorityQueue<int[]>(
+                    candidateCount * PRESELECTED_PER_CANDIDATE + 1, CANDIDATE_COMPARATOR);
+            for (final Map.Entry<Integer, int[]> sharedCount : sharedCounts.entrySet()) {
+                final int slot = sharedCount.getKey();
+                if (sources[slot] == null) {
+                    continue;
+                }
+                preselected.add(new int[] {slot, sharedCount.getValue()[0]});
+                if (preselected.size() > candidateCount * PRESELECTED_PER_CANDIDATE) {
+                    preselected.poll();
+                }
+            }
+
+            // Trigram overlap bounds similarity loosely so candidate threshold is set below requested similarity.
+            final double minOverlap = minSimilarity / 2;
+            final Set<Integer> sourceTrigrams = new HashSet<Integer>();
+            for (final int trigram : trigrams) {
+                sourceTrigrams.add(trigram);
+            }
+            final PriorityQueue<int[]> best = new PriorityQueue<int[]>(candidateCount + 1, CANDIDATE_COMPARATOR);
+            for (final int[] candidate : preselected) {
+                final int slot = candidate[0];
+                int shared = 0;
+                for (final int trigram : trigrams(sources[slot])) {
+                    if (sourceTrigrams.contains(trigram)) {
+                        shared++;
+                    }
+                }
+                final int overlap = 2000 * shared / (trigrams.length + trigramCounts[slot]);
+                if (overlap < minOverlap * 1000) {
+                    continue;
+                }
+                best.add(new int[] {slot, overlap});
+                if (best.size() > candidateCount) {
+                    best.poll();
+                }
+            }
+            for (final int[] candidate : best) {
+                candidateValues.add(new String[] {sources[candidate[0]], targets[candidate[0]]});
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        final List<TranslationSuggestion> suggestions = new ArrayList<TranslationSuggestion>();
+        for (final String[] values : candidateValues) {
+            final double similarity = similarity(source, values[0]);
+            if (similarity >= minSimilarity) {
+                suggestions.add(new TranslationSuggestion(values[0], values[1], similarity));
+            }
+        }
+        Collections.sort(suggestions, new Comparator<TranslationSuggestion>() {
+            @Override
+            public int compare(final TranslationSuggestion o1, final TranslationSuggestion o2) {
+                return Double.compare(o2.getSimilarity(), o1.getSimilarity());
+            }
+        });
+        final Set<String> distinctTargets = new HashSet<String>();
+        final List<TranslationSuggestion> distinctSuggestions = new ArrayList<TranslationSuggestion>();
+        for (final TranslationSuggestion suggestion : suggestions) {
+            if (distinctSuggestions.size() < limit && distinctTargets.add(suggestion.getTarget())) {
+                distinctSuggestions.add(suggestion);
+            }
+        }
+        return distinctSuggestions;
+    }
+
+    /**
+     * Counts occurrences of slots in posting. Must be called with read lock held.
+     * @param posting the posting
+     * @param maxCount the maximum number of slots to count from the head of the posting
+     * @param counts the counts by slot to increment
+     */
+    private static void countSlots(final IntList posting, final int maxCount, final Map<Integer, int[]> counts) {
+        for (int i = 0; i < Math.min(maxCount, posting.size); i++) {
+            final int[] count = counts.get(posting.values[i]);
+            if (count == null) {
+                counts.put(posting.values[i], new int[] {1});
+            } else {
+                count[0]++;
+            }
+        }
+    }
+
+    /**
+     * Adds segment to new slot. Must be called with write lock held.
+     * @param entryId the entry ID
+     * @param source the base value
+     * @param target the translated value
+     * @param trigrams the distinct trigrams of the base value
+     */
+    private void add(final String entryId, final String source, final String target, final int[] trigrams) {
+        if (size == sources.length) {
+            final int capacity = sources.length * 2;
+            entryIds = Arrays.copyOf(entryIds, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            trigramCounts = Arrays.copyOf(trigramCounts, capacity);
+        }
+        final int slot = size++;
+        entryIds[slot] = entryId;
+        sources[slot] = source;
+        targets[slot] = target;
+        trigramCounts[slot] = trigrams.length;
+        slots.put(entryId, slot);
+        for (final int trigram : trigrams) {
+            IntList posting = postings.get(trigram);
+            if (posting == null) {
+                posting = new IntList();
+                postings.put(trigram, posting);
+            }
+            posting.add(slot);
+        }
+    }
+
+    /**
+     * Marks slot dead. Must be called with write lock held.
+     * @param slot the slot
+     */
+    private void kill(final int slot) {
+        slots.remove(entryIds[slot]);
+        entryIds[slot] = null;
+        sources[slot] = null;
+        targets[slot] = null;
+        deadCount++;
+    }
+
+    /**
+     * Rebuilds the index from live slots if half of the slots are dead. Must be called with
+     * write lock held.
+     */
+    private void compactIfNeeded() {
+        if (size < MIN_COMPACTION_SIZE || deadCount * 2 < size) {
+            return;
+        }
+        final String[] oldEntryIds = entryIds;
+        final String[] oldSources = sources;
+        final String[] oldTargets = targets;
+        final int oldSize = size;
+        final int capacity = Math.max(MIN_COMPACTION_SIZE, (oldSize - deadCount) * 2);
+        entryIds = new String[capacity];
+        sources = new String[capacity];
+        targets = new String[capacity];
+        trigramCounts = new int[capacity];
+        size = 0;
+        deadCount = 0;
+        slots.clear();
+        postings.clear();
+        for (int slot = 0; slot < oldSize; slot++) {
+            if (oldSources[slot] != null) {
+                add(oldEntryIds[slot], oldSources[slot], oldTargets[slot], trigrams(oldSources[slot]));
+            }
+        }
+    }
+
+    /**
+     * Gets distinct trigrams of case folded value padded with space at both ends.
+     * @param value the value
+     * @return the trigram codes
+     */
+    static int[] trigrams(final String value) {
+        if (value == null || value.trim().length() == 0) {
+            return new int[0];
+        }
+        final String padded = ' ' + value.toLowerCase(Locale.ENGLISH) + ' ';
+        final IntList trigrams = new IntList();
+        final Set<Integer> seen = new HashSet<Integer>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            final int trigram = (padded.charAt(i) * 31 + padded.charAt(i + 1)) * 31 + padded.charAt(i + 2);
+            if (seen.add(trigram)) {
+                trigrams.add(trigram);
+            }
+        }
+        return Arrays.copyOf(trigrams.values, trigrams.size);
+    }
+
+    /**
+     * Calculates similarity of two values as one minus their edit distance relative to the longer value.
+     * @param a the first value
+     * @param b the second value
+     * @return the similarity between 0 and 1
+     */
+    static double similarity(final String a, final String b) {
+        final int maxLength = Math.max(a.length(), b.length());
+        if (maxLength == 0) {
+            return 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            final char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                final int substitution = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            final int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return 1 - (double) previous[b.length()] / maxLength;
+    }
+
+    /**
+     * Growable list of primitive ints.
+     */
+    private static final class IntList {
+        /** The values. */
+        private int[] values = new int[4];
+        /** The number of values. */
+        private int size = 0;
+
+        /**
+         * @param value the value to append
+         */
+        private void add(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
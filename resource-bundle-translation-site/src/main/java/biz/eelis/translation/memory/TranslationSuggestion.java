@@ -0,0 +1,69 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.memory;
+
+/**
+ * Immutable translation suggestion from translation memory.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class TranslationSuggestion {
+
+    /** The base value of the translated segment. */
+    private final String source;
+    /** The translated value. */
+    private final String target;
+    /** The similarity of the source to the value looked up between 0 and 1. */
+    private final double similarity;
+
+    /**
+     * Constructor for setting the suggestion values.
+     * @param source the base value of the translated segment
+     * @param target the translated value
+     * @param similarity the similarity between 0 and 1
+     */
+    public TranslationSuggestion(final String source, final String target, final double similarity) {
+        this.source = source;
+        this.target = target;
+        this.similarity = similarity;
+    }
+
+    /**
+     * @return the base value of the translated segment
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the translated value
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the similarity of the source to the value looked up between 0 and 1
+     */
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    @Override
+    public String toString() {
+        return Math.round(similarity * 100) + "% " + source + " -> " + target;
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package contains translation memory for suggesting translations of similar values.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+package biz.eelis.translation.memory;
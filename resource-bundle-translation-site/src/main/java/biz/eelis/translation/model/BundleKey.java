@@ -0,0 +1,154 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.model;
+
+import java.io.Serializable;
+
+/**
+ * Identifies locale specific bundle of a company. Path may be null when bundle is
+ * identified by basename only.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BundleKey implements Serializable {
+    /** Java serialization version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The owning company ID. */
+    private final String companyId;
+    /** The path or null. */
+    private final String path;
+    /** The basename. */
+    private final String basename;
+    /** The language. */
+    private final String language;
+    /** The country. */
+    private final String country;
+
+    /**
+     * Constructor for setting values.
+     * @param companyId the owning company ID
+     * @param path the path or null
+     * @param basename the basename
+     * @param language the language
+     * @param country the country
+     */
+    public BundleKey(final String companyId, final String path, final String basename, final String language,
+                     final String country) {
+        this.companyId = companyId;
+        this.path = path;
+        this.basename = basename;
+        this.language = language;
+        this.country = country;
+    }
+
+    /**
+     * Constructs bundle key of the bundle entry belongs to.
+     * @param entry the entry
+     * @return the bundle key
+     */
+    public static BundleKey of(final Entry entry) {
+        return new BundleKey(entry.getOwner().getCompanyId(), entry.getPath(), entry.getBasename(),
+                entry.getLanguage(), entry.getCountry());
+    }
+
+    /**
+     * @return bundle key without path
+     */
+    public BundleKey withoutPath() {
+        return new BundleKey(companyId, null, basename, language, country);
+    }
+
+    /**
+     * @return the owning company ID
+     */
+    public String getCompanyId() {
+        return companyId;
+    }
+
+    /**
+     * @return the path or null
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the basename
+     */
+    public String getBasename() {
+        return basename;
+    }
+
+    /**
+     * @return the language
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * @return the country
+     */
+    public String getCountry() {
+        return country;
+    }
+
+    /**
+     * @return the locale suffix of bundle file name, empty string for base bundle
+     */
+    public String getLocaleSuffix() {
+        final StringBuilder builder = new StringBuilder();
+        if (language.length() > 0) {
+            builder.append('_').append(language);
+            if (country.length() > 0) {
+                builder.append('_').append(country);
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof BundleKey)) {
+            return false;
+        }
+        final BundleKey other = (BundleKey) obj;
+        return companyId.equals(other.companyId)
+                && (path == null ? other.path == null : path.equals(other.path))
+                && basename.equals(other.basename)
+                && language.equals(other.language)
+                && country.equals(other.country);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = companyId.hashCode();
+        result = 31 * result + (path != null ? path.hashCode() : 0);
+        result = 31 * result + basename.hashCode();
+        result = 31 * result + language.hashCode();
+        result = 31 * result + country.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return (path != null ? path + "/" : "") + basename + getLocaleSuffix();
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.model;
+
+import org.vaadin.addons.sitekit.model.Company;
+
+import javax.persistence.CascadeType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Entry counts of a bundle locale maintained incrementally as entries change so that
+ * completeness can be read without counting entries.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+@Entity
+@Table(name = "bundlestatistics")
+public final class BundleStatistics implements Serializable {
+    /** Java serialization version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** Unique UUID of the entity. */
+    @Id
+    @GeneratedValue(generator = "uuid")
+    private String bundleStatisticsId;
+
+    /** Owning company. */
+    @JoinColumn(nullable = false)
+    @ManyToOne(cascade = { CascadeType.DETACH, CascadeType.MERGE, CascadeType.REFRESH }, optional = false)
+    private Company owner;
+
+    /** The basename. */
+    @Column(length = 1024, nullable = false)
+    private String basename;
+
+    /** The language. */
+    @Column(length = 2, nullable = false)
+    private String language;
+
+    /** The country. */
+    @Column(length = 2, nullable = false)
+    private String country;
+
+    /** The number of entries. */
+    @Column(nullable = false)
+    private long entryCount;
+
+    /** The number of entries without value. */
+    @Column(nullable = false)
+    private long emptyCount;
+
+    /** The number of value modifications since the since time. */
+    @Column(nullable = false)
+    private long modifiedCount;
+
+    /** The time modification counting started. */
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date since;
+
+    /** The time of the latest change. */
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date modified;
+
+    /**
+     * The default constructor for JPA.
+     */
+    public BundleStatistics() {
+        super();
+    }
+
+    /**
+     * @return the bundle statistics ID
+     */
+    public String getBundleStatisticsId() {
+        return bundleStatisticsId;
+    }
+
+    /**
+     * @param bundleStatisticsId the bundle statistics ID
+     */
+    public void setBundleStatisticsId(final String bundleStatisticsId) {
+        this.bundleStatisticsId = bundleStatisticsId;
+    }
+
+    /**
+     * @return the owner
+     */
+    public Company getOwner() {
+        return owner;
+    }
+
+    /**
+     * @param owner the owner
+     */
+    public void setOwner(final Company owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * @return the basename
+     */
+    public String getBasename() {
+        return basename;
+    }
+
+    /**
+     * @param basename the basename
+     */
+    public void setBasename(final String basename) {
+        this.basename = basename;
+    }
+
+    /**
+     * @return the language
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * @param language the language
+     */
+    public void setLanguage(final String language) {
+        this.language = language;
+    }
+
+    /**
+     * @return the country
+     */
+    public String getCountry() {
+        return country;
+    }
+
+    /**
+     * @param country the country
+     */
+    public void setCountry(final String country) {
+        this.country = country;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @param entryCount the number of entries
+     */
+    public void setEntryCount(final long entryCount) {
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * @return the number of entries without value
+     */
+    public long getEmptyCount() {
+        return emptyCount;
+    }
+
+    /**
+     * @param emptyCount the number of entries without value
+     */
+    public void setEmptyCount(final long emptyCount) {
+        this.emptyCount = emptyCount;
+    }
+
+    /**
+     * @return the number of value modifications since the since time
+     */
+    public long getModifiedCount() {
+        return modifiedCount;
+    }
+
+    /**
+     * @param modifiedCount the number of value modifications since the since time
+     */
+    public void setModifiedCount(final long modifiedCount) {
+        this.modifiedCount = modifiedCount;
+    }
+
+    /**
+     * @return the time modification counting started
+     */
+    public Date getSince() {
+        return since;
+    }
+
+    /**
+     * @param since the time modification counting started
+     */
+    public void setSince(final Date since) {
+        this.since = since;
+    }
+
+    /**
+     * @return the time of the latest change
+     */
+    public Date getModified() {
+        return modified;
+    }
+
+    /**
+     * @param modified the time of the latest change
+     */
+    public void setModified(final Date modified) {
+        this.modified = modified;
+    }
+
+    /**
+     * @return the percentage of entries with value rounded down to one decimal
+     */
+    public double getCompleteness() {
+        if (entryCount == 0) {
+            return 100.0;
+        }
+        return Math.floor(1000.0 * (entryCount - emptyCount) / entryCount) / 10.0;
+    }
+
+    @Override
+    public String toString() {
+        return basename + "_" + language + "_" + country + ": " + (entryCount - emptyCount) + "/" + entryCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return bundleStatisticsId.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj != null && obj instanceof BundleStatistics
+                && bundleStatisticsId.equals(((BundleStatistics) obj).getBundleStatisticsId());
+    }
+
+}
@@ -27,6 +27,7 @@ import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.Version;
 import java.io.Serializable;
 import java.util.Date;
 
@@ -89,6 +90,20 @@ public final class Entry implements Serializable {
     @Column(nullable = false)
     private Date modified;
 
+    /** Time the entry was marked deleted because its key was removed from the base bundle. */
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = true)
+    private Date deleted;
+
+    /** True if value was filled in automatically and should be reviewed by translator. */
+    @Column(nullable = false)
+    private boolean reviewRequired;
+
+    /** Version used for optimistic locking of concurrent modifications. */
+    @Version
+    @Column(nullable = false)
+    private long version;
+
     /**
      * The default constructor for JPA.
      */
@@ -250,6 +265,48 @@ public final class Entry implements Serializable {
         this.modified = modified;
     }
 
+    /**
+     * @return the time the entry was marked deleted or null if entry is not deleted
+     */
+    public Date getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @param deleted the time the entry was marked deleted or null
+     */
+    public void setDeleted(final Date deleted) {
+        this.deleted = deleted;
+    }
+
+    /**
+     * @return true if value was filled in automatically and should be reviewed by translator
+     */
+    public boolean isReviewRequired() {
+        return reviewRequired;
+    }
+
+    /**
+     * @param reviewRequired true if value should be reviewed by translator
+     */
+    public void setReviewRequired(final boolean reviewRequired) {
+        this.reviewRequired = reviewRequired;
+    }
+
+    /**
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param version the version
+     */
+    public void setVersion(final long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return country + "_" + language + ":" + key + "=" + value;
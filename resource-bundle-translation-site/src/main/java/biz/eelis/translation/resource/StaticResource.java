@@ -0,0 +1,203 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.resource;
+
+import biz.eelis.translation.util.GzipUtil;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Immutable static resource content with precomputed encodings and strong entity tag.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class StaticResource {
+
+    /** The hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** The content type. */
+    private final String contentType;
+    /** The content. */
+    private final byte[] content;
+    /** The gzip encoded content or null if compression does not reduce size. */
+    private final byte[] gzipContent;
+    /** The brotli encoded content or null if not available. */
+    private final byte[] brotliContent;
+    /** The content hash in hexadecimal. */
+    private final String hash;
+
+    /**
+     * Constructor which compresses compressible content and computes its hash.
+     * @param contentType the content type
+     * @param content the content
+     * @param brotliContent the precompressed brotli content or null
+     * @throws IOException if exception occurs in compression.
+     */
+    public StaticResource(final String contentType, final byte[] content, final byte[] brotliContent)
+            throws IOException {
+        this.contentType = contentType;
+        this.content = content;
+        this.brotliContent = brotliContent;
+        this.gzipContent = isCompressible(contentType) ? gzip(content) : null;
+        this.hash = toHex(sha1(content));
+    }
+
+    /**
+     * @return the content type
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Gets content in the best encoding accepted by client.
+     * @param encoding the content encoding or null for identity
+     * @return the content
+     */
+    public byte[] getContent(final String encoding) {
+        if ("br".equals(encoding)) {
+            return brotliContent;
+        } else if ("gzip".equals(encoding)) {
+            return gzipContent;
+        } else {
+            return content;
+        }
+    }
+
+    /**
+     * Selects the smallest available encoding accepted by client.
+     * @param acceptEncoding the Accept-Encoding header value or null
+     * @return the encoding or null for identity
+     */
+    public String selectEncoding(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        if (brotliContent != null && accepts(acceptEncoding, "br")) {
+            return "br";
+        }
+        if (gzipContent != null && accepts(acceptEncoding, "gzip")) {
+            return "gzip";
+        }
+        return null;
+    }
+
+    /**
+     * Gets strong entity tag of the representation. Each encoding has its own tag.
+     * @param encoding the content encoding or null for identity
+     * @return the quoted entity tag
+     */
+    public String getETag(final String encoding) {
+        return encoding != null ? "\"" + hash + "-" + encoding + "\"" : "\"" + hash + "\"";
+    }
+
+    /**
+     * Checks whether If-None-Match header value matches any representation of this resource.
+     * @param ifNoneMatch the If-None-Match header value or null
+     * @return true if header matches
+     */
+    public boolean matches(final String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(getETag(null)) || tag.equals(getETag("gzip"))
+                    || tag.equals(getETag("br"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether Accept-Encoding header accepts given coding with non zero quality.
+     * @param acceptEncoding the Accept-Encoding header value
+     * @param coding the content coding
+     * @return true if coding is accepted
+     */
+    private static boolean accepts(final String acceptEncoding, final String coding) {
+        for (final String part : acceptEncoding.split(",")) {
+            final String[] parameters = part.split(";");
+            if (!parameters[0].trim().equalsIgnoreCase(coding)) {
+                continue;
+            }
+            for (int i = 1; i < parameters.length; i++) {
+                final String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (final NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether content type benefits from compression.
+     * @param contentType the content type
+     * @return true if content type is textual
+     */
+    private static boolean isCompressible(final String contentType) {
+        return contentType.startsWith("text/") || contentType.contains("javascript")
+                || contentType.contains("json") || contentType.contains("xml");
+    }
+
+    /**
+     * Compresses content with best compression as it is done only once per resource.
+     * @param content the content
+     * @return the gzip encoded content or null if compression does not reduce size
+     * @throws IOException if exception occurs in compression.
+     */
+    private static byte[] gzip(final byte[] content) throws IOException {
+        final byte[] gzipContent = GzipUtil.compress(content);
+        return gzipContent.length < content.length ? gzipContent : null;
+    }
+
+    /**
+     * Computes SHA-1 digest.
+     * @param bytes the bytes to digest
+     * @return the digest
+     */
+    private static byte[] sha1(final byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(bytes);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not supported.", e);
+        }
+    }
+
+    /**
+     * Converts bytes to hexadecimal string.
+     * @param bytes the bytes
+     * @return the hexadecimal string
+     */
+    private static String toHex(final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.resource;
+
+import org.apache.log4j.Logger;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Servlet serving theme and widgetset resources under /VAADIN from class path. Resources are loaded
+ * to memory on first request with precomputed gzip encoding and strong entity tags. Brotli encoding
+ * is served when precompressed .br file exists next to the resource. Content hashed widgetset files
+ * are cached for a year, .nocache. files are always revalidated and other resources are cached for
+ * static-resource-cache-seconds.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class StaticResourceServlet extends HttpServlet {
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(StaticResourceServlet.class);
+
+    /** Class path directory of resources. */
+    private static final String RESOURCE_DIRECTORY = "VAADIN";
+    /** Cache control of content hashed resources. */
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000";
+
+    /** Loaded resources by path. */
+    private final ConcurrentMap<String, StaticResource> resources = new ConcurrentHashMap<String, StaticResource>();
+    /** Cache control of resources which are not content hashed. */
+    private String cacheControl;
+
+    @Override
+    public void init() throws ServletException {
+        cacheControl = "public, max-age=" + PropertiesUtil.getProperty("translation-site",
+                "static-resource-cache-seconds");
+    }
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
+        final String pathInfo = request.getPathInfo();
+        // Resources are files with extension which excludes class path directories.
+        if (pathInfo == null || pathInfo.lastIndexOf('.') < pathInfo.lastIndexOf('/')
+                || pathInfo.contains("..") || pathInfo.contains("\\")) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final StaticResource resource = getResource(pathInfo);
+        if (resource == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final String encoding = resource.selectEncoding(request.getHeader("Accept-Encoding"));
+
+        response.setHeader("ETag", resource.getETag(encoding));
+        response.setHeader("Vary", "Accept-Encoding");
+        if (pathInfo.contains(".nocache.")) {
+            response.setHeader("Cache-Control", "no-cache");
+        } else if (pathInfo.contains(".cache.")) {
+            response.setHeader("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+        } else {
+            response.setHeader("Cache-Control", cacheControl);
+        }
+        if (resource.matches(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(resource.getContentType());
+        if (encoding != null) {
+            response.setHeader("Content-Encoding", encoding);
+        }
+        final byte[] body = resource.getContent(encoding);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * Gets resource loading it from class path on first request.
+     * @param path the resource path
+     * @return the resource or null if it does not exist
+     * @throws IOException if exception occurs in loading.
+     */
+    private StaticResource getResource(final String path) throws IOException {
+        final StaticResource cachedResource = resources.get(path);
+        if (cachedResource != null) {
+            return cachedResource;
+        }
+        final byte[] content = load(RESOURCE_DIRECTORY + path);
+        if (content == null) {
+            return null;
+        }
+        String contentType = getServletContext().getMimeType(path);
+        if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+        final StaticResource resource = new StaticResource(contentType, content,
+                load(RESOURCE_DIRECTORY + path + ".br"));
+        final StaticResource existingResource = resources.putIfAbsent(path, resource);
+        if (existingResource != null) {
+            return existingResource;
+        }
+        LOGGER.debug("Loaded static resource: " + path);
+        return resource;
+    }
+
+    /**
+     * Loads class path resource.
+     * @param name the resource name
+     * @return the resource bytes or null if resource does not exist
+     * @throws IOException if exception occurs in reading.
+     */
+    private static byte[] load(final String name) throws IOException {
+        final InputStream inputStream = StaticResourceServlet.class.getClassLoader().getResourceAsStream(name);
+        if (inputStream == null) {
+            return null;
+        }
+        try {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package contains serving of static web resources.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+package biz.eelis.translation.resource;
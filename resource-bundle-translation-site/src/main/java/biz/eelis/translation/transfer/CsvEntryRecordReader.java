@@ -0,0 +1,187 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads entry records from RFC 4180 CSV with header row. Columns are identified by
+ * header names as written by {@link CsvEntryRecordWriter} and may be in any order.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class CsvEntryRecordReader implements EntryRecordReader {
+
+    /** The reader. */
+    private final Reader reader;
+    /** Column indexes by column name. */
+    private final Map<String, Integer> columnIndexes = new HashMap<String, Integer>();
+    /** The fields of current record. */
+    private final List<String> fields = new ArrayList<String>();
+    /** The field buffer. */
+    private final StringBuilder field = new StringBuilder();
+    /** The current line number. */
+    private int lineNumber = 1;
+    /** The line number where last record started. */
+    private int recordLineNumber;
+    /** The character read ahead or -2 if none. */
+    private int lookAhead = -2;
+
+    /**
+     * Constructor which reads the header row.
+     * @param inputStream the input stream
+     * @throws IOException if exception occurs in reading or header is missing required columns.
+     */
+    public CsvEntryRecordReader(final InputStream inputStream) throws IOException {
+        this.reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+        if (!readFields()) {
+            throw new IOException("CSV header row missing.");
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            String name = fields.get(i).trim().toLowerCase();
+            if (i == 0 && name.length() > 0 && name.charAt(0) == '\uFEFF') {
+                name = name.substring(1);
+            }
+            columnIndexes.put(name, i);
+        }
+        for (final String required : new String[] {"path", "basename", "language", "country", "key", "value"}) {
+            if (!columnIndexes.containsKey(required)) {
+                throw new IOException("CSV header is missing column: " + required);
+            }
+        }
+    }
+
+    @Override
+    public boolean read(final EntryRecord record) throws IOException {
+        do {
+            if (!readFields()) {
+                return false;
+            }
+        } while (fields.size() == 1 && fields.get(0).length() == 0);
+        record.clear();
+        record.setPath(getField("path"));
+        record.setBasename(getField("basename"));
+        record.setLanguage(getField("language"));
+        record.setCountry(getField("country"));
+        record.setKey(getField("key"));
+        record.setSource(getField("source"));
+        record.setValue(getField("value"));
+        record.setAuthor(getField("author"));
+        return true;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return recordLineNumber;
+    }
+
+    /**
+     * Gets field of current record by column name.
+     * @param name the column name
+     * @return the field value, empty string if field is missing or null if column does not exist
+     */
+    private String getField(final String name) {
+        final Integer index = columnIndexes.get(name);
+        if (index == null) {
+            return null;
+        }
+        if (index >= fields.size()) {
+            return "";
+        }
+        return fields.get(index);
+    }
+
+    /**
+     * Reads fields of next record.
+     * @return false if end of input was reached
+     * @throws IOException if exception occurs in reading or quoting is malformed.
+     */
+    private boolean readFields() throws IOException {
+        fields.clear();
+        field.setLength(0);
+        recordLineNumber = lineNumber;
+        int c = next();
+        if (c == -1) {
+            return false;
+        }
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field at line " + recordLineNumber);
+                }
+                if (c == '"') {
+                    final int following = next();
+                    if (following == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        c = following;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        lineNumber++;
+                    }
+                    field.append((char) c);
+                }
+            } else {
+                if (c == -1 || c == '\n' || c == '\r') {
+                    fields.add(field.toString());
+                    if (c == '\r') {
+                        final int following = next();
+                        if (following != '\n') {
+                            lookAhead = following;
+                        }
+                    }
+                    if (c != -1) {
+                        lineNumber++;
+                    }
+                    return true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else {
+                    field.append((char) c);
+                }
+            }
+            c = next();
+        }
+    }
+
+    /**
+     * @return next character or -1 if end of input was reached
+     * @throws IOException if exception occurs in reading.
+     */
+    private int next() throws IOException {
+        if (lookAhead != -2) {
+            final int c = lookAhead;
+            lookAhead = -2;
+            return c;
+        }
+        return reader.read();
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+
+/**
+ * Writes entry records as RFC 4180 CSV with header row.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class CsvEntryRecordWriter implements EntryRecordWriter {
+
+    /** The column names. */
+    public static final String[] COLUMNS = new String[] {"path", "basename", "language", "country", "key",
+            "source", "value", "author", "modified"};
+    /** The timestamp format. */
+    public static final String TIMESTAMP_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+
+    /** The writer. */
+    private final Writer writer;
+    /** The timestamp format. */
+    private final SimpleDateFormat format = new SimpleDateFormat(TIMESTAMP_FORMAT);
+
+    /**
+     * Constructor which writes the header row.
+     * @param outputStream the output stream
+     * @throws IOException if exception occurs in writing.
+     */
+    public CsvEntryRecordWriter(final OutputStream outputStream) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(COLUMNS[i]);
+        }
+        writer.write("\r\n");
+    }
+
+    @Override
+    public void write(final EntryRecord record) throws IOException {
+        writeField(record.getPath());
+        writer.write(',');
+        writeField(record.getBasename());
+        writer.write(',');
+        writeField(record.getLanguage());
+        writer.write(',');
+        writeField(record.getCountry());
+        writer.write(',');
+        writeField(record.getKey());
+        writer.write(',');
+        writeField(record.getSource());
+        writer.write(',');
+        writeField(record.getValue());
+        writer.write(',');
+        writeField(record.getAuthor());
+        writer.write(',');
+        writeField(record.getModified() != null ? format.format(record.getModified()) : null);
+        writer.write("\r\n");
+    }
+
+    /**
+     * Writes field quoting it if necessary.
+     * @param field the field value or null
+     * @throws IOException if exception occurs in writing.
+     */
+    private void writeField(final String field) throws IOException {
+        if (field == null || field.length() == 0) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < field.length(); i++) {
+            final char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) {
+            writer.write(field);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < field.length(); i++) {
+            final char c = field.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.flush();
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import com.vaadin.server.DownloadStream;
+import com.vaadin.server.StreamResource;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Vaadin resource streaming gzip compressed export of company entries to the browser.
+ * Export is written by a background thread to a pipe read by the response writer so
+ * memory use does not depend on the amount of entries.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class EntryExportResource extends StreamResource {
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(EntryExportResource.class);
+    /** The pipe buffer size. */
+    private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Constructor for setting export company and format.
+     * @param companyId the owning company ID
+     * @param format the format
+     */
+    public EntryExportResource(final String companyId, final TransferFormat format) {
+        super(new StreamSource() {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public InputStream getStream() {
+                try {
+                    final PipedInputStream inputStream = new PipedInputStream(PIPE_BUFFER_SIZE);
+                    final PipedOutputStream pipedOutputStream = new PipedOutputStream(inputStream);
+                    final Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                final GZIPOutputStream outputStream = new GZIPOutputStream(pipedOutputStream);
+                                new EntryExporter(companyId, null, null, null).export(format, outputStream);
+                                outputStream.close();
+                            } catch (final IOException e) {
+                                LOGGER.warn("Entry export aborted for company: " + companyId, e);
+                            } catch (final Throwable t) {
+                                LOGGER.error("Entry export failed for company: " + companyId, t);
+                            } finally {
+                                try {
+                                    pipedOutputStream.close();
+                                } catch (final IOException ce) {
+                                    LOGGER.debug(ce);
+                                }
+                            }
+                        }
+                    }, "entry-export");
+                    thread.setDaemon(true);
+                    thread.start();
+                    return inputStream;
+                } catch (final IOException e) {
+                    throw new RuntimeException("Error starting entry export.", e);
+                }
+            }
+        }, "entries." + format.getExtension());
+        setMIMEType(format.getMimeType());
+        setCacheTime(0);
+    }
+
+    @Override
+    public DownloadStream getStream() {
+        final DownloadStream downloadStream = super.getStream();
+        downloadStream.setParameter("Content-Encoding", "gzip");
+        return downloadStream;
+    }
+}
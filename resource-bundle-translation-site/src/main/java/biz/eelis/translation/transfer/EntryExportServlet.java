@@ -0,0 +1,122 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import biz.eelis.translation.TranslationSiteUI;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.sitekit.model.Company;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import javax.persistence.EntityManager;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Servlet streaming entries of the company resolved from server name as CSV or XLIFF.
+ * Supported parameters are format (csv or xliff), basename, language and country.
+ * Requests have to present the configured export-access-token either as X-Access-Token
+ * header or token parameter.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class EntryExportServlet extends HttpServlet {
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(EntryExportServlet.class);
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!isAuthorized(request)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        final TransferFormat format = TransferFormat.parse(
+                request.getParameter("format") != null ? request.getParameter("format") : "csv");
+        if (format == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unsupported format.");
+            return;
+        }
+
+        final Company company;
+        final EntityManager entityManager = TranslationSiteUI.getEntityManagerFactory().createEntityManager();
+        try {
+            company = TranslationSiteUI.resolveCompany(entityManager, request.getServerName());
+        } finally {
+            entityManager.close();
+        }
+        if (company == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final EntryExporter exporter = new EntryExporter(company.getCompanyId(),
+                request.getParameter("basename"), request.getParameter("language"), request.getParameter("country"));
+
+        response.setContentType(format.getMimeType() + "; charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"entries." + format.getExtension() + "\"");
+        response.setHeader("Vary", "Accept-Encoding");
+
+        final String acceptEncoding = request.getHeader("Accept-Encoding");
+        final boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+
+        final OutputStream outputStream = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192)
+                : response.getOutputStream();
+        try {
+            exporter.export(format, outputStream);
+        } catch (final IOException e) {
+            LOGGER.error("Error exporting entries of company: " + company.getCompanyId(), e);
+            throw e;
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Checks whether request presents the configured access token.
+     * @param request the request
+     * @return true if request is authorized
+     */
+    private static boolean isAuthorized(final HttpServletRequest request) {
+        final String accessToken = PropertiesUtil.getProperty("translation-site", "export-access-token");
+        if (accessToken == null || accessToken.length() == 0) {
+            return false;
+        }
+        String presentedToken = request.getHeader("X-Access-Token");
+        if (presentedToken == null) {
+            presentedToken = request.getParameter("token");
+        }
+        if (presentedToken == null) {
+            return false;
+        }
+        try {
+            return MessageDigest.isEqual(accessToken.getBytes("UTF-8"), presentedToken.getBytes("UTF-8"));
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+}
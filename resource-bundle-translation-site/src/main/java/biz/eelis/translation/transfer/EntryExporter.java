@@ -0,0 +1,154 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import biz.eelis.translation.util.JdbcUtil;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams entries of a company from a forward only JDBC cursor to a record writer.
+ * Only the current row is held in memory regardless of the amount of entries.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class EntryExporter {
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(EntryExporter.class);
+    /** The default JDBC fetch size. */
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /** The owning company ID. */
+    private final String companyId;
+    /** The basename filter or null. */
+    private final String basename;
+    /** The language filter or null. */
+    private final String language;
+    /** The country filter or null. */
+    private final String country;
+
+    /**
+     * Constructor for setting export filter.
+     * @param companyId the owning company ID
+     * @param basename the basename or null to export all basenames
+     * @param language the language or null to export all languages
+     * @param country the country or null to export all countries
+     */
+    public EntryExporter(final String companyId, final String basename, final String language,
+                         final String country) {
+        this.companyId = companyId;
+        this.basename = basename;
+        this.language = language;
+        this.country = country;
+    }
+
+    /**
+     * Exports entries to output stream in given format. The output stream is not closed.
+     * @param format the format
+     * @param outputStream the output stream
+     * @return number of exported entries
+     * @throws IOException if exception occurs in writing or querying.
+     */
+    public int export(final TransferFormat format, final OutputStream outputStream) throws IOException {
+        final EntryRecordWriter writer = format.createWriter(outputStream);
+        final List<String> parameters = new ArrayList<String>();
+        final StringBuilder sql = new StringBuilder();
+        sql.append("select t.path, t.basename, t.language, t.country, t.key, b.value, t.value, t.author, t.modified ");
+        sql.append("from entry t left outer join entry b on b.owner_companyid = t.owner_companyid ");
+        sql.append("and b.path = t.path and b.basename = t.basename and b.key = t.key ");
+        sql.append("and b.language = '' and b.country = '' ");
+        sql.append("where t.owner_companyid = ? and t.deleted is null ");
+        parameters.add(companyId);
+        if (basename != null) {
+            sql.append("and t.basename = ? ");
+            parameters.add(basename);
+        }
+        if (language != null) {
+            sql.append("and t.language = ? ");
+            parameters.add(language);
+        }
+        if (country != null) {
+            sql.append("and t.country = ? ");
+            parameters.add(country);
+        }
+        if (format == TransferFormat.XLIFF) {
+            // Base bundle values are the XLIFF sources.
+            sql.append("and t.language <> '' ");
+        }
+        sql.append("order by t.path, t.basename, t.language, t.country, t.key");
+
+        int count = 0;
+        Connection connection = null;
+        try {
+            connection = JdbcUtil.openReadConnection();
+            connection.setReadOnly(true);
+            // Cursor based fetching requires transaction in PostgreSQL driver.
+            connection.setAutoCommit(false);
+            final PreparedStatement statement = connection.prepareStatement(sql.toString(),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(getFetchSize());
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setString(i + 1, parameters.get(i));
+            }
+            final ResultSet resultSet = statement.executeQuery();
+            final EntryRecord record = new EntryRecord();
+            while (resultSet.next()) {
+                record.clear();
+                record.setPath(resultSet.getString(1));
+                record.setBasename(resultSet.getString(2));
+                record.setLanguage(resultSet.getString(3));
+                record.setCountry(resultSet.getString(4));
+                record.setKey(resultSet.getString(5));
+                record.setSource(resultSet.getString(6));
+                record.setValue(resultSet.getString(7));
+                record.setAuthor(resultSet.getString(8));
+                record.setModified(resultSet.getTimestamp(9));
+                writer.write(record);
+                count++;
+            }
+            resultSet.close();
+            statement.close();
+            connection.commit();
+        } catch (final SQLException e) {
+            throw new IOException("Error exporting entries of company: " + companyId, e);
+        } finally {
+            JdbcUtil.close(connection);
+        }
+        writer.finish();
+        LOGGER.info("Exported " + count + " entries of company " + companyId + " as " + format);
+        return count;
+    }
+
+    /**
+     * @return the JDBC fetch size
+     */
+    private static int getFetchSize() {
+        final String fetchSize = PropertiesUtil.getProperty("translation-site", "export-fetch-size");
+        if (fetchSize == null || fetchSize.length() == 0) {
+            return DEFAULT_FETCH_SIZE;
+        }
+        return Integer.parseInt(fetchSize);
+    }
+}
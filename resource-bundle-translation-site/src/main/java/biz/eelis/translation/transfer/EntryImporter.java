@@ -0,0 +1,330 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import biz.eelis.translation.change.EntryChangeNotifier;
+import biz.eelis.translation.dao.BundleStatisticsDao;
+import biz.eelis.translation.dao.BundleStatisticsDelta;
+import biz.eelis.translation.model.Entry;
+import biz.eelis.translation.util.OptimisticLockUtil;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports translated values from CSV or XLIFF to existing entries. Input is parsed in a
+ * streaming fashion and rows are matched to entries by company, path, basename, language,
+ * country and key. Updates are committed in batches. If a batch fails its rows are applied
+ * one by one so that errors can be reported per row.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class EntryImporter {
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(EntryImporter.class);
+    /** The default batch size. */
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** The entity manager factory. */
+    private final EntityManagerFactory entityManagerFactory;
+    /** The owning company ID. */
+    private final String companyId;
+    /** The author of the imported values. */
+    private final String author;
+    /** The batch size. */
+    private final int batchSize;
+
+    /**
+     * Constructor for setting import context.
+     * @param entityManagerFactory the entity manager factory
+     * @param companyId the owning company ID
+     * @param author the author of the imported values
+     */
+    public EntryImporter(final EntityManagerFactory entityManagerFactory, final String companyId,
+                         final String author) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.companyId = companyId;
+        this.author = author;
+        final String batchSizeString = PropertiesUtil.getProperty("translation-site", "import-batch-size");
+        if (batchSizeString == null || batchSizeString.length() == 0) {
+            batchSize = DEFAULT_BATCH_SIZE;
+        } else {
+            batchSize = Integer.parseInt(batchSizeString);
+        }
+    }
+
+    /**
+     * Imports entries from input stream.
+     * @param format the input format
+     * @param inputStream the input stream
+     * @return the import result
+     * @throws IOException if input can not be read or is malformed.
+     */
+    public ImportResult importEntries(final TransferFormat format, final InputStream inputStream)
+            throws IOException {
+        final ImportResult result = new ImportResult();
+        final EntryRecordReader reader = format.createReader(inputStream);
+        final EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            final List<ImportRow> batch = new ArrayList<ImportRow>(batchSize);
+            final EntryRecord record = new EntryRecord();
+            while (reader.read(record)) {
+                if (record.getKey() == null || record.getKey().length() == 0 || record.getBasename() == null
+                        || record.getPath() == null || record.getLanguage() == null || record.getCountry() == null) {
+                    result.addError(reader.getLineNumber(), "Row does not identify entry.");
+                    continue;
+                }
+                if (record.getValue() == null || record.getValue().length() == 0) {
+                    result.addSkipped();
+                    continue;
+                }
+                batch.add(new ImportRow(reader.getLineNumber(), record));
+                if (batch.size() >= batchSize) {
+                    applyBatch(entityManager, batch, result);
+                    batch.clear();
+                }
+            }
+            applyBatch(entityManager, batch, result);
+        } finally {
+            entityManager.close();
+        }
+        LOGGER.info("Imported entries of company " + companyId + " from " + format + ": " + result);
+        return result;
+    }
+
+    /**
+     * Applies batch of rows in single transaction or row by row if batch transaction fails.
+     * @param entityManager the entity manager
+     * @param batch the rows
+     * @param result the import result
+     */
+    private void applyBatch(final EntityManager entityManager, final List<ImportRow> batch,
+                            final ImportResult result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final ImportResult batchResult = new ImportResult();
+        if (applyInTransaction(entityManager, batch, batchResult) == null) {
+            result.add(batchResult);
+            return;
+        }
+        for (final ImportRow row : batch) {
+            final ImportResult rowResult = new ImportResult();
+            final Throwable failure = applyInTransaction(entityManager, Collections.singletonList(row), rowResult);
+            if (failure == null) {
+                result.add(rowResult);
+            } else if (OptimisticLockUtil.isOptimisticLockFailure(failure)) {
+                result.addError(row.getLineNumber(), "Entry was modified concurrently: " + row.getKey());
+            } else {
+                LOGGER.warn("Error importing row at line " + row.getLineNumber(), failure);
+                result.addError(row.getLineNumber(), "Error saving entry " + row.getKey() + ": "
+                        + failure.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Applies rows in one transaction and clears persistence context afterwards.
+     * @param entityManager the entity manager
+     * @param rows the rows
+     * @param result the result to record row outcomes to
+     * @return null if transaction was committed or the failure
+     */
+    private Throwable applyInTransaction(final EntityManager entityManager, final List<ImportRow> rows,
+                                         final ImportResult result) {
+        final List<Entry> changedEntries = new ArrayList<Entry>();
+        final BundleStatisticsDelta statisticsDelta = new BundleStatisticsDelta();
+        entityManager.getTransaction().begin();
+        try {
+            apply(entityManager, rows, result, changedEntries, statisticsDelta);
+            BundleStatisticsDao.apply(entityManager, statisticsDelta);
+            entityManager.getTransaction().commit();
+            EntryChangeNotifier.fireEntriesChanged(changedEntries);
+            return null;
+        } catch (final Throwable t) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            return t;
+        } finally {
+            entityManager.clear();
+        }
+    }
+
+    /**
+     * Applies rows to matching entries querying entries once per bundle locale.
+     * @param entityManager the entity manager
+     * @param rows the rows
+     * @param result the result to record row outcomes to
+     * @param changedEntries the list to collect changed entries to
+     * @param statisticsDelta the delta to record statistics changes to
+     */
+    private void apply(final EntityManager entityManager, final List<ImportRow> rows, final ImportResult result,
+                       final List<Entry> changedEntries, final BundleStatisticsDelta statisticsDelta) {
+        final Map<String, List<ImportRow>> bundleRows = new LinkedHashMap<String, List<ImportRow>>();
+        for (final ImportRow row : rows) {
+            final String bundleId = row.getBundleId();
+            if (!bundleRows.containsKey(bundleId)) {
+                bundleRows.put(bundleId, new ArrayList<ImportRow>());
+            }
+            bundleRows.get(bundleId).add(row);
+        }
+
+        final Date modified = new Date();
+        for (final List<ImportRow> rowsOfBundle : bundleRows.values()) {
+            final ImportRow first = rowsOfBundle.get(0);
+            final List<String> keys = new ArrayList<String>(rowsOfBundle.size());
+            for (final ImportRow row : rowsOfBundle) {
+                keys.add(row.getKey());
+            }
+            final TypedQuery<Entry> query = entityManager.createQuery("select e from Entry as e where "
+                    + "e.owner.companyId=:companyId and e.path=:path and e.basename=:basename and "
+                    + "e.language=:language and e.country=:country and e.key in :keys and e.deleted is null", Entry.class);
+            query.setParameter("companyId", companyId);
+            query.setParameter("path", first.getPath());
+            query.setParameter("basename", first.getBasename());
+            query.setParameter("language", first.getLanguage());
+            query.setParameter("country", first.getCountry());
+            query.setParameter("keys", keys);
+            final Map<String, Entry> entries = new HashMap<String, Entry>();
+            for (final Entry entry : query.getResultList()) {
+                entries.put(entry.getKey(), entry);
+            }
+
+            for (final ImportRow row : rowsOfBundle) {
+                final Entry entry = entries.get(row.getKey());
+                if (entry == null) {
+                    result.addError(row.getLineNumber(), "No entry for key " + row.getKey() + " in "
+                            + row.getBasename() + " " + row.getLanguage() + "_" + row.getCountry());
+                } else if (entry.getValue().equals(row.getValue())) {
+                    result.addUnchanged();
+                } else {
+                    final String oldValue = entry.getValue();
+                    entry.setValue(row.getValue());
+                    statisticsDelta.valueChanged(entry, oldValue);
+                    entry.setReviewRequired(false);
+                    entry.setAuthor(author);
+                    entry.setModified(modified);
+                    changedEntries.add(entry);
+                    result.addUpdated();
+                }
+            }
+        }
+    }
+
+    /**
+     * Imported row identifying the entry and carrying the new value.
+     */
+    private static final class ImportRow {
+        /** The line number. */
+        private final int lineNumber;
+        /** The path. */
+        private final String path;
+        /** The basename. */
+        private final String basename;
+        /** The language. */
+        private final String language;
+        /** The country. */
+        private final String country;
+        /** The key. */
+        private final String key;
+        /** The value. */
+        private final String value;
+
+        /**
+         * Constructor which copies record values.
+         * @param lineNumber the line number
+         * @param record the record
+         */
+        ImportRow(final int lineNumber, final EntryRecord record) {
+            this.lineNumber = lineNumber;
+            this.path = record.getPath();
+            this.basename = record.getBasename();
+            this.language = record.getLanguage();
+            this.country = record.getCountry();
+            this.key = record.getKey();
+            this.value = record.getValue();
+        }
+
+        /**
+         * @return identifier of the bundle locale this row belongs to
+         */
+        String getBundleId() {
+            return path + "/" + basename + "_" + language + "_" + country;
+        }
+
+        /**
+         * @return the line number
+         */
+        int getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return the path
+         */
+        String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the basename
+         */
+        String getBasename() {
+            return basename;
+        }
+
+        /**
+         * @return the language
+         */
+        String getLanguage() {
+            return language;
+        }
+
+        /**
+         * @return the country
+         */
+        String getCountry() {
+            return country;
+        }
+
+        /**
+         * @return the key
+         */
+        String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the value
+         */
+        String getValue() {
+            return value;
+        }
+    }
+}
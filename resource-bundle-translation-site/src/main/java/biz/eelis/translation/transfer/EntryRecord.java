@@ -0,0 +1,192 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import java.util.Date;
+
+/**
+ * Flat entry record transferred in bulk export and import. Records are reused
+ * by readers and writers and are not persistent.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class EntryRecord {
+
+    /** The path. */
+    private String path;
+    /** The basename. */
+    private String basename;
+    /** The language. */
+    private String language;
+    /** The country. */
+    private String country;
+    /** The key. */
+    private String key;
+    /** The base language value. */
+    private String source;
+    /** The value. */
+    private String value;
+    /** The author. */
+    private String author;
+    /** The modified time. */
+    private Date modified;
+
+    /**
+     * Clears all fields.
+     */
+    public void clear() {
+        path = null;
+        basename = null;
+        language = null;
+        country = null;
+        key = null;
+        source = null;
+        value = null;
+        author = null;
+        modified = null;
+    }
+
+    /**
+     * @return the path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @param path the path
+     */
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    /**
+     * @return the basename
+     */
+    public String getBasename() {
+        return basename;
+    }
+
+    /**
+     * @param basename the basename
+     */
+    public void setBasename(final String basename) {
+        this.basename = basename;
+    }
+
+    /**
+     * @return the language
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * @param language the language
+     */
+    public void setLanguage(final String language) {
+        this.language = language;
+    }
+
+    /**
+     * @return the country
+     */
+    public String getCountry() {
+        return country;
+    }
+
+    /**
+     * @param country the country
+     */
+    public void setCountry(final String country) {
+        this.country = country;
+    }
+
+    /**
+     * @return the key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @param key the key
+     */
+    public void setKey(final String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return the base language value
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @param source the base language value
+     */
+    public void setSource(final String source) {
+        this.source = source;
+    }
+
+    /**
+     * @return the value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @param value the value
+     */
+    public void setValue(final String value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the author
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * @param author the author
+     */
+    public void setAuthor(final String author) {
+        this.author = author;
+    }
+
+    /**
+     * @return the modified
+     */
+    public Date getModified() {
+        return modified;
+    }
+
+    /**
+     * @param modified the modified
+     */
+    public void setModified(final Date modified) {
+        this.modified = modified;
+    }
+
+    @Override
+    public String toString() {
+        return path + "/" + basename + "_" + language + "_" + country + ":" + key + "=" + value;
+    }
+}
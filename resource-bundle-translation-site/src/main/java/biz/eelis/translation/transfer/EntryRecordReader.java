@@ -0,0 +1,40 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import java.io.IOException;
+
+/**
+ * Streaming reader of entry records.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public interface EntryRecordReader {
+
+    /**
+     * Reads next record.
+     * @param record the record to read values to
+     * @return false if end of input was reached
+     * @throws IOException if exception occurs in reading or input is malformed.
+     */
+    boolean read(final EntryRecord record) throws IOException;
+
+    /**
+     * @return the line number of the last read record in input
+     */
+    int getLineNumber();
+
+}
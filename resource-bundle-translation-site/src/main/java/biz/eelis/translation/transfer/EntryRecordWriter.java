@@ -0,0 +1,40 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import java.io.IOException;
+
+/**
+ * Streaming writer of entry records.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public interface EntryRecordWriter {
+
+    /**
+     * Writes record. Records are written in path, basename, language, country and key order.
+     * @param record the record
+     * @throws IOException if exception occurs in writing.
+     */
+    void write(final EntryRecord record) throws IOException;
+
+    /**
+     * Writes end of document and flushes the underlying stream. The stream is not closed.
+     * @throws IOException if exception occurs in writing.
+     */
+    void finish() throws IOException;
+
+}
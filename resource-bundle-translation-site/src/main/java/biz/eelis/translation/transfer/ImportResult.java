@@ -0,0 +1,171 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a bulk import.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class ImportResult {
+
+    /** Maximum number of row errors retained. */
+    public static final int MAX_ERRORS = 1000;
+
+    /** Number of updated entries. */
+    private int updatedCount;
+    /** Number of rows whose value was already up to date. */
+    private int unchangedCount;
+    /** Number of rows without value. */
+    private int skippedCount;
+    /** Number of failed rows. */
+    private int failedCount;
+    /** The row errors. */
+    private final List<RowError> errors = new ArrayList<RowError>();
+
+    /**
+     * Adds counts and errors of other result to this result.
+     * @param result the other result
+     */
+    void add(final ImportResult result) {
+        updatedCount += result.updatedCount;
+        unchangedCount += result.unchangedCount;
+        skippedCount += result.skippedCount;
+        failedCount += result.failedCount;
+        for (final RowError error : result.errors) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(error);
+            }
+        }
+    }
+
+    /**
+     * Increments updated count.
+     */
+    void addUpdated() {
+        updatedCount++;
+    }
+
+    /**
+     * Increments unchanged count.
+     */
+    void addUnchanged() {
+        unchangedCount++;
+    }
+
+    /**
+     * Increments skipped count.
+     */
+    void addSkipped() {
+        skippedCount++;
+    }
+
+    /**
+     * Adds row error.
+     * @param lineNumber the line number of the row in input
+     * @param message the error message
+     */
+    void addError(final int lineNumber, final String message) {
+        failedCount++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new RowError(lineNumber, message));
+        }
+    }
+
+    /**
+     * @return number of updated entries
+     */
+    public int getUpdatedCount() {
+        return updatedCount;
+    }
+
+    /**
+     * @return number of rows whose value was already up to date
+     */
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    /**
+     * @return number of rows without value
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * @return number of failed rows
+     */
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return the row errors, at most MAX_ERRORS first ones
+     */
+    public List<RowError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    @Override
+    public String toString() {
+        return "updated: " + updatedCount + " unchanged: " + unchangedCount + " skipped: " + skippedCount
+                + " failed: " + failedCount;
+    }
+
+    /**
+     * Error of a single imported row.
+     */
+    public static final class RowError {
+        /** The line number of the row in input. */
+        private final int lineNumber;
+        /** The error message. */
+        private final String message;
+
+        /**
+         * Constructor for setting values.
+         * @param lineNumber the line number of the row in input
+         * @param message the error message
+         */
+        public RowError(final int lineNumber, final String message) {
+            this.lineNumber = lineNumber;
+            this.message = message;
+        }
+
+        /**
+         * @return the line number of the row in input
+         */
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return the error message
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + lineNumber + ": " + message;
+        }
+    }
+}
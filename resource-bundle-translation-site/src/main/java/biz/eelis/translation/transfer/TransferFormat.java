@@ -0,0 +1,112 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Supported bulk transfer formats.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public enum TransferFormat {
+    /** Comma separated values with header row. */
+    CSV("text/csv", "csv"),
+    /** XLIFF 1.2 with one file element per bundle locale. */
+    XLIFF("application/x-xliff+xml", "xlf");
+
+    /** The MIME type. */
+    private final String mimeType;
+    /** The file name extension. */
+    private final String extension;
+
+    /**
+     * Constructor for setting values.
+     * @param mimeType the MIME type
+     * @param extension the file name extension
+     */
+    private TransferFormat(final String mimeType, final String extension) {
+        this.mimeType = mimeType;
+        this.extension = extension;
+    }
+
+    /**
+     * @return the MIME type
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return the file name extension
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Constructs record writer for this format.
+     * @param outputStream the output stream
+     * @return the record writer
+     * @throws IOException if exception occurs in writer construction.
+     */
+    public EntryRecordWriter createWriter(final OutputStream outputStream) throws IOException {
+        switch (this) {
+            case CSV:
+                return new CsvEntryRecordWriter(outputStream);
+            case XLIFF:
+                return new XliffEntryRecordWriter(outputStream);
+            default:
+                throw new IllegalStateException("Unsupported format: " + this);
+        }
+    }
+
+    /**
+     * Constructs record reader for this format.
+     * @param inputStream the input stream
+     * @return the record reader
+     * @throws IOException if exception occurs in reader construction.
+     */
+    public EntryRecordReader createReader(final InputStream inputStream) throws IOException {
+        switch (this) {
+            case CSV:
+                return new CsvEntryRecordReader(inputStream);
+            case XLIFF:
+                return new XliffEntryRecordReader(inputStream);
+            default:
+                throw new IllegalStateException("Unsupported format: " + this);
+        }
+    }
+
+    /**
+     * Parses format from name ignoring case.
+     * @param name the format name or file name extension
+     * @return the format or null if not supported
+     */
+    public static TransferFormat parse(final String name) {
+        if (name == null) {
+            return null;
+        }
+        for (final TransferFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name) || format.getExtension().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
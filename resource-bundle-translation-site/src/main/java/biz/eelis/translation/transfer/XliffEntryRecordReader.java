@@ -0,0 +1,139 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads entry records from XLIFF 1.2 as written by {@link XliffEntryRecordWriter}.
+ * Bundle path and basename are parsed from the original attribute of the file element
+ * and locale from its target-language attribute.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class XliffEntryRecordReader implements EntryRecordReader {
+
+    /** The XML reader. */
+    private final XMLStreamReader xmlReader;
+    /** The path of the current file element. */
+    private String path;
+    /** The basename of the current file element. */
+    private String basename;
+    /** The language of the current file element. */
+    private String language;
+    /** The country of the current file element. */
+    private String country;
+    /** Line number of the last read trans-unit. */
+    private int lineNumber;
+
+    /**
+     * Constructor for setting input.
+     * @param inputStream the input stream
+     * @throws IOException if exception occurs in parser construction.
+     */
+    public XliffEntryRecordReader(final InputStream inputStream) throws IOException {
+        try {
+            final XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            xmlReader = factory.createXMLStreamReader(inputStream);
+        } catch (final XMLStreamException e) {
+            throw new IOException("Error opening XLIFF input.", e);
+        }
+    }
+
+    @Override
+    public boolean read(final EntryRecord record) throws IOException {
+        try {
+            while (xmlReader.hasNext()) {
+                if (xmlReader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                final String name = xmlReader.getLocalName();
+                if ("file".equals(name)) {
+                    readFile();
+                } else if ("trans-unit".equals(name)) {
+                    if (basename == null) {
+                        throw new IOException("trans-unit outside file element at line "
+                                + xmlReader.getLocation().getLineNumber());
+                    }
+                    readTransUnit(record);
+                    return true;
+                }
+            }
+            return false;
+        } catch (final XMLStreamException e) {
+            throw new IOException("Malformed XLIFF: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Reads bundle identity from file element attributes.
+     * @throws IOException if attributes are missing.
+     */
+    private void readFile() throws IOException {
+        final int lineNumber = xmlReader.getLocation().getLineNumber();
+        final String original = xmlReader.getAttributeValue(null, "original");
+        final String targetLanguage = xmlReader.getAttributeValue(null, "target-language");
+        if (original == null || targetLanguage == null) {
+            throw new IOException("file element without original or target-language at line " + lineNumber);
+        }
+        final int separatorIndex = original.lastIndexOf('/');
+        path = separatorIndex > 0 ? original.substring(0, separatorIndex) : "";
+        basename = original.substring(separatorIndex + 1);
+        final String[] parts = targetLanguage.split("[-_]");
+        language = parts[0];
+        country = parts.length > 1 ? parts[1] : "";
+    }
+
+    /**
+     * Reads trans-unit element to record.
+     * @param record the record
+     * @throws XMLStreamException if exception occurs in parsing.
+     */
+    private void readTransUnit(final EntryRecord record) throws XMLStreamException {
+        lineNumber = xmlReader.getLocation().getLineNumber();
+        record.clear();
+        record.setPath(path);
+        record.setBasename(basename);
+        record.setLanguage(language);
+        record.setCountry(country);
+        final String resname = xmlReader.getAttributeValue(null, "resname");
+        record.setKey(resname != null ? resname : xmlReader.getAttributeValue(null, "id"));
+        while (xmlReader.hasNext()) {
+            final int event = xmlReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if ("source".equals(xmlReader.getLocalName())) {
+                    record.setSource(xmlReader.getElementText());
+                } else if ("target".equals(xmlReader.getLocalName())) {
+                    record.setValue(xmlReader.getElementText());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "trans-unit".equals(xmlReader.getLocalName())) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.transfer;
+
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes entry records as XLIFF 1.2. Each bundle locale is written as one file element
+ * whose original attribute contains bundle path and basename separated by the last slash.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class XliffEntryRecordWriter implements EntryRecordWriter {
+
+    /** The XLIFF 1.2 namespace. */
+    public static final String NAMESPACE = "urn:oasis:names:tc:xliff:document:1.2";
+
+    /** The underlying writer. */
+    private final Writer writer;
+    /** The XML writer. */
+    private final XMLStreamWriter xmlWriter;
+    /** The source language of the base bundles. */
+    private final String sourceLanguage;
+    /** The original attribute of the currently open file element. */
+    private String currentOriginal;
+    /** The target language of the currently open file element. */
+    private String currentTargetLanguage;
+
+    /**
+     * Constructor which writes the document start.
+     * @param outputStream the output stream
+     * @throws IOException if exception occurs in writing.
+     */
+    public XliffEntryRecordWriter(final OutputStream outputStream) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+        final String baseLanguage = PropertiesUtil.getProperty("translation-site", "bundle-base-language");
+        this.sourceLanguage = baseLanguage != null && baseLanguage.length() > 0 ? baseLanguage : "en";
+        try {
+            xmlWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+            xmlWriter.writeStartDocument("UTF-8", "1.0");
+            xmlWriter.writeStartElement("xliff");
+            xmlWriter.writeDefaultNamespace(NAMESPACE);
+            xmlWriter.writeAttribute("version", "1.2");
+        } catch (final XMLStreamException e) {
+            throw new IOException("Error writing XLIFF start.", e);
+        }
+    }
+
+    @Override
+    public void write(final EntryRecord record) throws IOException {
+        final String original = record.getPath() + "/" + record.getBasename();
+        final String targetLanguage = toLanguageTag(record.getLanguage(), record.getCountry());
+        try {
+            if (!original.equals(currentOriginal) || !targetLanguage.equals(currentTargetLanguage)) {
+                if (currentOriginal != null) {
+                    xmlWriter.writeEndElement();
+                    xmlWriter.writeEndElement();
+                }
+                xmlWriter.writeStartElement("file");
+                xmlWriter.writeAttribute("original", original);
+                xmlWriter.writeAttribute("datatype", "javapropertyresourcebundle");
+                xmlWriter.writeAttribute("source-language", sourceLanguage);
+                xmlWriter.writeAttribute("target-language", targetLanguage);
+                xmlWriter.writeStartElement("body");
+                currentOriginal = original;
+                currentTargetLanguage = targetLanguage;
+            }
+            xmlWriter.writeStartElement("trans-unit");
+            xmlWriter.writeAttribute("id", record.getKey());
+            xmlWriter.writeAttribute("resname", record.getKey());
+            xmlWriter.writeStartElement("source");
+            xmlWriter.writeCharacters(record.getSource() != null ? record.getSource() : "");
+            xmlWriter.writeEndElement();
+            xmlWriter.writeStartElement("target");
+            xmlWriter.writeCharacters(record.getValue() != null ? record.getValue() : "");
+            xmlWriter.writeEndElement();
+            xmlWriter.writeEndElement();
+        } catch (final XMLStreamException e) {
+            throw new IOException("Error writing XLIFF record: " + record, e);
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        try {
+            if (currentOriginal != null) {
+                xmlWriter.writeEndElement();
+                xmlWriter.writeEndElement();
+            }
+            xmlWriter.writeEndElement();
+            xmlWriter.writeEndDocument();
+            xmlWriter.flush();
+            writer.flush();
+        } catch (final XMLStreamException e) {
+            throw new IOException("Error writing XLIFF end.", e);
+        }
+    }
+
+    /**
+     * Converts language and country to XLIFF language tag.
+     * @param language the language
+     * @param country the country
+     * @return the language tag
+     */
+    static String toLanguageTag(final String language, final String country) {
+        if (country == null || country.length() == 0) {
+            return language;
+        }
+        return language + "-" + country;
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package contains bulk export and import of entries.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+package biz.eelis.translation.transfer;
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Utility for gzip compressing content which is compressed once and served or stored many times.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class GzipUtil {
+
+    /**
+     * Private default constructor to disable construction.
+     */
+    private GzipUtil() {
+    }
+
+    /**
+     * Compresses content with gzip at best compression level.
+     * @param content the content
+     * @return the compressed content
+     * @throws IOException if exception occurs in compression.
+     */
+    public static byte[] compress(final byte[] content) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.length / 3 + 32);
+        final GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        };
+        gzipOutputStream.write(content);
+        gzipOutputStream.close();
+        return outputStream.toByteArray();
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.util;
+
+import biz.eelis.translation.TranslationSiteUI;
+import org.vaadin.addons.sitekit.model.Company;
+
+import javax.persistence.EntityManager;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches resolution of host names to IDs of serving companies so that servlets polled by bundle
+ * consumers and new UIs do not query database on every request. Only IDs are cached, callers load
+ * the company with their own entity manager. Host names come from unauthenticated requests so the
+ * number of cached hosts is bounded and least recently used hosts are evicted.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class HostCompanyCache {
+    /** Time to cache host company resolution. */
+    private static final long CACHE_MILLIS = 60000;
+    /** Maximum number of cached hosts. */
+    private static final int MAX_HOSTS = 1000;
+
+    /** Company IDs and their resolution times by host in access order. */
+    private static final Map<String, Object[]> COMPANY_IDS = new LinkedHashMap<String, Object[]>(16, 0.75f, true) {
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Object[]> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+
+    /**
+     * Private default constructor to disable construction.
+     */
+    private HostCompanyCache() {
+    }
+
+    /**
+     * Gets ID of the company serving the host.
+     * @param host the host name
+     * @return the company ID or null if no company serves the host
+     */
+    public static String getCompanyId(final String host) {
+        synchronized (COMPANY_IDS) {
+            final Object[] cached = COMPANY_IDS.get(host);
+            if (cached != null) {
+                if (System.currentTimeMillis() - (Long) cached[1] < CACHE_MILLIS) {
+                    return (String) cached[0];
+                }
+                COMPANY_IDS.remove(host);
+            }
+        }
+        final EntityManager entityManager = TranslationSiteUI.getEntityManagerFactory().createEntityManager();
+        try {
+            final Company company = TranslationSiteUI.resolveCompany(entityManager, host);
+            final String companyId = company != null ? company.getCompanyId() : null;
+            synchronized (COMPANY_IDS) {
+                COMPANY_IDS.put(host, new Object[] {companyId, System.currentTimeMillis()});
+            }
+            return companyId;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Gets the company serving the host as managed by given entity manager.
+     * @param entityManager the entity manager
+     * @param host the host name
+     * @return the company or null if no company serves the host
+     */
+    public static Company getCompany(final EntityManager entityManager, final String host) {
+        final String companyId = getCompanyId(host);
+        return companyId != null ? entityManager.find(Company.class, companyId) : null;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.util;
+
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Utility for opening plain JDBC connections to the translation site database.
+ * Used by streaming operations which should not load entities to persistence context.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class JdbcUtil {
+
+    /** The properties category. */
+    private static final String PROPERTIES_CATEGORY = "translation-site";
+
+    /**
+     * Private default constructor to disable construction.
+     */
+    private JdbcUtil() {
+    }
+
+    /**
+     * Opens new connection with the persistence unit connection properties.
+     * @return the connection
+     * @throws SQLException if exception occurs in opening connection.
+     */
+    public static Connection openConnection() throws SQLException {
+        return openConnection(PropertiesUtil.getProperty(PROPERTIES_CATEGORY, "javax.persistence.jdbc.url"));
+    }
+
+    /**
+     * Opens new connection for read only use. The connection is opened to a read replica if one
+     * is in sync and to the primary database otherwise.
+     * @return the connection
+     * @throws SQLException if exception occurs in opening connection.
+     */
+    public static Connection openReadConnection() throws SQLException {
+        final String replicaUrl = ReadReplicaRouter.getReadUrl();
+        if (replicaUrl == null) {
+            return openConnection();
+        }
+        final Connection connection = openConnection(replicaUrl);
+        connection.setReadOnly(true);
+        return connection;
+    }
+
+    /**
+     * Opens new connection to given database with the persistence unit credentials.
+     * @param url the JDBC URL
+     * @return the connection
+     * @throws SQLException if exception occurs in opening connection.
+     */
+    public static Connection openConnection(final String url) throws SQLException {
+        final String driver = PropertiesUtil.getProperty(PROPERTIES_CATEGORY, "javax.persistence.jdbc.driver");
+        try {
+            Class.forName(driver);
+        } catch (final ClassNotFoundException e) {
+            throw new SQLException("JDBC driver not found: " + driver, e);
+        }
+        return DriverManager.getConnection(url,
+                PropertiesUtil.getProperty(PROPERTIES_CATEGORY, "javax.persistence.jdbc.user"),
+                PropertiesUtil.getProperty(PROPERTIES_CATEGORY, "javax.persistence.jdbc.password"));
+    }
+
+    /**
+     * Closes connection quietly.
+     * @param connection the connection or null
+     */
+    public static void close(final Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (final SQLException e) {
+            // Connection is discarded anyway.
+        }
+    }
+
+}
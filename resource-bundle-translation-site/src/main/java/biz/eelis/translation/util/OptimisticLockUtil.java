@@ -0,0 +1,56 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.util;
+
+import javax.persistence.OptimisticLockException;
+
+/**
+ * Utility for recognizing optimistic lock failures.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class OptimisticLockUtil {
+
+    /**
+     * Private default constructor to disable construction.
+     */
+    private OptimisticLockUtil() {
+    }
+
+    /**
+     * Checks whether throwable or any of its causes is an optimistic lock failure.
+     * JPA providers wrap the failure differently depending on whether it occurs
+     * on merge, flush or commit so the whole cause chain is inspected.
+     *
+     * @param throwable the throwable
+     * @return true if throwable was caused by concurrent modification of a versioned entity
+     */
+    public static boolean isOptimisticLockFailure(final Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause != null) {
+            if (cause instanceof OptimisticLockException
+                    || cause instanceof org.eclipse.persistence.exceptions.OptimisticLockException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.util;
+
+import biz.eelis.translation.TranslationSiteUI;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes read only queries to configured read replicas. Replication lag of each replica is
+ * checked periodically in background and only replicas lagging less than replica-max-lag-millis
+ * are used. Reads fall back to the primary database when no replica is configured or in sync.
+ * Replica entity manager factories do not use shared cache so that cached entities can not
+ * outlive replication.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class ReadReplicaRouter {
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(ReadReplicaRouter.class);
+    /** The properties category. */
+    private static final String PROPERTIES_CATEGORY = "translation-site";
+    /** Query returning replication lag in milliseconds, zero for databases which are not standbys. */
+    private static final String LAG_QUERY = "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 "
+            + "WHEN pg_last_xlog_receive_location() = pg_last_xlog_replay_location() THEN 0 "
+            + "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000 END";
+
+    /** The replica URLs. */
+    private static List<String> replicaUrls;
+    /** The maximum acceptable replication lag. */
+    private static long maxLagMillis;
+    /** The replicas currently in sync. */
+    private static volatile List<String> healthyUrls = Collections.emptyList();
+    /** The round robin counter. */
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    /** The replica entity manager factories by URL. */
+    private static final Map<String, EntityManagerFactory> ENTITY_MANAGER_FACTORIES =
+            new HashMap<String, EntityManagerFactory>();
+
+    /**
+     * Private default constructor to disable construction.
+     */
+    private ReadReplicaRouter() {
+    }
+
+    /**
+     * @return the maximum acceptable replication lag in milliseconds
+     */
+    public static long getMaxLagMillis() {
+        initialize();
+        return maxLagMillis;
+    }
+
+    /**
+     * Gets URL of a read replica in sync.
+     * @return the JDBC URL or null if reads should go to the primary database
+     */
+    public static String getReadUrl() {
+        initialize();
+        final List<String> urls = healthyUrls;
+        if (urls.isEmpty()) {
+            return null;
+        }
+        return urls.get((COUNTER.getAndIncrement() & Integer.MAX_VALUE) % urls.size());
+    }
+
+    /**
+     * Gets entity manager factory of a read replica in sync.
+     * @return the entity manager factory or null if reads should go to the primary database
+     */
+    public static EntityManagerFactory getReadEntityManagerFactory() {
+        final String url = getReadUrl();
+        if (url == null) {
+            return null;
+        }
+        synchronized (ENTITY_MANAGER_FACTORIES) {
+            EntityManagerFactory entityManagerFactory = ENTITY_MANAGER_FACTORIES.get(url);
+            if (entityManagerFactory == null) {
+                final Map<String, String> properties = new HashMap<String, String>();
+                for (final String key : new String[] {"javax.persistence.jdbc.driver", "javax.persistence.jdbc.user",
+                        "javax.persistence.jdbc.password"}) {
+                    properties.put(key, PropertiesUtil.getProperty(PROPERTIES_CATEGORY, key));
+                }
+                properties.put("javax.persistence.jdbc.url", url);
+                properties.put("eclipselink.session-name", TranslationSiteUI.PERSISTENCE_UNIT + "-replica-"
+                        + replicaUrls.indexOf(url));
+                properties.put("eclipselink.ddl-generation", "none");
+                properties.put("eclipselink.cache.shared.default", "false");
+                entityManagerFactory = Persistence.createEntityManagerFactory(TranslationSiteUI.PERSISTENCE_UNIT,
+                        properties);
+                ENTITY_MANAGER_FACTORIES.put(url, entityManagerFactory);
+            }
+            return entityManagerFactory;
+        }
+    }
+
+    /**
+     * Reads configuration and starts lag checks on first use.
+     */
+    private static synchronized void initialize() {
+        if (replicaUrls != null) {
+            return;
+        }
+        maxLagMillis = Long.parseLong(PropertiesUtil.getProperty(PROPERTIES_CATEGORY, "replica-max-lag-millis"));
+        final List<String> urls = new ArrayList<String>();
+        final String replicaUrlsProperty = PropertiesUtil.getProperty(PROPERTIES_CATEGORY, "replica-urls");
+        if (replicaUrlsProperty != null) {
+            for (final String url : replicaUrlsProperty.split(",")) {
+                if (url.trim().length() > 0) {
+                    urls.add(url.trim());
+                }
+            }
+        }
+        replicaUrls = Collections.unmodifiableList(urls);
+        if (replicaUrls.isEmpty()) {
+            return;
+        }
+
+        final long checkPeriodMillis = Long.parseLong(PropertiesUtil.getProperty(PROPERTIES_CATEGORY,
+                "replica-check-period-millis"));
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "read-replica-router");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkReplicas();
+            }
+        }, 0, checkPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks replication lag of replicas and updates the replicas in sync.
+     */
+    private static void checkReplicas() {
+        final List<String> urls = new ArrayList<String>();
+        for (final String url : replicaUrls) {
+            final long lagMillis = getLagMillis(url);
+            if (lagMillis >= 0 && lagMillis <= maxLagMillis) {
+                urls.add(url);
+            } else if (healthyUrls.contains(url)) {
+                LOGGER.warn("Read replica out of sync, lag: " + lagMillis + " ms: " + url);
+            }
+        }
+        if (!urls.equals(healthyUrls)) {
+            LOGGER.info("Read replicas in sync: " + urls);
+        }
+        healthyUrls = Collections.unmodifiableList(urls);
+    }
+
+    /**
+     * Queries replication lag of replica.
+     * @param url the replica URL
+     * @return the lag in milliseconds or -1 if replica could not be queried
+     */
+    private static long getLagMillis(final String url) {
+        Connection connection = null;
+        try {
+            connection = JdbcUtil.openConnection(url);
+            final Statement statement = connection.createStatement();
+            final ResultSet resultSet = statement.executeQuery(LAG_QUERY);
+            resultSet.next();
+            final long lagMillis = resultSet.getLong(1);
+            resultSet.close();
+            statement.close();
+            return lagMillis;
+        } catch (final Exception e) {
+            LOGGER.debug("Error checking read replica: " + url, e);
+            return -1;
+        } finally {
+            JdbcUtil.close(connection);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.util;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per UI routing of read only queries. Reads go to a read replica in sync except after the UI
+ * has written to the primary database, in which case they stay on the primary for the maximum
+ * replication lag so that the translator sees own changes.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class ReadRouting {
+
+    /** The primary entity manager. */
+    private final EntityManager primaryEntityManager;
+    /** The replica entity managers of the UI by factory. */
+    private final Map<EntityManagerFactory, EntityManager> replicaEntityManagers =
+            new HashMap<EntityManagerFactory, EntityManager>();
+    /** Time of the latest write of the UI. */
+    private long lastWriteMillis = 0;
+
+    /**
+     * Constructor for setting the primary entity manager.
+     * @param primaryEntityManager the primary entity manager
+     */
+    public ReadRouting(final EntityManager primaryEntityManager) {
+        this.primaryEntityManager = primaryEntityManager;
+    }
+
+    /**
+     * @return the primary entity manager
+     */
+    public EntityManager getPrimaryEntityManager() {
+        return primaryEntityManager;
+    }
+
+    /**
+     * Gets entity manager for read only queries.
+     * @return replica entity manager or the primary entity manager
+     */
+    public EntityManager getReadEntityManager() {
+        if (System.currentTimeMillis() - lastWriteMillis < ReadReplicaRouter.getMaxLagMillis()) {
+            return primaryEntityManager;
+        }
+        final EntityManagerFactory entityManagerFactory = ReadReplicaRouter.getReadEntityManagerFactory();
+        if (entityManagerFactory == null) {
+            return primaryEntityManager;
+        }
+        EntityManager entityManager = replicaEntityManagers.get(entityManagerFactory);
+        if (entityManager == null) {
+            entityManager = entityManagerFactory.createEntityManager();
+            replicaEntityManagers.put(entityManagerFactory, entityManager);
+        }
+        entityManager.clear();
+        return entityManager;
+    }
+
+    /**
+     * Records write of the UI to the primary database.
+     */
+    public void markWritten() {
+        lastWriteMillis = System.currentTimeMillis();
+    }
+}
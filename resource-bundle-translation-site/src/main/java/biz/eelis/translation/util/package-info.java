@@ -0,0 +1,6 @@
+/**
+ * This package contains translation site utilities.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+package biz.eelis.translation.util;
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation;
+
+import biz.eelis.translation.model.Entry;
+import org.apache.log4j.Logger;
+import org.eclipse.persistence.internal.weaving.PersistenceWeaved;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures deployment time of the statically woven persistence unit against in-memory HSQLDB so that
+ * every build reports startup cost without a database server.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class StartupTimeTest {
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(StartupTimeTest.class);
+
+    /**
+     * Creates entity manager factory and first entity manager of statically woven entities and
+     * reports the elapsed times.
+     */
+    @Test
+    public void testPersistenceUnitDeployment() {
+        Assert.assertTrue("Entities are not statically woven.", PersistenceWeaved.class.isAssignableFrom(Entry.class));
+
+        final Map<String, String> properties = new HashMap<String, String>();
+        properties.put("javax.persistence.jdbc.driver", "org.hsqldb.jdbcDriver");
+        properties.put("javax.persistence.jdbc.url", "jdbc:hsqldb:mem:startup-time");
+        properties.put("javax.persistence.jdbc.user", "sa");
+        properties.put("javax.persistence.jdbc.password", "");
+
+        final long startTime = System.nanoTime();
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(
+                TranslationSiteUI.PERSISTENCE_UNIT, properties);
+        try {
+            final long factoryTime = System.nanoTime();
+            // Creating first entity manager deploys the persistence unit.
+            final EntityManager entityManager = entityManagerFactory.createEntityManager();
+            final long deployTime = System.nanoTime();
+            entityManager.close();
+            Assert.assertTrue(entityManagerFactory.isOpen());
+
+            LOGGER.info("Startup time: entity manager factory created in "
+                    + (factoryTime - startTime) / 1000000 + " ms, persistence unit deployed in "
+                    + (deployTime - factoryTime) / 1000000 + " ms, total "
+                    + (deployTime - startTime) / 1000000 + " ms.");
+        } finally {
+            entityManagerFactory.close();
+        }
+    }
+
+}
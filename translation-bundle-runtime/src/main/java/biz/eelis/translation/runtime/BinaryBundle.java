@@ -0,0 +1,286 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Comparator;
+
+/**
+ * Read-only view to a compiled binary bundle.
+ * <p>
+ * The format consists of a header, a key table sorted by key code points and a shared
+ * UTF-8 string pool where equal strings are stored once. All integers are big endian.
+ * <pre>
+ * int magic          0x52425442 ("RBTB")
+ * int version        1
+ * int entryCount     n
+ * int poolOffset     absolute offset of the string pool
+ * n * { int keyOffset, int keyLength, int valueOffset, int valueLength }
+ * byte[] pool
+ * </pre>
+ * String offsets are relative to the pool and lengths are in bytes. Lookups binary search
+ * the key table comparing the requested key to pool bytes directly so no objects are
+ * allocated for the search. Values are decoded once and retained.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BinaryBundle {
+
+    /** The format magic number. */
+    public static final int MAGIC = 0x52425442;
+    /** The format version. */
+    public static final int VERSION = 1;
+    /** The header size in bytes. */
+    static final int HEADER_SIZE = 16;
+    /** The key table entry size in bytes. */
+    static final int TABLE_ENTRY_SIZE = 16;
+    /** The UTF-8 character set. */
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Key order of the key table. Keys are ordered by Unicode code points which equals
+     * the unsigned byte order of their UTF-8 encoding.
+     */
+    public static final Comparator<String> KEY_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(final String a, final String b) {
+            int i = 0;
+            int j = 0;
+            while (i < a.length() && j < b.length()) {
+                final int ca = codePointAt(a, i);
+                final int cb = codePointAt(b, j);
+                if (ca != cb) {
+                    return ca < cb ? -1 : 1;
+                }
+                i += Character.charCount(a.codePointAt(i));
+                j += Character.charCount(b.codePointAt(j));
+            }
+            return (a.length() - i) - (b.length() - j);
+        }
+    };
+
+    /** The buffer. */
+    private final ByteBuffer buffer;
+    /** The number of entries. */
+    private final int entryCount;
+    /** The absolute offset of the string pool. */
+    private final int poolOffset;
+    /** The decoded values. */
+    private final String[] values;
+
+    /**
+     * Constructor which validates the header.
+     * @param buffer the buffer containing the bundle
+     * @throws IOException if buffer does not contain a supported binary bundle.
+     */
+    public BinaryBundle(final ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary bundle.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary bundle version: " + buffer.getInt(4));
+        }
+        entryCount = buffer.getInt(8);
+        poolOffset = buffer.getInt(12);
+        if (entryCount < 0 || poolOffset != HEADER_SIZE + entryCount * TABLE_ENTRY_SIZE
+                || poolOffset > buffer.limit()) {
+            throw new IOException("Corrupted binary bundle header.");
+        }
+        values = new String[entryCount];
+    }
+
+    /**
+     * Opens binary bundle file by memory mapping it.
+     * @param file the file
+     * @return the binary bundle
+     * @throws IOException if exception occurs in mapping or file is not a binary bundle.
+     */
+    public static BinaryBundle open(final File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            // Mapping remains valid after the channel is closed.
+            return new BinaryBundle(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Gets value of key.
+     * @param key the key
+     * @return the value or null if key does not exist
+     */
+    public String get(final String key) {
+        final int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        return getValue(index);
+    }
+
+    /**
+     * Finds index of key in key table.
+     * @param key the key
+     * @return the index or negative value if key does not exist
+     */
+    public int indexOf(final String key) {
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int entryOffset = HEADER_SIZE + middle * TABLE_ENTRY_SIZE;
+            final int comparison = compare(key, poolOffset + buffer.getInt(entryOffset),
+                    buffer.getInt(entryOffset + 4));
+            if (comparison > 0) {
+                low = middle + 1;
+            } else if (comparison < 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Gets key at index.
+     * @param index the index
+     * @return the key
+     */
+    public String getKey(final int index) {
+        final int entryOffset = HEADER_SIZE + index * TABLE_ENTRY_SIZE;
+        return decode(buffer.getInt(entryOffset), buffer.getInt(entryOffset + 4));
+    }
+
+    /**
+     * Gets value at index.
+     * @param index the index
+     * @return the value
+     */
+    public String getValue(final int index) {
+        String value = values[index];
+        if (value == null) {
+            final int entryOffset = HEADER_SIZE + index * TABLE_ENTRY_SIZE;
+            value = decode(buffer.getInt(entryOffset + 8), buffer.getInt(entryOffset + 12));
+            values[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Decodes string from pool.
+     * @param offset the offset relative to pool
+     * @param length the length in bytes
+     * @return the string
+     */
+    private String decode(final int offset, final int length) {
+        final byte[] bytes = new byte[length];
+        final int start = poolOffset + offset;
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Compares key to UTF-8 encoded string in buffer without decoding or encoding.
+     * @param key the key
+     * @param offset the absolute offset of the encoded string
+     * @param length the length of the encoded string in bytes
+     * @return negative, zero or positive value if key is less than, equal or greater than the encoded string
+     */
+    private int compare(final String key, final int offset, final int length) {
+        int position = offset;
+        final int end = offset + length;
+        int i = 0;
+        while (i < key.length()) {
+            final int codePoint = codePointAt(key, i);
+            i += Character.charCount(key.codePointAt(i));
+            final int byteCount;
+            if (codePoint < 0x80) {
+                byteCount = 1;
+            } else if (codePoint < 0x800) {
+                byteCount = 2;
+            } else if (codePoint < 0x10000) {
+                byteCount = 3;
+            } else {
+                byteCount = 4;
+            }
+            for (int b = 0; b < byteCount; b++) {
+                if (position >= end) {
+                    return 1;
+                }
+                final int difference = encodedByte(codePoint, byteCount, b) - (buffer.get(position++) & 0xff);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+        }
+        return position < end ? -1 : 0;
+    }
+
+    /**
+     * Gets byte of UTF-8 encoding of code point.
+     * @param codePoint the code point
+     * @param byteCount the length of the encoding
+     * @param index the index of the byte
+     * @return the unsigned byte value
+     */
+    private static int encodedByte(final int codePoint, final int byteCount, final int index) {
+        if (byteCount == 1) {
+            return codePoint;
+        }
+        if (index == 0) {
+            switch (byteCount) {
+                case 2:
+                    return 0xc0 | (codePoint >> 6);
+                case 3:
+                    return 0xe0 | (codePoint >> 12);
+                default:
+                    return 0xf0 | (codePoint >> 18);
+            }
+        }
+        return 0x80 | ((codePoint >> (6 * (byteCount - 1 - index))) & 0x3f);
+    }
+
+    /**
+     * Gets code point at index replacing unpaired surrogates with '?' like the UTF-8 encoder does.
+     * @param string the string
+     * @param index the index
+     * @return the code point
+     */
+    static int codePointAt(final String string, final int index) {
+        final int codePoint = string.codePointAt(index);
+        if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+            return '?';
+        }
+        return codePoint;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * Resource bundle control loading compiled binary bundles (.rbb) before properties files.
+ * Binary bundles found as files are memory mapped so that loading a bundle neither parses
+ * text nor builds a hash table. Usage:
+ * <pre>
+ * ResourceBundle bundle = ResourceBundle.getBundle("messages", locale, BinaryBundleControl.INSTANCE);
+ * </pre>
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BinaryBundleControl extends ResourceBundle.Control {
+
+    /** The binary bundle format name. */
+    public static final String FORMAT_BINARY = "translation.binary";
+    /** The binary bundle file extension. */
+    public static final String EXTENSION = "rbb";
+    /** The shared instance. */
+    public static final BinaryBundleControl INSTANCE = new BinaryBundleControl();
+
+    /** The supported formats in lookup order. */
+    private static final List<String> FORMATS = Collections.unmodifiableList(Arrays.asList(
+            FORMAT_BINARY, "java.properties"));
+
+    @Override
+    public List<String> getFormats(final String baseName) {
+        if (baseName == null) {
+            throw new NullPointerException();
+        }
+        return FORMATS;
+    }
+
+    @Override
+    public ResourceBundle newBundle(final String baseName, final Locale locale, final String format,
+                                    final ClassLoader loader, final boolean reload)
+            throws IllegalAccessException, InstantiationException, IOException {
+        if (!FORMAT_BINARY.equals(format)) {
+            return super.newBundle(baseName, locale, format, loader, reload);
+        }
+        final String resourceName = toResourceName(toBundleName(baseName, locale), EXTENSION);
+        final URL url = loader.getResource(resourceName);
+        if (url == null) {
+            return null;
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return new BinaryResourceBundle(BinaryBundle.open(new File(url.toURI())));
+            } catch (final URISyntaxException e) {
+                throw new IOException("Invalid bundle URL: " + url);
+            }
+        }
+        final InputStream inputStream = url.openStream();
+        try {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            return new BinaryResourceBundle(new BinaryBundle(ByteBuffer.wrap(outputStream.toByteArray())));
+        } finally {
+            inputStream.close();
+        }
+    }
+}
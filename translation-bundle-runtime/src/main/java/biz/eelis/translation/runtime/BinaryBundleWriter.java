@@ -0,0 +1,118 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes key value pairs as binary bundle. See {@link BinaryBundle} for the format.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BinaryBundleWriter {
+
+    /** The entries in key order. */
+    private final TreeMap<String, String> entries = new TreeMap<String, String>(BinaryBundle.KEY_ORDER);
+
+    /**
+     * Adds entry. Later value of the same key replaces earlier one.
+     * @param key the key
+     * @param value the value
+     */
+    public void put(final String key, final String value) {
+        entries.put(key, value);
+    }
+
+    /**
+     * Adds all entries of map.
+     * @param map the map
+     */
+    public void putAll(final Map<String, String> map) {
+        entries.putAll(map);
+    }
+
+    /**
+     * @return number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the binary bundle. The output stream is not closed.
+     * @param outputStream the output stream
+     * @throws IOException if exception occurs in writing.
+     */
+    public void write(final OutputStream outputStream) throws IOException {
+        final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        final Map<String, int[]> pooled = new HashMap<String, int[]>();
+        final int[][] table = new int[entries.size()][];
+        int index = 0;
+        for (final Map.Entry<String, String> entry : entries.entrySet()) {
+            final int[] key = pool(pool, pooled, entry.getKey());
+            final int[] value = pool(pool, pooled, entry.getValue());
+            table[index++] = new int[] {key[0], key[1], value[0], value[1]};
+        }
+
+        final DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.writeInt(BinaryBundle.MAGIC);
+        dataOutputStream.writeInt(BinaryBundle.VERSION);
+        dataOutputStream.writeInt(table.length);
+        dataOutputStream.writeInt(BinaryBundle.HEADER_SIZE + table.length * BinaryBundle.TABLE_ENTRY_SIZE);
+        for (final int[] row : table) {
+            for (final int field : row) {
+                dataOutputStream.writeInt(field);
+            }
+        }
+        pool.writeTo(dataOutputStream);
+        dataOutputStream.flush();
+    }
+
+    /**
+     * @return the binary bundle as byte array
+     * @throws IOException if exception occurs in writing.
+     */
+    public byte[] toByteArray() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        write(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Adds string to pool unless already pooled.
+     * @param pool the pool
+     * @param pooled offsets and lengths of pooled strings
+     * @param string the string
+     * @return offset and length of the string in pool
+     */
+    private static int[] pool(final ByteArrayOutputStream pool, final Map<String, int[]> pooled,
+                              final String string) {
+        int[] location = pooled.get(string);
+        if (location == null) {
+            final byte[] bytes = string.getBytes(BinaryBundle.UTF_8);
+            location = new int[] {pool.size(), bytes.length};
+            pool.write(bytes, 0, bytes.length);
+            pooled.put(string, location);
+        }
+        return location;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.runtime;
+
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+/**
+ * Resource bundle backed by a binary bundle.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BinaryResourceBundle extends ResourceBundle {
+
+    /** The binary bundle. */
+    private final BinaryBundle bundle;
+
+    /**
+     * Constructor for setting the binary bundle.
+     * @param bundle the binary bundle
+     */
+    public BinaryResourceBundle(final BinaryBundle bundle) {
+        this.bundle = bundle;
+    }
+
+    @Override
+    protected Object handleGetObject(final String key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return bundle.get(key);
+    }
+
+    @Override
+    protected Set<String> handleKeySet() {
+        final Set<String> keys = new HashSet<String>(bundle.size() * 2);
+        for (int i = 0; i < bundle.size(); i++) {
+            keys.add(bundle.getKey(i));
+        }
+        return keys;
+    }
+
+    @Override
+    public Enumeration<String> getKeys() {
+        final Enumeration<String> parentKeys = parent != null ? parent.getKeys() : null;
+        return new Enumeration<String>() {
+            /** The index of the next own key. */
+            private int index = 0;
+            /** The next parent key not contained in this bundle. */
+            private String nextParentKey;
+
+            @Override
+            public boolean hasMoreElements() {
+                if (index < bundle.size()) {
+                    return true;
+                }
+                while (nextParentKey == null && parentKeys != null && parentKeys.hasMoreElements()) {
+                    final String parentKey = parentKeys.nextElement();
+                    if (bundle.indexOf(parentKey) < 0) {
+                        nextParentKey = parentKey;
+                    }
+                }
+                return nextParentKey != null;
+            }
+
+            @Override
+            public String nextElement() {
+                if (index < bundle.size()) {
+                    return bundle.getKey(index++);
+                }
+                if (!hasMoreElements()) {
+                    throw new java.util.NoSuchElementException();
+                }
+                final String key = nextParentKey;
+                nextParentKey = null;
+                return key;
+            }
+        };
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package contains runtime support for compiled binary bundles.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+package biz.eelis.translation.runtime;
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.runtime;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+/**
+ * Tests loading binary bundles and their fallback chain with binary bundle control.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BinaryBundleControlTest {
+
+    /** The bundle base name. */
+    private static final String BASENAME = "messages";
+
+    /** The temporary bundle directory. */
+    private File directory;
+    /** The class loader loading bundles from bundle directory. */
+    private ClassLoader loader;
+
+    /**
+     * Writes bundles to temporary directory.
+     * @throws IOException if bundles can not be written.
+     */
+    @Before
+    public void before() throws IOException {
+        directory = File.createTempFile("binary-bundle-control-test", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Unable to create directory: " + directory.getAbsolutePath());
+        }
+        writeBinaryBundle(BASENAME, new String[] {"greeting", "Hello", "farewell", "Goodbye", "base", "Base"});
+        writeBinaryBundle(BASENAME + "_fi", new String[] {"greeting", "Hei", "farewell", "N\u00e4kemiin"});
+        writeBinaryBundle(BASENAME + "_fi_FI", new String[] {"greeting", "Moi"});
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(
+                new File(directory, BASENAME + "_sv.properties")), "ISO-8859-1");
+        try {
+            writer.write("greeting=Hej\n");
+        } finally {
+            writer.close();
+        }
+        loader = new URLClassLoader(new URL[] {directory.toURI().toURL()}, null);
+        ResourceBundle.clearCache(loader);
+    }
+
+    /**
+     * Deletes temporary bundle directory.
+     */
+    @After
+    public void after() {
+        ResourceBundle.clearCache(loader);
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+        if (!directory.delete()) {
+            directory.deleteOnExit();
+        }
+    }
+
+    /**
+     * Tests that values are resolved from locale and its fallbacks.
+     */
+    @Test
+    public void testFallbackChain() {
+        final ResourceBundle bundle = getBundle(new Locale("fi", "FI"));
+        Assert.assertTrue(bundle instanceof BinaryResourceBundle);
+        Assert.assertEquals(new Locale("fi", "FI"), bundle.getLocale());
+        Assert.assertEquals("Moi", bundle.getString("greeting"));
+        Assert.assertEquals("N\u00e4kemiin", bundle.getString("farewell"));
+        Assert.assertEquals("Base", bundle.getString("base"));
+
+        final Set<String> keys = new HashSet<String>();
+        final Enumeration<String> enumeration = bundle.getKeys();
+        while (enumeration.hasMoreElements()) {
+            Assert.assertTrue(keys.add(enumeration.nextElement()));
+        }
+        final Set<String> expectedKeys = new HashSet<String>();
+        Collections.addAll(expectedKeys, "greeting", "farewell", "base");
+        Assert.assertEquals(expectedKeys, keys);
+    }
+
+    /**
+     * Tests that locale without own bundle uses base bundle.
+     */
+    @Test
+    public void testMissingLocale() {
+        final ResourceBundle bundle = getBundle(Locale.ROOT);
+        Assert.assertEquals("Hello", bundle.getString("greeting"));
+        Assert.assertEquals("Hello", getBundle(new Locale("de", "DE")).getString("greeting"));
+    }
+
+    /**
+     * Tests that properties bundle is used when binary bundle does not exist and falls back to binary
+     * base bundle.
+     */
+    @Test
+    public void testPropertiesFallback() {
+        final ResourceBundle bundle = getBundle(new Locale("sv", "SE"));
+        Assert.assertEquals("Hej", bundle.getString("greeting"));
+        Assert.assertEquals("Goodbye", bundle.getString("farewell"));
+    }
+
+    /**
+     * Tests that missing key is reported as with properties bundles.
+     */
+    @Test(expected = MissingResourceException.class)
+    public void testMissingKey() {
+        getBundle(new Locale("fi", "FI")).getString("missing");
+    }
+
+    /**
+     * Gets bundle with binary bundle control without default locale fallback.
+     * @param locale the locale
+     * @return the resource bundle
+     */
+    private ResourceBundle getBundle(final Locale locale) {
+        final Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.ROOT);
+        try {
+            return ResourceBundle.getBundle(BASENAME, locale, loader, BinaryBundleControl.INSTANCE);
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    /**
+     * Writes binary bundle to bundle directory.
+     * @param name the bundle name
+     * @param keysAndValues the keys and values
+     * @throws IOException if exception occurs in writing.
+     */
+    private void writeBinaryBundle(final String name, final String[] keysAndValues) throws IOException {
+        final BinaryBundleWriter writer = new BinaryBundleWriter();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            writer.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        final FileOutputStream outputStream = new FileOutputStream(new File(directory,
+                name + "." + BinaryBundleControl.EXTENSION));
+        try {
+            writer.write(outputStream);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.runtime;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Round trip tests of binary bundle writing and reading.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class BinaryBundleTest {
+
+    /** The temporary bundle file. */
+    private File file;
+
+    /**
+     * Creates temporary bundle file.
+     * @throws IOException if file can not be created.
+     */
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("binary-bundle-test", "." + BinaryBundleControl.EXTENSION);
+    }
+
+    /**
+     * Deletes temporary bundle file.
+     */
+    @After
+    public void after() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Tests lookup of written entries from byte array.
+     * @throws IOException if exception occurs in writing or reading.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        final BinaryBundleWriter writer = new BinaryBundleWriter();
+        writer.put("b.key", "B");
+        writer.put("a.key", "A");
+        writer.put("c.key", "");
+        Assert.assertEquals(3, writer.size());
+
+        final BinaryBundle bundle = new BinaryBundle(ByteBuffer.wrap(writer.toByteArray()));
+        Assert.assertEquals(3, bundle.size());
+        Assert.assertEquals("A", bundle.get("a.key"));
+        Assert.assertEquals("B", bundle.get("b.key"));
+        Assert.assertEquals("", bundle.get("c.key"));
+        Assert.assertEquals("a.key", bundle.getKey(0));
+        Assert.assertEquals("b.key", bundle.getKey(1));
+        Assert.assertEquals("c.key", bundle.getKey(2));
+        Assert.assertEquals(1, bundle.indexOf("b.key"));
+        Assert.assertEquals("B", bundle.getValue(1));
+    }
+
+    /**
+     * Tests that missing keys are not found.
+     * @throws IOException if exception occurs in writing or reading.
+     */
+    @Test
+    public void testMissingKey() throws IOException {
+        final BinaryBundleWriter writer = new BinaryBundleWriter();
+        writer.put("b", "B");
+        writer.put("d", "D");
+        final BinaryBundle bundle = new BinaryBundle(ByteBuffer.wrap(writer.toByteArray()));
+        Assert.assertNull(bundle.get("a"));
+        Assert.assertNull(bundle.get("c"));
+        Assert.assertNull(bundle.get("e"));
+        Assert.assertNull(bundle.get(""));
+        Assert.assertTrue(bundle.indexOf("c") < 0);
+
+        final BinaryBundle empty = new BinaryBundle(ByteBuffer.wrap(new BinaryBundleWriter().toByteArray()));
+        Assert.assertEquals(0, empty.size());
+        Assert.assertNull(empty.get("a"));
+    }
+
+    /**
+     * Tests keys and values outside ASCII including characters outside basic multilingual plane.
+     * @throws IOException if exception occurs in writing or reading.
+     */
+    @Test
+    public void testNonAsciiValues() throws IOException {
+        final List<String> keys = new ArrayList<String>();
+        keys.add("a");
+        keys.add("\u00e4iti");
+        keys.add("\uffe0");
+        keys.add("\ud83d\ude00");
+        keys.add("z");
+        final BinaryBundleWriter writer = new BinaryBundleWriter();
+        for (final String key : keys) {
+            writer.put(key, "\u00c5ngstr\u00f6m \u65e5\u672c\u8a9e \ud83d\ude00 " + key);
+        }
+        final BinaryBundle bundle = new BinaryBundle(ByteBuffer.wrap(writer.toByteArray()));
+        for (final String key : keys) {
+            Assert.assertEquals("\u00c5ngstr\u00f6m \u65e5\u672c\u8a9e \ud83d\ude00 " + key, bundle.get(key));
+        }
+        // Keys are in code point order where supplementary characters sort after all basic multilingual
+        // plane characters, unlike in UTF-16 order.
+        Assert.assertEquals("z", bundle.getKey(1));
+        Assert.assertEquals("\u00e4iti", bundle.getKey(2));
+        Assert.assertEquals("\uffe0", bundle.getKey(3));
+        Assert.assertEquals("\ud83d\ude00", bundle.getKey(4));
+        Assert.assertNull(bundle.get("\u00e4"));
+    }
+
+    /**
+     * Tests memory mapped reading of bundle file.
+     * @throws IOException if exception occurs in writing or reading.
+     */
+    @Test
+    public void testMemoryMappedRead() throws IOException {
+        final BinaryBundleWriter writer = new BinaryBundleWriter();
+        for (int i = 0; i < 1000; i++) {
+            writer.put("key." + i, "value " + i + " \u00f6");
+        }
+        final FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            writer.write(outputStream);
+        } finally {
+            outputStream.close();
+        }
+
+        final BinaryBundle bundle = BinaryBundle.open(file);
+        Assert.assertEquals(1000, bundle.size());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("value " + i + " \u00f6", bundle.get("key." + i));
+        }
+        Assert.assertNull(bundle.get("key.1000"));
+    }
+
+    /**
+     * Tests that data which is not a binary bundle is rejected.
+     * @throws IOException if data is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testInvalidMagic() throws IOException {
+        new BinaryBundle(ByteBuffer.wrap("key=value\nother=value\n".getBytes("UTF-8")));
+    }
+
+}
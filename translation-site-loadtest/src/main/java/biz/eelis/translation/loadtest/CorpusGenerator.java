@@ -0,0 +1,163 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.loadtest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates synthetic resource bundle corpus and mutates it to cause work for synchronization cycles.
+ * Corpus is deterministic for given key count so that consecutive runs measure the same data.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class CorpusGenerator {
+
+    /** The bundle basename. */
+    public static final String BASENAME = "loadtest";
+    /** The translated locales, base bundle is written without locale suffix. */
+    public static final String[] LOCALES = {"fi_FI", "sv_SE", "de_DE", "fr_FR"};
+
+    /** Words used to compose values. */
+    private static final String[] WORDS = {"account", "address", "amount", "balance", "cancel", "change",
+            "confirm", "customer", "date", "delete", "details", "email", "error", "field", "file", "invalid",
+            "invoice", "login", "message", "missing", "name", "new", "number", "order", "password", "payment",
+            "phone", "please", "remove", "required", "save", "search", "select", "send", "settings", "status",
+            "total", "update", "user", "value"};
+
+    /** The bundle directory. */
+    private final File directory;
+    /** The character set. */
+    private final String characterSet;
+    /** The number of keys in base bundle. */
+    private int keyCount;
+    /** Revision incremented on each mutation. */
+    private int revision;
+
+    /**
+     * @param directory the bundle directory
+     * @param characterSet the bundle character set
+     * @param keyCount the number of keys
+     */
+    public CorpusGenerator(final File directory, final String characterSet, final int keyCount) {
+        this.directory = directory;
+        this.characterSet = characterSet;
+        this.keyCount = keyCount;
+    }
+
+    /**
+     * @return the number of keys currently in base bundle
+     */
+    public synchronized int getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * @return the number of mutations made
+     */
+    public synchronized int getRevision() {
+        return revision;
+    }
+
+    /**
+     * Writes base bundle and locale bundles. Locale bundles leave every tenth key untranslated.
+     * @throws IOException if IO exception occurs.
+     */
+    public synchronized void generate() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory: " + directory.getAbsolutePath());
+        }
+        writeBundle(new File(directory, BASENAME + ".properties"), "");
+        for (final String locale : LOCALES) {
+            writeBundle(new File(directory, BASENAME + "_" + locale + ".properties"), locale);
+        }
+    }
+
+    /**
+     * Mutates base bundle by adding keys and changing values of some existing keys.
+     * @param addedKeys the number of keys to add
+     * @throws IOException if IO exception occurs.
+     */
+    public synchronized void mutate(final int addedKeys) throws IOException {
+        revision++;
+        keyCount += addedKeys;
+        writeBundle(new File(directory, BASENAME + ".properties"), "");
+    }
+
+    /**
+     * Writes single bundle file.
+     * @param file the file
+     * @param locale the locale or empty string for base bundle
+     * @throws IOException if IO exception occurs.
+     */
+    private void writeBundle(final File file, final String locale) throws IOException {
+        final File temporaryFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(temporaryFile), characterSet);
+        try {
+            for (int i = 0; i < keyCount; i++) {
+                if (locale.length() > 0 && i % 10 == 9) {
+                    continue;
+                }
+                writer.write(getKey(i) + "=" + getValue(i, locale) + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace file: " + file.getAbsolutePath());
+        }
+        if (!temporaryFile.renameTo(file)) {
+            throw new IOException("Could not rename file: " + temporaryFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * @param index the key index
+     * @return the key
+     */
+    public static String getKey(final int index) {
+        return "key-" + String.format("%06d", index);
+    }
+
+    /**
+     * Composes value from words chosen by key index. Base values of one percent of keys change on each
+     * revision.
+     * @param index the key index
+     * @param locale the locale or empty string for base bundle
+     * @return the value
+     */
+    private String getValue(final int index, final String locale) {
+        final int seed = index % 100 == revision % 100 && locale.length() == 0 ? index * 31 + revision : index;
+        final Random random = new Random(seed);
+        final StringBuilder builder = new StringBuilder();
+        final int wordCount = 2 + random.nextInt(6);
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        if (locale.length() > 0) {
+            builder.append(" (").append(locale).append(')');
+        }
+        return builder.toString();
+    }
+
+}
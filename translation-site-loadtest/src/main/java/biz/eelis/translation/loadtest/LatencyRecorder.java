@@ -0,0 +1,136 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records operation latencies of simulated sessions and computes percentiles.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class LatencyRecorder {
+
+    /** Latency samples in nanoseconds per operation. */
+    private final Map<String, LongList> samples = new TreeMap<String, LongList>();
+    /** Error counts per operation. */
+    private final Map<String, Integer> errors = new TreeMap<String, Integer>();
+
+    /**
+     * Records successful operation.
+     * @param operation the operation name
+     * @param nanos the latency in nanoseconds
+     */
+    public synchronized void record(final String operation, final long nanos) {
+        LongList list = samples.get(operation);
+        if (list == null) {
+            list = new LongList();
+            samples.put(operation, list);
+        }
+        list.add(nanos);
+    }
+
+    /**
+     * Records failed operation.
+     * @param operation the operation name
+     */
+    public synchronized void recordError(final String operation) {
+        final Integer count = errors.get(operation);
+        errors.put(operation, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Builds report lines with count, throughput and latency percentiles of each operation.
+     * @param durationMillis the measurement duration in milliseconds
+     * @return the report lines
+     */
+    public synchronized List<String> report(final long durationMillis) {
+        final List<String> operations = new ArrayList<String>(samples.keySet());
+        for (final String operation : errors.keySet()) {
+            if (!operations.contains(operation)) {
+                operations.add(operation);
+            }
+        }
+        Collections.sort(operations);
+
+        final List<String> lines = new ArrayList<String>();
+        lines.add(String.format("%-14s %8s %8s %10s %10s %10s %10s %10s",
+                "operation", "count", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        long totalCount = 0;
+        for (final String operation : operations) {
+            final long[] sorted = samples.containsKey(operation) ? samples.get(operation).toSortedArray()
+                    : new long[0];
+            final int errorCount = errors.containsKey(operation) ? errors.get(operation) : 0;
+            totalCount += sorted.length;
+            lines.add(String.format("%-14s %8d %8d %10.1f %10.1f %10.1f %10.1f %10.1f",
+                    operation, sorted.length, errorCount, sorted.length * 1000.0 / durationMillis,
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                    percentile(sorted, 100)));
+        }
+        lines.add(String.format("%-14s %8d %8s %10.1f", "total", totalCount, "",
+                totalCount * 1000.0 / durationMillis));
+        return lines;
+    }
+
+    /**
+     * Gets percentile using nearest rank method.
+     * @param sorted the sorted samples in nanoseconds
+     * @param percent the percentile
+     * @return the percentile in milliseconds or 0 if there are no samples
+     */
+    private static double percentile(final long[] sorted, final int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1000000.0;
+    }
+
+    /**
+     * Growable list of primitive longs.
+     */
+    private static final class LongList {
+        /** The values. */
+        private long[] values = new long[1024];
+        /** The value count. */
+        private int size;
+
+        /**
+         * @param value the value to add
+         */
+        public void add(final long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * @return sorted copy of values
+         */
+        public long[] toSortedArray() {
+            final long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+}
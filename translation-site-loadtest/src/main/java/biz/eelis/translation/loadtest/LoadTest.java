@@ -0,0 +1,258 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.loadtest;
+
+import biz.eelis.translation.TranslationSiteUI;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.sitekit.model.Company;
+import org.vaadin.addons.sitekit.util.PropertiesUtil;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test which starts translation site with embedded Jetty against synthetic corpus and drives
+ * simulated translator sessions while synchronizer runs. Sessions create their HTTP sessions and UIs
+ * and send UIDL requests over HTTP against the started server. Reports latency percentiles, throughput,
+ * database connection usage and heap usage to standard output and target/loadtest/report.txt.
+ *
+ * Arguments are given as name=value pairs: sessions, duration (seconds), keys, think (maximum think
+ * time in milliseconds), mutate (corpus mutation period in seconds) and burst (number of sessions
+ * created at once before translator sessions start, 0 to skip the burst).
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class LoadTest {
+
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(LoadTest.class);
+
+    /** Maximum time to wait for synchronizer to import corpus in milliseconds. */
+    private static final long SEED_TIMEOUT_MILLIS = 600000;
+    /** Maximum time to wait for site to respond in milliseconds. */
+    private static final long SITE_TIMEOUT_MILLIS = 120000;
+
+    /**
+     * Private default constructor to disable construction.
+     */
+    private LoadTest() {
+    }
+
+    /**
+     * Main method for running load test.
+     * @param args the commandline arguments
+     * @throws Exception if exception occurs.
+     */
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> arguments = new HashMap<String, String>();
+        arguments.put("sessions", "20");
+        arguments.put("duration", "300");
+        arguments.put("keys", "10000");
+        arguments.put("think", "1000");
+        arguments.put("mutate", "30");
+        arguments.put("burst", "50");
+        for (final String arg : args) {
+            final String[] parts = arg.split("=", 2);
+            if (parts.length != 2 || !arguments.containsKey(parts[0])) {
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            }
+            arguments.put(parts[0], parts[1]);
+        }
+        final int sessions = Integer.parseInt(arguments.get("sessions"));
+        final long durationMillis = Long.parseLong(arguments.get("duration")) * 1000;
+        final int keys = Integer.parseInt(arguments.get("keys"));
+        final int thinkMillis = Integer.parseInt(arguments.get("think"));
+        final long mutateMillis = Long.parseLong(arguments.get("mutate")) * 1000;
+        final int burst = Integer.parseInt(arguments.get("burst"));
+
+        final CorpusGenerator corpus = new CorpusGenerator(new File("target/loadtest/bundles"),
+                PropertiesUtil.getProperty("translation-site", "bundle-character-set"), keys);
+        corpus.generate();
+
+        final Thread siteThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TranslationSiteUI.main(new String[0]);
+                } catch (final Exception e) {
+                    LOGGER.error("Error running translation site.", e);
+                }
+            }
+        }, "translation-site");
+        siteThread.setDaemon(true);
+        siteThread.start();
+
+        final String siteUrl = "http://localhost:" + PropertiesUtil.getProperty("translation-site", "port")
+                + "/site/";
+        final EntityManagerFactory entityManagerFactory = waitForEntityManagerFactory();
+        waitForSite(siteUrl);
+        final EntityManager entityManager = entityManagerFactory.createEntityManager();
+        final Company company = TranslationSiteUI.resolveCompany(entityManager, "*");
+        waitForCorpus(entityManager, company, keys);
+        entityManager.close();
+
+        final ScheduledExecutorService mutator = Executors.newSingleThreadScheduledExecutor();
+        mutator.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    corpus.mutate(10);
+                } catch (final IOException e) {
+                    LOGGER.error("Error mutating corpus.", e);
+                }
+            }
+        }, mutateMillis, mutateMillis, TimeUnit.MILLISECONDS);
+
+        final ResourceMonitor monitor = new ResourceMonitor();
+        final Thread monitorThread = new Thread(monitor, "resource-monitor");
+        monitorThread.setDaemon(true);
+        monitorThread.start();
+
+        final SessionBurst sessionBurst = burst > 0 ? new SessionBurst(siteUrl, burst) : null;
+        if (sessionBurst != null) {
+            sessionBurst.run();
+        }
+
+        LOGGER.info("Starting " + sessions + " sessions for " + durationMillis + " ms.");
+        final LatencyRecorder recorder = new LatencyRecorder();
+        final long startTime = System.currentTimeMillis();
+        final ExecutorService sessionExecutor = Executors.newFixedThreadPool(sessions);
+        for (int i = 0; i < sessions; i++) {
+            sessionExecutor.submit(new TranslatorSession(siteUrl, entityManagerFactory, company, recorder,
+                    startTime + durationMillis, thinkMillis, i));
+        }
+        sessionExecutor.shutdown();
+        if (!sessionExecutor.awaitTermination(durationMillis + 60000, TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Sessions did not finish in time, interrupting.");
+            sessionExecutor.shutdownNow();
+        }
+        final long measuredMillis = System.currentTimeMillis() - startTime;
+        mutator.shutdownNow();
+        monitor.stop();
+
+        final List<String> lines = new ArrayList<String>();
+        lines.add("Load test " + new Date() + ": sessions=" + sessions + " duration=" + measuredMillis
+                + " ms keys=" + keys + " locales=" + CorpusGenerator.LOCALES.length + " think=" + thinkMillis
+                + " ms burst=" + burst + " corpus mutations=" + corpus.getRevision());
+        if (sessionBurst != null) {
+            lines.addAll(sessionBurst.report());
+        }
+        lines.addAll(recorder.report(measuredMillis));
+        lines.addAll(monitor.report());
+        writeReport(new File("target/loadtest/report.txt"), lines);
+
+        System.exit(0);
+    }
+
+    /**
+     * Waits until translation site has created entity manager factory.
+     * @return the entity manager factory
+     * @throws InterruptedException if interrupted.
+     */
+    private static EntityManagerFactory waitForEntityManagerFactory() throws InterruptedException {
+        while (TranslationSiteUI.getEntityManagerFactory() == null) {
+            Thread.sleep(100);
+        }
+        return TranslationSiteUI.getEntityManagerFactory();
+    }
+
+    /**
+     * Waits until site responds to bootstrap request.
+     * @param siteUrl the site URL
+     * @throws InterruptedException if interrupted.
+     */
+    private static void waitForSite(final String siteUrl) throws InterruptedException {
+        final long timeout = System.currentTimeMillis() + SITE_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < timeout) {
+            try {
+                new VaadinHttpClient(siteUrl, "loadtest-probe").bootstrap();
+                return;
+            } catch (final IOException e) {
+                LOGGER.debug("Waiting for site: " + e.getMessage());
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Site did not respond in time: " + siteUrl);
+    }
+
+    /**
+     * Waits until synchronizer has imported base bundle keys and entry count has settled.
+     * @param entityManager the entity manager
+     * @param company the company
+     * @param keys the number of keys in base bundle
+     * @throws InterruptedException if interrupted.
+     */
+    private static void waitForCorpus(final EntityManager entityManager, final Company company, final int keys)
+            throws InterruptedException {
+        final long timeout = System.currentTimeMillis() + SEED_TIMEOUT_MILLIS;
+        long previousCount = -1;
+        while (System.currentTimeMillis() < timeout) {
+            final TypedQuery<Long> baseQuery = entityManager.createQuery("select count(e) from Entry as e "
+                    + "where e.owner=:owner and e.basename=:basename and e.language='' and e.deleted is null",
+                    Long.class);
+            baseQuery.setParameter("owner", company);
+            baseQuery.setParameter("basename", CorpusGenerator.BASENAME);
+            final TypedQuery<Long> totalQuery = entityManager.createQuery("select count(e) from Entry as e "
+                    + "where e.owner=:owner and e.basename=:basename and e.deleted is null", Long.class);
+            totalQuery.setParameter("owner", company);
+            totalQuery.setParameter("basename", CorpusGenerator.BASENAME);
+
+            final long baseCount = baseQuery.getSingleResult();
+            final long totalCount = totalQuery.getSingleResult();
+            LOGGER.info("Waiting for corpus, base entries: " + baseCount + " total entries: " + totalCount);
+            if (baseCount >= keys && totalCount == previousCount) {
+                return;
+            }
+            previousCount = totalCount;
+            Thread.sleep(5000);
+        }
+        throw new IllegalStateException("Synchronizer did not import corpus in time.");
+    }
+
+    /**
+     * Writes report lines to standard output and report file.
+     * @param file the report file
+     * @param lines the report lines
+     * @throws IOException if IO exception occurs.
+     */
+    private static void writeReport(final File file, final List<String> lines) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            for (final String line : lines) {
+                System.out.println(line);
+                writer.write(line + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.loadtest;
+
+import biz.eelis.translation.util.JdbcUtil;
+import org.apache.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Samples heap usage and database connection count periodically during load test.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class ResourceMonitor implements Runnable {
+
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(ResourceMonitor.class);
+
+    /** The sample period in milliseconds. */
+    private static final long SAMPLE_PERIOD_MILLIS = 1000;
+
+    /** The memory bean. */
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    /** Heap usage samples in bytes. */
+    private final List<Long> heapSamples = new ArrayList<Long>();
+    /** Database connection count samples. */
+    private final List<Integer> connectionSamples = new ArrayList<Integer>();
+    /** True if monitor has been stopped. */
+    private volatile boolean stopped;
+
+    @Override
+    public void run() {
+        Connection connection = null;
+        try {
+            connection = JdbcUtil.openConnection();
+            while (!stopped) {
+                sample(connection);
+                Thread.sleep(SAMPLE_PERIOD_MILLIS);
+            }
+        } catch (final InterruptedException e) {
+            LOGGER.debug("Resource monitor interrupted.");
+        } catch (final Exception e) {
+            LOGGER.error("Error in resource monitor.", e);
+        } finally {
+            JdbcUtil.close(connection);
+        }
+    }
+
+    /**
+     * Stops sampling.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Takes single sample.
+     * @param connection the monitoring connection which is excluded from connection count
+     * @throws Exception if exception occurs in database query.
+     */
+    private void sample(final Connection connection) throws Exception {
+        final long heapUsed = memoryBean.getHeapMemoryUsage().getUsed();
+        final Statement statement = connection.createStatement();
+        try {
+            final ResultSet resultSet = statement.executeQuery(
+                    "select count(*) from pg_stat_activity where datname = current_database()");
+            resultSet.next();
+            final int connections = resultSet.getInt(1) - 1;
+            synchronized (this) {
+                heapSamples.add(heapUsed);
+                connectionSamples.add(connections);
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Builds report lines with average and maximum heap usage and database connections.
+     * @return the report lines
+     */
+    public synchronized List<String> report() {
+        long heapTotal = 0;
+        long heapMax = 0;
+        for (final long heap : heapSamples) {
+            heapTotal += heap;
+            heapMax = Math.max(heapMax, heap);
+        }
+        long connectionTotal = 0;
+        int connectionMax = 0;
+        for (final int connections : connectionSamples) {
+            connectionTotal += connections;
+            connectionMax = Math.max(connectionMax, connections);
+        }
+        final int count = Math.max(1, heapSamples.size());
+        final List<String> lines = new ArrayList<String>();
+        lines.add(String.format("heap used MB: avg %.1f max %.1f (max heap %.1f)",
+                heapTotal / count / 1048576.0, heapMax / 1048576.0,
+                memoryBean.getHeapMemoryUsage().getMax() / 1048576.0));
+        lines.add(String.format("database connections: avg %.1f max %d", (double) connectionTotal / count,
+                connectionMax));
+        return lines;
+    }
+
+}
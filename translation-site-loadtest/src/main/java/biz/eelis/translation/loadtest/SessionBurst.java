@@ -0,0 +1,125 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.loadtest;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session creation benchmark which releases given number of clients at once to load the site and
+ * create their UIs over HTTP as translators logging in at the same time would. Measures bootstrap and
+ * UI creation latencies and session creation throughput.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class SessionBurst {
+
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(SessionBurst.class);
+
+    /** Maximum time to wait for burst to complete in milliseconds. */
+    private static final long TIMEOUT_MILLIS = 300000;
+
+    /** The site URL. */
+    private final String siteUrl;
+    /** The number of sessions to create. */
+    private final int sessions;
+    /** The latency recorder. */
+    private final LatencyRecorder recorder = new LatencyRecorder();
+    /** Duration of the burst in milliseconds. */
+    private long durationMillis;
+
+    /**
+     * @param siteUrl the site URL ending with slash
+     * @param sessions the number of sessions to create
+     */
+    public SessionBurst(final String siteUrl, final int sessions) {
+        this.siteUrl = siteUrl;
+        this.sessions = sessions;
+    }
+
+    /**
+     * Runs the burst and waits for all sessions to be created.
+     * @throws InterruptedException if interrupted.
+     */
+    public void run() throws InterruptedException {
+        LOGGER.info("Creating " + sessions + " sessions in burst.");
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(sessions);
+        for (int i = 0; i < sessions; i++) {
+            final VaadinHttpClient client = new VaadinHttpClient(siteUrl, "burst-" + i);
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        execute(client, "burst-bootstrap");
+                        execute(client, "burst-init");
+                    } catch (final InterruptedException e) {
+                        LOGGER.debug("Burst session interrupted.");
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        final long startTime = System.currentTimeMillis();
+        startLatch.countDown();
+        if (!executor.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Burst did not finish in time, interrupting.");
+            executor.shutdownNow();
+        }
+        durationMillis = Math.max(1, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Executes and measures bootstrap or UI creation request.
+     * @param client the HTTP client
+     * @param operation the operation
+     */
+    private void execute(final VaadinHttpClient client, final String operation) {
+        final long startTime = System.nanoTime();
+        try {
+            if ("burst-bootstrap".equals(operation)) {
+                client.bootstrap();
+            } else {
+                client.init("login");
+            }
+            recorder.record(operation, System.nanoTime() - startTime);
+        } catch (final Exception e) {
+            LOGGER.warn("Error in operation: " + operation, e);
+            recorder.recordError(operation);
+        }
+    }
+
+    /**
+     * Builds report lines of the burst.
+     * @return the report lines
+     */
+    public List<String> report() {
+        final List<String> lines = new ArrayList<String>();
+        lines.add(String.format("Session burst: %d sessions in %d ms, %.1f sessions/s", sessions, durationMillis,
+                sessions * 1000.0 / durationMillis));
+        lines.addAll(recorder.report(durationMillis));
+        return lines;
+    }
+
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.loadtest;
+
+import biz.eelis.translation.CachingEntryQueryFactory;
+import biz.eelis.translation.EntryEditBuffer;
+import biz.eelis.translation.model.Entry;
+import biz.eelis.translation.util.ReadRouting;
+import com.vaadin.data.Item;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.filter.IsNull;
+import com.vaadin.data.util.filter.Like;
+import com.vaadin.ui.TextField;
+import org.apache.log4j.Logger;
+import org.vaadin.addons.lazyquerycontainer.EntityQueryDefinition;
+import org.vaadin.addons.lazyquerycontainer.LazyEntityContainer;
+import org.vaadin.addons.sitekit.model.Company;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Simulated translator session. Session loads the site over HTTP as browser does, which creates HTTP
+ * session and UI, and sends UIDL round trip to its UI for each operation. Entries view requires login
+ * which the session does not script, so the data work entries view does for each operation is executed
+ * in-process with the same container, query factory and edit buffer. Session repeatedly opens the view,
+ * filters, pages and saves entries with think time between operations.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class TranslatorSession implements Runnable {
+
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(TranslatorSession.class);
+
+    /** Rows shown on single page of entries grid. */
+    private static final int PAGE_SIZE = 30;
+    /** The URI fragment of entries view. */
+    private static final String ENTRIES_FRAGMENT = "default";
+
+    /** The entity manager factory. */
+    private final EntityManagerFactory entityManagerFactory;
+    /** The company. */
+    private final Company company;
+    /** The latency recorder. */
+    private final LatencyRecorder recorder;
+    /** Time when session stops in milliseconds. */
+    private final long endTime;
+    /** Maximum think time between operations in milliseconds. */
+    private final int thinkMillis;
+    /** The random generator. */
+    private final Random random;
+    /** The HTTP client. */
+    private final VaadinHttpClient client;
+
+    /** The container. */
+    private LazyEntityContainer<Entry> container;
+    /** The read routing. */
+    private ReadRouting readRouting;
+
+    /**
+     * @param siteUrl the site URL ending with slash
+     * @param entityManagerFactory the entity manager factory
+     * @param company the company
+     * @param recorder the latency recorder
+     * @param endTime time when session stops in milliseconds
+     * @param thinkMillis maximum think time between operations in milliseconds
+     * @param seed the random seed
+     */
+    public TranslatorSession(final String siteUrl, final EntityManagerFactory entityManagerFactory,
+                             final Company company, final LatencyRecorder recorder, final long endTime,
+                             final int thinkMillis, final long seed) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.company = company;
+        this.recorder = recorder;
+        this.endTime = endTime;
+        this.thinkMillis = thinkMillis;
+        this.random = new Random(seed);
+        this.client = new VaadinHttpClient(siteUrl, "loadtest-" + seed);
+    }
+
+    @Override
+    public void run() {
+        final EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            readRouting = new ReadRouting(entityManager);
+            execute("http-bootstrap");
+            execute("http-init");
+            execute("open");
+            execute("http-navigate");
+            while (System.currentTimeMillis() < endTime) {
+                if (thinkMillis > 0) {
+                    Thread.sleep(random.nextInt(thinkMillis));
+                }
+                final int choice = random.nextInt(100);
+                if (choice < 5) {
+                    execute("http-repaint");
+                } else if (choice < 10) {
+                    execute("open");
+                    execute("http-navigate");
+                } else if (choice < 40) {
+                    execute("filter");
+                    execute("http-uidl");
+                } else if (choice < 80) {
+                    execute("page");
+                    execute("http-uidl");
+                } else {
+                    execute("save");
+                    execute("http-uidl");
+                }
+            }
+        } catch (final InterruptedException e) {
+            LOGGER.debug("Session interrupted.");
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Executes and measures operation.
+     * @param operation the operation
+     */
+    private void execute(final String operation) {
+        final long startTime = System.nanoTime();
+        try {
+            if ("http-bootstrap".equals(operation)) {
+                client.bootstrap();
+            } else if ("http-init".equals(operation)) {
+                client.init(ENTRIES_FRAGMENT);
+            } else if ("http-navigate".equals(operation)) {
+                client.navigate(ENTRIES_FRAGMENT);
+            } else if ("http-uidl".equals(operation)) {
+                client.uidl("[]", false);
+            } else if ("http-repaint".equals(operation)) {
+                client.uidl("[]", true);
+            } else if ("open".equals(operation)) {
+                open();
+            } else if ("filter".equals(operation)) {
+                filter();
+            } else if ("page".equals(operation)) {
+                page();
+            } else {
+                save();
+            }
+            recorder.record(operation, System.nanoTime() - startTime);
+        } catch (final Exception e) {
+            LOGGER.warn("Error in operation: " + operation, e);
+            recorder.recordError(operation);
+        }
+    }
+
+    /**
+     * Opens entries view constructing new container as flowlet does and reads first page.
+     */
+    private void open() {
+        container = new LazyEntityContainer<Entry>(new EntityQueryDefinition(true, true, false, Entry.class, 1000,
+                new String[] {"basename", "key", "language", "country"},
+                new boolean[] {true, true, true, true}, "entryId"), new CachingEntryQueryFactory(readRouting));
+        container.addContainerProperty("entryId", String.class, null, true, false);
+        container.addContainerProperty("basename", String.class, "", true, true);
+        container.addContainerProperty("language", String.class, "", true, true);
+        container.addContainerProperty("country", String.class, "", true, true);
+        container.addContainerProperty("key", String.class, "", true, true);
+        container.addContainerProperty("value", String.class, "", true, true);
+        container.addContainerProperty("author", String.class, "", true, true);
+        container.addContainerProperty("modified", Date.class, null, true, true);
+        container.removeDefaultFilters();
+        container.addDefaultFilter(new Compare.Equal("owner.companyId", company.getCompanyId()));
+        container.addDefaultFilter(new IsNull("deleted"));
+        container.refresh();
+        readPage(0);
+    }
+
+    /**
+     * Filters entries by key prefix and reads first page of the results.
+     */
+    private void filter() {
+        container.removeAllContainerFilters();
+        if (random.nextBoolean()) {
+            container.addContainerFilter(new Like("key", "key-00" + random.nextInt(10) + "%"));
+        }
+        readPage(0);
+    }
+
+    /**
+     * Reads random page of current results.
+     */
+    private void page() {
+        final int size = container.size();
+        readPage(size > PAGE_SIZE ? random.nextInt(size - PAGE_SIZE) : 0);
+    }
+
+    /**
+     * Edits value of random entry on current page and saves it.
+     */
+    private void save() {
+        final int size = container.size();
+        if (size == 0) {
+            return;
+        }
+        final Entry entry = container.getEntity(container.getIdByIndex(random.nextInt(Math.min(size, PAGE_SIZE))));
+        final EntryEditBuffer editBuffer = new EntryEditBuffer(readRouting.getPrimaryEntityManager());
+        final TextField field = editBuffer.getField(entry);
+        final String value = entry.getValue() == null ? "" : entry.getValue();
+        field.setValue(value.endsWith("*") ? value.substring(0, value.length() - 1) : value + "*");
+        if (editBuffer.commit("loadtest") > 0) {
+            throw new IllegalStateException("Entry save failed: " + entry.getEntryId());
+        }
+        readRouting.markWritten();
+    }
+
+    /**
+     * Reads page of items as table would when rendering rows.
+     * @param startIndex the index of first row
+     */
+    private void readPage(final int startIndex) {
+        final int endIndex = Math.min(container.size(), startIndex + PAGE_SIZE);
+        for (int i = startIndex; i < endIndex; i++) {
+            final Item item = container.getItem(container.getIdByIndex(i));
+            item.getItemProperty("value").getValue();
+        }
+    }
+
+}
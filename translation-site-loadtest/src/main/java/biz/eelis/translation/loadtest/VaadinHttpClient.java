@@ -0,0 +1,188 @@
+/**
+ * Copyright 2013 Tommi S.E. Laukkanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.eelis.translation.loadtest;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Minimal HTTP client speaking the Vaadin 7 bootstrap and UIDL protocol as browser would. Client keeps
+ * session cookie, UI ID and security key so that it can create UIs and send UIDL requests to them.
+ * Instances are not thread safe.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+public final class VaadinHttpClient {
+
+    /** The UIDL burst separator. */
+    private static final char BURST_SEPARATOR = '\u001d';
+    /** Prefix of UIDL responses. */
+    private static final String UIDL_PREFIX = "for(;;);";
+
+    /** The site URL ending with slash. */
+    private final String siteUrl;
+    /** The window name. */
+    private final String windowName;
+    /** The session cookie or null if session has not been created. */
+    private String sessionCookie;
+    /** The current UI ID or -1 if UI has not been created. */
+    private int uiId = -1;
+    /** The UIDL security key. */
+    private String securityKey;
+
+    /**
+     * @param siteUrl the site URL ending with slash
+     * @param windowName the window name
+     */
+    public VaadinHttpClient(final String siteUrl, final String windowName) {
+        this.siteUrl = siteUrl;
+        this.windowName = windowName;
+    }
+
+    /**
+     * Loads bootstrap page which creates HTTP session.
+     * @return the response length
+     * @throws IOException if request fails.
+     */
+    public int bootstrap() throws IOException {
+        return request("GET", siteUrl, null).length();
+    }
+
+    /**
+     * Sends browser details request as vaadinBootstrap.js does which creates new UI and returns its
+     * initial UIDL.
+     * @param fragment the URI fragment
+     * @return the response length
+     * @throws IOException if request fails.
+     */
+    public int init(final String fragment) throws IOException {
+        final int timezoneOffset = -TimeZone.getDefault().getOffset(System.currentTimeMillis()) / 60000;
+        final String url = siteUrl + "?v-browserDetails=1&theme=eelis"
+                + "&v-sh=900&v-sw=1440&v-cw=1440&v-ch=900&v-vw=1440&v-vh=0"
+                + "&v-curdate=" + System.currentTimeMillis()
+                + "&v-tzo=" + timezoneOffset + "&v-rtzo=" + timezoneOffset + "&v-dstd=0&v-dston=false"
+                + "&v-loc=" + URLEncoder.encode(siteUrl + "#!" + fragment, "UTF-8")
+                + "&v-wn=" + URLEncoder.encode(windowName, "UTF-8");
+        final String response = request("POST", url, "");
+        try {
+            final JSONObject json = new JSONObject(response);
+            uiId = json.getInt("v-uiId");
+            securityKey = new JSONObject(json.getString("uidl")).optString("Vaadin-Security-Key", null);
+        } catch (final JSONException e) {
+            throw new IOException("Invalid browser details response: " + e.getMessage());
+        }
+        return response.length();
+    }
+
+    /**
+     * Sends UIDL request with method invocations to current UI.
+     * @param invocations the method invocations as JSON array
+     * @param repaintAll true if whole UI is to be repainted
+     * @return the response length
+     * @throws IOException if request fails or server responds with error.
+     */
+    public int uidl(final String invocations, final boolean repaintAll) throws IOException {
+        if (uiId < 0) {
+            throw new IllegalStateException("UI has not been initialized.");
+        }
+        final String response = request("POST", siteUrl + "UIDL/?v-uiId=" + uiId
+                + (repaintAll ? "&repaintAll=1" : ""), securityKey + BURST_SEPARATOR + invocations);
+        if (!response.startsWith(UIDL_PREFIX) || response.contains("\"appError\"")) {
+            throw new IOException("Invalid UIDL response: "
+                    + response.substring(0, Math.min(200, response.length())));
+        }
+        return response.length();
+    }
+
+    /**
+     * Changes URI fragment of current UI which navigates to view.
+     * @param fragment the URI fragment
+     * @return the response length
+     * @throws IOException if request fails.
+     */
+    public int navigate(final String fragment) throws IOException {
+        return uidl("[[\"0\",\"v\",\"v\",[\"location\",[\"s\","
+                + JSONObject.quote(siteUrl + "#!" + fragment) + "]]]]", false);
+    }
+
+    /**
+     * Executes HTTP request and reads response.
+     * @param method the HTTP method
+     * @param url the URL
+     * @param body the request body or null
+     * @return the response body
+     * @throws IOException if request fails or response status is not OK.
+     */
+    private String request(final String method, final String url, final String body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestProperty("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 "
+                + "(KHTML, like Gecko) Chrome/26.0 Safari/537.36");
+        if (sessionCookie != null) {
+            connection.setRequestProperty("Cookie", sessionCookie);
+        }
+        if (body != null) {
+            final byte[] bytes = body.getBytes("UTF-8");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "text/plain;charset=utf-8");
+            connection.setFixedLengthStreamingMode(bytes.length);
+            final OutputStream outputStream = connection.getOutputStream();
+            try {
+                outputStream.write(bytes);
+            } finally {
+                outputStream.close();
+            }
+        }
+        final int status = connection.getResponseCode();
+        final List<String> cookies = connection.getHeaderFields().get("Set-Cookie");
+        if (cookies != null) {
+            for (final String cookie : cookies) {
+                if (cookie.startsWith("JSESSIONID=")) {
+                    sessionCookie = cookie.split(";", 2)[0];
+                }
+            }
+        }
+        final InputStream inputStream = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        if (inputStream != null) {
+            try {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, read);
+                }
+            } finally {
+                inputStream.close();
+            }
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("HTTP " + status + " from " + method + " " + url);
+        }
+        return new String(outputStream.toByteArray(), "UTF-8");
+    }
+
+}
@@ -0,0 +1,6 @@
+/**
+ * This package contains load test simulating concurrent translators and synchronization cycles.
+ *
+ * @author Tommi S.E. Laukkanen
+ */
+package biz.eelis.translation.loadtest;